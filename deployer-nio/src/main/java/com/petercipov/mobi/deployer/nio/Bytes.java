@@ -0,0 +1,49 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable array of bytes, not thread safe.
+ *
+ * @author petercipov
+ */
+class Bytes {
+
+	private byte[] array;
+	private int size;
+
+	Bytes() {
+		this(256);
+	}
+
+	Bytes(int capacity) {
+		this.array = new byte[capacity];
+		this.size = 0;
+	}
+
+	void append(byte[] bytes, int offset, int length) {
+		if (size + length > array.length) {
+			array = Arrays.copyOf(array, Math.max(array.length * 2, size + length));
+		}
+		System.arraycopy(bytes, offset, array, size, length);
+		size += length;
+	}
+
+	byte[] array() {
+		return array;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void reset() {
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return new String(array, 0, size, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,108 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Producer;
+import rx.Subscriber;
+
+/**
+ * Values of streamed response waiting for demand of the subscriber. Reading
+ * of the connection is paused while the queue is full and resumed once the
+ * subscriber catches up, so a fast daemon is held back by TCP flow control
+ * instead of filling the heap. All methods except request are called on the
+ * loop thread, values are emitted on the loop thread.
+ *
+ * @author petercipov
+ */
+class DemandQueue<T> implements Producer {
+
+	private static final int HIGH_WATER = 64;
+	private static final int LOW_WATER = 16;
+
+	private final EventLoop loop;
+	private final Subscriber<? super T> subscriber;
+	private final Queue<T> values;
+	private final AtomicLong requested;
+	private HttpExchange exchange;
+	private boolean completed;
+	private boolean terminated;
+	private boolean paused;
+
+	DemandQueue(EventLoop loop, Subscriber<? super T> subscriber) {
+		this.loop = loop;
+		this.subscriber = subscriber;
+		this.values = new ArrayDeque<>();
+		this.requested = new AtomicLong();
+		this.completed = false;
+		this.terminated = false;
+		this.paused = false;
+	}
+
+	void attach(HttpExchange exchange) {
+		this.exchange = exchange;
+	}
+
+	void onNext(T value) {
+		values.add(value);
+		drain();
+		if (! paused && values.size() >= HIGH_WATER) {
+			paused = true;
+			exchange.pause();
+		}
+	}
+
+	void onCompleted() {
+		completed = true;
+		drain();
+	}
+
+	void onError(Throwable th) {
+		values.clear();
+		if (! terminated) {
+			terminated = true;
+			subscriber.onError(th);
+		}
+	}
+
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			return;
+		}
+		long current;
+		long next;
+		do {
+			current = requested.get();
+			next = current + n;
+			if (next < 0) {
+				next = Long.MAX_VALUE;
+			}
+		} while (! requested.compareAndSet(current, next));
+		loop.execute(this::drain);
+	}
+
+	private void drain() {
+		if (terminated) {
+			return;
+		}
+		long demand = requested.get();
+		while (demand > 0 && ! values.isEmpty()) {
+			if (subscriber.isUnsubscribed()) {
+				values.clear();
+				return;
+			}
+			subscriber.onNext(values.poll());
+			demand = demand == Long.MAX_VALUE ? demand : requested.decrementAndGet();
+		}
+		if (completed && values.isEmpty()) {
+			terminated = true;
+			subscriber.onCompleted();
+			return;
+		}
+		if (paused && values.size() <= LOW_WATER) {
+			paused = false;
+			exchange.resume();
+		}
+	}
+}
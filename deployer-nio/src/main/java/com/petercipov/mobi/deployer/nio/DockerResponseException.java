@@ -0,0 +1,28 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+
+/**
+ * Docker daemon responded by error status
+ *
+ * @author petercipov
+ */
+public class DockerResponseException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+
+	public DockerResponseException(int status, String message) {
+		super("Docker responded " + status + ": " + message);
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public boolean isNotFound() {
+		return status == 404;
+	}
+}
@@ -0,0 +1,50 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.spi.SelectorProvider;
+
+/**
+ * Address of docker daemon. Channels of tcp and unix endpoints come from
+ * different selector providers, so every endpoint tells which selectors its
+ * channels can be registered to.
+ *
+ * @author petercipov
+ */
+public abstract class Endpoint {
+
+	/**
+	 * @return provider of selectors the channels can be registered to
+	 */
+	public abstract SelectorProvider provider();
+
+	/**
+	 * @return new non-blocking channel, not connected yet
+	 * @throws IOException
+	 */
+	public abstract Channel open() throws IOException;
+
+	/**
+	 * @return value of Host header of requests
+	 */
+	public abstract String host();
+
+	public interface Channel {
+		SelectableChannel selectable();
+
+		/**
+		 * @return true if connection was established immediately
+		 * @throws IOException
+		 */
+		boolean connect() throws IOException;
+
+		boolean finishConnect() throws IOException;
+
+		int read(ByteBuffer buffer) throws IOException;
+
+		int write(ByteBuffer buffer) throws IOException;
+
+		void close() throws IOException;
+	}
+}
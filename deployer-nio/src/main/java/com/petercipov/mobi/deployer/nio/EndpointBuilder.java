@@ -0,0 +1,28 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.config.HttpRestApiHost;
+import com.petercipov.mobi.config.HttpsRestApiHost;
+import com.petercipov.mobi.config.UnixRestApiHost;
+
+/**
+ *
+ * @author petercipov
+ */
+public class EndpointBuilder implements ApiHost.Builder<Endpoint> {
+
+	@Override
+	public Endpoint build(HttpRestApiHost host) {
+		return new TcpEndpoint(host.getHost(), host.getPort());
+	}
+
+	@Override
+	public Endpoint build(HttpsRestApiHost host) {
+		throw new IllegalArgumentException("Https hosts are not supported by nio connector, use spotify connector (host) " + host);
+	}
+
+	@Override
+	public Endpoint build(UnixRestApiHost host) {
+		return new UnixEndpoint(host.getPath());
+	}
+}
@@ -0,0 +1,106 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread that drives channels registered in its selector. All state of 
+ * exchanges on the loop is touched by the loop thread only, other threads 
+ * hand tasks over by execute. Responses are read into single buffer of the
+ * loop.
+ *
+ * @author petercipov
+ */
+public class EventLoop {
+
+	private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+	private final ByteBuffer readBuffer;
+	private final Thread thread;
+	private volatile boolean running;
+
+	public EventLoop(String name, SelectorProvider provider) {
+		try {
+			this.selector = provider.openSelector();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		this.tasks = new ConcurrentLinkedQueue<>();
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+		this.running = true;
+		this.thread = new Thread(this::loop, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Runs the task on the loop thread.
+	 * @param task
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws ClosedChannelException {
+		return channel.register(selector, ops, handler);
+	}
+
+	/**
+	 * @return buffer shared by all channels of the loop, content is valid
+	 * until handler returns
+	 */
+	ByteBuffer readBuffer() {
+		return readBuffer;
+	}
+
+	private void loop() {
+		try {
+			while (running) {
+				selector.select();
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if (key.isValid()) {
+						((Handler) key.attachment()).handle(key);
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException ex) {
+			running = false;
+		} finally {
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				// nothing more to do
+			}
+		}
+	}
+
+	interface Handler {
+		void handle(SelectionKey key);
+	}
+}
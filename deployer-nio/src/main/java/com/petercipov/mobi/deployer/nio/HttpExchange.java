@@ -0,0 +1,172 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Single request and response on its own connection. All methods except
+ * cancel are called on the event loop thread.
+ *
+ * @author petercipov
+ */
+class HttpExchange implements EventLoop.Handler {
+
+	private final EventLoop loop;
+	private final Endpoint endpoint;
+	private final HttpRequest request;
+	private final ResponseHandler handler;
+	private final HttpResponseDecoder decoder;
+	private final Runnable release;
+	private ByteBuffer out;
+	private Endpoint.Channel channel;
+	private SelectionKey key;
+	private boolean started;
+	private boolean reading;
+	private boolean paused;
+	private boolean done;
+
+	HttpExchange(EventLoop loop, Endpoint endpoint, HttpRequest request, ResponseHandler handler, Runnable release) {
+		this.loop = loop;
+		this.endpoint = endpoint;
+		this.request = request;
+		this.handler = handler;
+		this.decoder = new HttpResponseDecoder(handler);
+		this.release = release;
+		this.started = false;
+		this.reading = false;
+		this.paused = false;
+		this.done = false;
+	}
+
+	EventLoop loop() {
+		return loop;
+	}
+
+	void start() {
+		if (done) {
+			release.run();
+			return;
+		}
+		started = true;
+		try {
+			out = request.encode(endpoint.host());
+			channel = endpoint.open();
+			if (channel.connect()) {
+				key = loop.register(channel.selectable(), SelectionKey.OP_WRITE, this);
+			} else {
+				key = loop.register(channel.selectable(), SelectionKey.OP_CONNECT, this);
+			}
+		} catch (IOException | RuntimeException ex) {
+			fail(ex);
+		}
+	}
+
+	/**
+	 * Closes connection of exchange that is not complete, may be called by
+	 * any thread.
+	 */
+	void cancel() {
+		loop.execute(() -> {
+			if (! done) {
+				done = true;
+				if (started) {
+					close();
+					release.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops reading of the response until resume, unread data stays in the 
+	 * socket.
+	 */
+	void pause() {
+		paused = true;
+		if (reading && ! done && key.isValid()) {
+			key.interestOps(0);
+		}
+	}
+
+	void resume() {
+		paused = false;
+		if (reading && ! done && key.isValid()) {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	@Override
+	public void handle(SelectionKey key) {
+		try {
+			if (key.isConnectable()) {
+				if (channel.finishConnect()) {
+					key.interestOps(SelectionKey.OP_WRITE);
+				}
+			} else if (key.isWritable()) {
+				channel.write(out);
+				if (! out.hasRemaining()) {
+					reading = true;
+					key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+				}
+			} else if (key.isReadable()) {
+				read();
+			}
+		} catch (IOException | RuntimeException ex) {
+			fail(ex);
+		}
+	}
+
+	private void read() throws IOException {
+		ByteBuffer buffer = loop.readBuffer();
+		while (! done && ! paused) {
+			buffer.clear();
+			int read = channel.read(buffer);
+			if (read < 0) {
+				decoder.endOfStream();
+				finish();
+				return;
+			}
+			if (read == 0) {
+				return;
+			}
+			buffer.flip();
+			if (decoder.feed(buffer)) {
+				finish();
+				return;
+			}
+		}
+	}
+
+	private void fail(Throwable th) {
+		if (! done) {
+			done = true;
+			close();
+			release.run();
+			handler.onError(th);
+		}
+	}
+
+	private void finish() {
+		if (! done) {
+			done = true;
+			close();
+			release.run();
+		}
+	}
+
+	private void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				// connection is not used anymore
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HttpExchange(" + request + ')';
+	}
+}
@@ -0,0 +1,119 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP/1.1 request to docker daemon. Every request uses its own connection
+ * that is closed by the daemon after the response.
+ *
+ * @author petercipov
+ */
+public class HttpRequest {
+
+	private static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+	private static final byte[] NO_BODY = new byte[0];
+
+	private final String method;
+	private final StringBuilder uri;
+	private byte[] body;
+	private long timeoutMillis;
+	private boolean limited;
+	private boolean hasQuery;
+
+	private HttpRequest(String method, String path) {
+		this.method = method;
+		this.uri = new StringBuilder(path);
+		this.body = NO_BODY;
+		this.timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+		this.limited = true;
+		this.hasQuery = false;
+	}
+
+	public static HttpRequest get(String path) {
+		return new HttpRequest("GET", path);
+	}
+
+	public static HttpRequest post(String path) {
+		return new HttpRequest("POST", path);
+	}
+
+	public static HttpRequest delete(String path) {
+		return new HttpRequest("DELETE", path);
+	}
+
+	public HttpRequest query(String name, Object value) {
+		uri.append(hasQuery ? '&' : '?').append(name).append('=').append(urlEncode(String.valueOf(value)));
+		hasQuery = true;
+		return this;
+	}
+
+	public HttpRequest json(byte[] body) {
+		this.body = body;
+		return this;
+	}
+
+	/**
+	 * @param timeoutMillis time to wait for the whole response, 0 waits for
+	 * ever
+	 * @return 
+	 */
+	public HttpRequest timeout(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+		return this;
+	}
+
+	/**
+	 * Request is not counted to the limit of concurrent requests and does
+	 * not time out, f.e. stream of events.
+	 * @return 
+	 */
+	public HttpRequest unbounded() {
+		this.limited = false;
+		this.timeoutMillis = 0;
+		return this;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public boolean isLimited() {
+		return limited;
+	}
+
+	ByteBuffer encode(String host) {
+		StringBuilder head = new StringBuilder(128 + uri.length())
+			.append(method).append(' ').append(uri).append(" HTTP/1.1\r\n")
+			.append("Host: ").append(host).append("\r\n")
+			.append("Connection: close\r\n");
+		if (body.length > 0) {
+			head.append("Content-Type: application/json\r\n");
+		}
+		if (body.length > 0 || ! "GET".equals(method)) {
+			head.append("Content-Length: ").append(body.length).append("\r\n");
+		}
+		head.append("\r\n");
+
+		byte[] headBytes = head.toString().getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + body.length);
+		buffer.put(headBytes).put(body);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static String urlEncode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + uri;
+	}
+}
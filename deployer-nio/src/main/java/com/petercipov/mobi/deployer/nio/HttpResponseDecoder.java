@@ -0,0 +1,184 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder of HTTP/1.1 response. Bytes are fed as they arrive and
+ * the body is passed to the handler as slices of the fed buffer, chunked
+ * encoding is removed on the way.
+ *
+ * @author petercipov
+ */
+class HttpResponseDecoder {
+
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	private enum State {
+		STATUS, HEADERS, CHUNK_SIZE, CHUNK_END, TRAILERS, LENGTH, CHUNK, UNTIL_CLOSE, DONE
+	}
+
+	private final ResponseHandler handler;
+	private final StringBuilder line;
+	private State state;
+	private int status;
+	private long contentLength;
+	private boolean chunked;
+	private long remaining;
+
+	HttpResponseDecoder(ResponseHandler handler) {
+		this.handler = handler;
+		this.line = new StringBuilder();
+		this.state = State.STATUS;
+		this.contentLength = -1;
+		this.chunked = false;
+	}
+
+	/**
+	 * @param buffer buffer backed by array, consumed fully unless response
+	 * is complete
+	 * @return true if response is complete
+	 * @throws IOException 
+	 */
+	boolean feed(ByteBuffer buffer) throws IOException {
+		byte[] array = buffer.array();
+		int pos = buffer.arrayOffset() + buffer.position();
+		int end = buffer.arrayOffset() + buffer.limit();
+
+		while (pos < end && state != State.DONE) {
+			switch (state) {
+				case LENGTH:
+				case CHUNK:
+					int length = (int) Math.min(remaining, end - pos);
+					handler.body(array, pos, length);
+					pos += length;
+					remaining -= length;
+					if (remaining == 0) {
+						if (state == State.LENGTH) {
+							done();
+						} else {
+							state = State.CHUNK_END;
+						}
+					}
+					break;
+				case UNTIL_CLOSE:
+					handler.body(array, pos, end - pos);
+					pos = end;
+					break;
+				default:
+					pos = readLine(array, pos, end);
+			}
+		}
+		buffer.position(pos - buffer.arrayOffset());
+		return state == State.DONE;
+	}
+
+	/**
+	 * Connection was closed by the daemon
+	 * @throws IOException 
+	 */
+	void endOfStream() throws IOException {
+		if (state == State.UNTIL_CLOSE) {
+			done();
+		} else if (state != State.DONE) {
+			throw new IOException("Connection was closed before the response was complete");
+		}
+	}
+
+	boolean isDone() {
+		return state == State.DONE;
+	}
+
+	private int readLine(byte[] array, int pos, int end) throws IOException {
+		while (pos < end) {
+			byte b = array[pos++];
+			if (b == '\n') {
+				String complete = line.toString();
+				line.setLength(0);
+				onLine(complete);
+				return pos;
+			} else if (b != '\r') {
+				if (line.length() >= MAX_LINE_LENGTH) {
+					throw new IOException("Line of response is too long");
+				}
+				line.append((char) (b & 0xff));
+			}
+		}
+		return pos;
+	}
+
+	private void onLine(String text) throws IOException {
+		switch (state) {
+			case STATUS:
+				int from = text.indexOf(' ');
+				if (! text.startsWith("HTTP/") || from < 0) {
+					throw new IOException("Invalid status line: " + text);
+				}
+				int to = text.indexOf(' ', from + 1);
+				status = Integer.parseInt(text.substring(from + 1, to < 0 ? text.length() : to));
+				state = State.HEADERS;
+				break;
+			case HEADERS:
+				if (text.isEmpty()) {
+					headersDone();
+				} else {
+					header(text);
+				}
+				break;
+			case CHUNK_SIZE:
+				int extension = text.indexOf(';');
+				remaining = Long.parseLong((extension < 0 ? text : text.substring(0, extension)).trim(), 16);
+				state = remaining == 0 ? State.TRAILERS : State.CHUNK;
+				break;
+			case CHUNK_END:
+				state = State.CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if (text.isEmpty()) {
+					done();
+				}
+				break;
+			default:
+				throw new IllegalStateException("Line in state " + state);
+		}
+	}
+
+	private void header(String text) {
+		int colon = text.indexOf(':');
+		if (colon < 0) {
+			return;
+		}
+		String name = text.substring(0, colon).trim();
+		String value = text.substring(colon + 1).trim();
+		if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+			chunked = value.toLowerCase().contains("chunked");
+		} else if ("Content-Length".equalsIgnoreCase(name)) {
+			contentLength = Long.parseLong(value);
+		}
+	}
+
+	private void headersDone() throws IOException {
+		if (status >= 100 && status < 200) {
+			state = State.STATUS;
+			return;
+		}
+		handler.head(status);
+		if (status == 204 || status == 304) {
+			done();
+		} else if (chunked) {
+			state = State.CHUNK_SIZE;
+		} else if (contentLength == 0) {
+			done();
+		} else if (contentLength > 0) {
+			remaining = contentLength;
+			state = State.LENGTH;
+		} else {
+			state = State.UNTIL_CLOSE;
+		}
+	}
+
+	private void done() throws IOException {
+		state = State.DONE;
+		handler.complete();
+	}
+}
@@ -0,0 +1,492 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.petercipov.mobi.deployer.RxDocker;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.petercipov.mobi.deployer.nio.JsonNodes.bool;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.booleans;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.date;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.integer;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.keys;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.list;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.map;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.number;
+import static com.petercipov.mobi.deployer.nio.JsonNodes.text;
+
+/**
+ * Container info read right from the json of inspect response. Sections are
+ * wrapped on first access. Sections missing in projected inspection read as
+ * nulls.
+ *
+ * @author petercipov
+ */
+public class JsonInspectWrapper implements RxDocker.ContainerInfo {
+
+	private final JsonNode container;
+	private NetworkSettings networkSettings;
+	private ContainerState containerState;
+	private HostConfig hostConfig;
+	private ContainerConfig containerConfig;
+
+	public JsonInspectWrapper(JsonNode info) {
+		this.container = info;
+	}
+
+	@Override
+	public String id() {
+		return text(container, "Id");
+	}
+
+	@Override
+	public Date created() {
+		return date(container, "Created");
+	}
+
+	@Override
+	public String path() {
+		return text(container, "Path");
+	}
+
+	@Override
+	public List<String> args() {
+		return list(container, "Args");
+	}
+
+	@Override
+	public String image() {
+		return text(container, "Image");
+	}
+
+	@Override
+	public String resolvConfPath() {
+		return text(container, "ResolvConfPath");
+	}
+
+	@Override
+	public String hostnamePath() {
+		return text(container, "HostnamePath");
+	}
+
+	@Override
+	public String hostsPath() {
+		return text(container, "HostsPath");
+	}
+
+	@Override
+	public String name() {
+		return text(container, "Name");
+	}
+
+	@Override
+	public String driver() {
+		return text(container, "Driver");
+	}
+
+	@Override
+	public String execDriver() {
+		return text(container, "ExecDriver");
+	}
+
+	@Override
+	public String processLabel() {
+		return text(container, "ProcessLabel");
+	}
+
+	@Override
+	public String mountLabel() {
+		return text(container, "MountLabel");
+	}
+
+	@Override
+	public Map<String, String> volumes() {
+		return map(container, "Volumes");
+	}
+
+	@Override
+	public Map<String, Boolean> volumesRW() {
+		return booleans(container, "VolumesRW");
+	}
+
+	@Override
+	public RxDocker.ContainerConfig config() {
+		if (containerConfig == null) {
+			containerConfig = new ContainerConfig(container.path("Config"));
+		}
+		return containerConfig;
+	}
+
+	@Override
+	public RxDocker.HostConfig hostConfig() {
+		if (hostConfig == null) {
+			hostConfig = new HostConfig(container.path("HostConfig"));
+		}
+		return hostConfig;
+	}
+
+	@Override
+	public RxDocker.ContainerState state() {
+		if (containerState == null) {
+			containerState = new ContainerState(container.path("State"));
+		}
+		return containerState;
+	}
+
+	@Override
+	public RxDocker.NetworkSettings networkSettings() {
+		if (networkSettings == null) {
+			networkSettings = new NetworkSettings(container.path("NetworkSettings"));
+		}
+		return networkSettings;
+	}
+
+	@Override
+	public String toString() {
+		return "ContainerInfo(" + container + ')';
+	}
+
+	private static class ContainerConfig implements RxDocker.ContainerConfig {
+		private final JsonNode config;
+
+		public ContainerConfig(JsonNode config) {
+			this.config = config;
+		}
+
+		@Override
+		public String hostname() {
+			return text(config, "Hostname");
+		}
+
+		@Override
+		public String domainname() {
+			return text(config, "Domainname");
+		}
+
+		@Override
+		public String user() {
+			return text(config, "User");
+		}
+
+		@Override
+		public Boolean attachStdin() {
+			return bool(config, "AttachStdin");
+		}
+
+		@Override
+		public Boolean attachStdout() {
+			return bool(config, "AttachStdout");
+		}
+
+		@Override
+		public Boolean attachStderr() {
+			return bool(config, "AttachStderr");
+		}
+
+		@Override
+		public List<String> portSpecs() {
+			return list(config, "PortSpecs");
+		}
+
+		@Override
+		public Set<String> exposedPorts() {
+			return keys(config, "ExposedPorts");
+		}
+
+		@Override
+		public Boolean tty() {
+			return bool(config, "Tty");
+		}
+
+		@Override
+		public Boolean openStdin() {
+			return bool(config, "OpenStdin");
+		}
+
+		@Override
+		public Boolean stdinOnce() {
+			return bool(config, "StdinOnce");
+		}
+
+		@Override
+		public List<String> env() {
+			return list(config, "Env");
+		}
+
+		@Override
+		public List<String> cmd() {
+			return list(config, "Cmd");
+		}
+
+		@Override
+		public String image() {
+			return text(config, "Image");
+		}
+
+		@Override
+		public Set<String> volumes() {
+			return keys(config, "Volumes");
+		}
+
+		@Override
+		public String workingDir() {
+			return text(config, "WorkingDir");
+		}
+
+		@Override
+		public List<String> entrypoint() {
+			return list(config, "Entrypoint");
+		}
+
+		@Override
+		public Boolean networkDisabled() {
+			return bool(config, "NetworkDisabled");
+		}
+
+		@Override
+		public List<String> onBuild() {
+			return list(config, "OnBuild");
+		}
+
+		@Override
+		public Map<String, String> labels() {
+			return map(config, "Labels");
+		}
+
+		@Override
+		public String macAddress() {
+			return text(config, "MacAddress");
+		}
+	}
+
+	private static class HostConfig implements RxDocker.HostConfig {
+		private final JsonNode config;
+
+		public HostConfig(JsonNode config) {
+			this.config = config;
+		}
+
+		@Override
+		public List<String> binds() {
+			return list(config, "Binds");
+		}
+
+		@Override
+		public Boolean privileged() {
+			return bool(config, "Privileged");
+		}
+
+		@Override
+		public List<String> links() {
+			return list(config, "Links");
+		}
+
+		@Override
+		public Boolean publishAllPorts() {
+			return bool(config, "PublishAllPorts");
+		}
+
+		@Override
+		public List<String> dns() {
+			return list(config, "Dns");
+		}
+
+		@Override
+		public List<String> dnsSearch() {
+			return list(config, "DnsSearch");
+		}
+
+		@Override
+		public List<String> extraHosts() {
+			return list(config, "ExtraHosts");
+		}
+
+		@Override
+		public List<String> volumesFrom() {
+			return list(config, "VolumesFrom");
+		}
+
+		@Override
+		public String networkMode() {
+			return text(config, "NetworkMode");
+		}
+
+		@Override
+		public List<String> securityOpt() {
+			return list(config, "SecurityOpt");
+		}
+
+		@Override
+		public Long memory() {
+			return number(config, "Memory");
+		}
+
+		@Override
+		public Long memorySwap() {
+			return number(config, "MemorySwap");
+		}
+
+		@Override
+		public Long cpuShares() {
+			return number(config, "CpuShares");
+		}
+
+		@Override
+		public String cpusetCpus() {
+			return text(config, "CpusetCpus");
+		}
+
+		@Override
+		public Long cpuQuota() {
+			return number(config, "CpuQuota");
+		}
+
+		@Override
+		public String cgroupParent() {
+			return text(config, "CgroupParent");
+		}
+	}
+
+	private static class ContainerState implements RxDocker.ContainerState {
+		private final JsonNode state;
+
+		public ContainerState(JsonNode state) {
+			this.state = state;
+		}
+
+		@Override
+		public Boolean running() {
+			return bool(state, "Running");
+		}
+
+		@Override
+		public Boolean paused() {
+			return bool(state, "Paused");
+		}
+
+		@Override
+		public Boolean restarting() {
+			return bool(state, "Restarting");
+		}
+
+		@Override
+		public Integer pid() {
+			return integer(state, "Pid");
+		}
+
+		@Override
+		public Integer exitCode() {
+			return integer(state, "ExitCode");
+		}
+
+		@Override
+		public Date startedAt() {
+			return date(state, "StartedAt");
+		}
+
+		@Override
+		public Date finishedAt() {
+			return date(state, "FinishedAt");
+		}
+
+		@Override
+		public String error() {
+			return text(state, "Error");
+		}
+
+		@Override
+		public Boolean oomKilled() {
+			return bool(state, "OOMKilled");
+		}
+	}
+
+	private static class NetworkSettings implements RxDocker.NetworkSettings {
+		private final JsonNode settings;
+
+		public NetworkSettings(JsonNode settings) {
+			this.settings = settings;
+		}
+
+		@Override
+		public String ipAddress() {
+			return text(settings, "IPAddress");
+		}
+
+		@Override
+		public Integer ipPrefixLen() {
+			return integer(settings, "IPPrefixLen");
+		}
+
+		@Override
+		public String gateway() {
+			return text(settings, "Gateway");
+		}
+
+		@Override
+		public String bridge() {
+			return text(settings, "Bridge");
+		}
+
+		@Override
+		public Map<String, Map<String, String>> portMapping() {
+			JsonNode mapping = settings.get("PortMapping");
+			if (mapping == null || ! mapping.isObject()) {
+				return null;
+			}
+			Map<String, Map<String, String>> map = new HashMap<>();
+			mapping.fieldNames().forEachRemaining(protocol -> map.put(protocol, map(mapping, protocol)));
+			return map;
+		}
+
+		@Override
+		public Map<String, List<RxDocker.PortBinding>> ports() {
+			JsonNode ports = settings.get("Ports");
+			if (ports == null || ! ports.isObject()) {
+				return null;
+			}
+			Map<String, List<RxDocker.PortBinding>> map = new HashMap<>();
+			Iterator<Map.Entry<String, JsonNode>> it = ports.fields();
+			while (it.hasNext()) {
+				Map.Entry<String, JsonNode> port = it.next();
+				if (port.getValue().isArray()) {
+					List<RxDocker.PortBinding> bindings = new ArrayList<>(port.getValue().size());
+					for (JsonNode binding : port.getValue()) {
+						bindings.add(new PortBinding(binding));
+					}
+					map.put(port.getKey(), bindings);
+				} else {
+					map.put(port.getKey(), null);
+				}
+			}
+			return map;
+		}
+
+		@Override
+		public String macAddress() {
+			return text(settings, "MacAddress");
+		}
+	}
+
+	private static class PortBinding implements RxDocker.PortBinding {
+		private final JsonNode binding;
+
+		public PortBinding(JsonNode binding) {
+			this.binding = binding;
+		}
+
+		@Override
+		public String hostIp() {
+			return text(binding, "HostIp");
+		}
+
+		@Override
+		public int hostPort() {
+			return binding.path("HostPort").asInt();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reading of optional fields of docker responses. Missing and null fields are
+ * returned as null like docker-client does.
+ *
+ * @author petercipov
+ */
+final class JsonNodes {
+
+	private JsonNodes() {
+	}
+
+	static String text(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value == null || value.isNull() ? null : value.asText();
+	}
+
+	static Boolean bool(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value == null || value.isNull() ? null : value.asBoolean();
+	}
+
+	static Integer integer(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value == null || value.isNull() ? null : value.asInt();
+	}
+
+	static Long number(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value == null || value.isNull() ? null : value.asLong();
+	}
+
+	static Date date(JsonNode node, String field) {
+		String value = text(node, field);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Date.from(OffsetDateTime.parse(value, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant());
+		} catch (DateTimeParseException ex) {
+			return null;
+		}
+	}
+
+	static List<String> list(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || ! value.isArray()) {
+			return null;
+		}
+		List<String> list = new ArrayList<>(value.size());
+		for (JsonNode item : value) {
+			list.add(item.asText());
+		}
+		return list;
+	}
+
+	/**
+	 * @return field names of the object, f.e. exposed ports
+	 */
+	static Set<String> keys(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || ! value.isObject()) {
+			return null;
+		}
+		Set<String> keys = new LinkedHashSet<>();
+		value.fieldNames().forEachRemaining(keys::add);
+		return keys;
+	}
+
+	static Map<String, String> map(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || ! value.isObject()) {
+			return null;
+		}
+		Map<String, String> map = new HashMap<>();
+		Iterator<Map.Entry<String, JsonNode>> it = value.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> entry = it.next();
+			map.put(entry.getKey(), entry.getValue().isNull() ? null : entry.getValue().asText());
+		}
+		return map;
+	}
+
+	static Map<String, Boolean> booleans(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || ! value.isObject()) {
+			return null;
+		}
+		Map<String, Boolean> map = new HashMap<>();
+		Iterator<Map.Entry<String, JsonNode>> it = value.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> entry = it.next();
+			map.put(entry.getKey(), entry.getValue().asBoolean());
+		}
+		return map;
+	}
+
+	static Map<String, String> attributes(JsonNode node) {
+		if (! node.isObject()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> map = new HashMap<>();
+		Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> entry = it.next();
+			map.put(entry.getKey(), entry.getValue().asText());
+		}
+		return map;
+	}
+
+	/**
+	 * Parses json object keeping all scalar fields, but only the listed 
+	 * object and array fields. Other nested values are skipped by the 
+	 * parser without building their trees.
+	 */
+	static JsonNode project(ObjectMapper mapper, byte[] bytes, int offset, int length, Set<String> nested) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(bytes, offset, length)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Expecting json object");
+			}
+			ObjectNode projection = mapper.createObjectNode();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (value.isStructStart() && ! nested.contains(field)) {
+					parser.skipChildren();
+				} else {
+					projection.set(field, mapper.readTree(parser));
+				}
+			}
+			return projection;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+
+/**
+ * Splits stream of concatenated json documents, f.e. progress of pull or
+ * events, into separate documents. Json array, f.e. list of containers, can
+ * be split into its elements the same way, so the elements are passed as they
+ * arrive instead of after the whole body. Documents that lie in a single slice are
+ * parsed right from the slice, only documents split among more reads are
+ * copied.
+ *
+ * @author petercipov
+ */
+class JsonStreamDecoder {
+
+	private final ObjectMapper mapper;
+	private final Sink sink;
+	private final Bytes pending;
+	private final int base;
+	private int depth;
+	private boolean inString;
+	private boolean escaped;
+
+	JsonStreamDecoder(ObjectMapper mapper, Sink sink) {
+		this(mapper, sink, false);
+	}
+
+	/**
+	 * @param mapper
+	 * @param sink
+	 * @param arrayElements body is single json array of objects, its 
+	 * elements are passed instead of the array
+	 */
+	JsonStreamDecoder(ObjectMapper mapper, Sink sink, boolean arrayElements) {
+		this.mapper = mapper;
+		this.sink = sink;
+		this.pending = new Bytes();
+		this.base = arrayElements ? 1 : 0;
+		this.depth = 0;
+		this.inString = false;
+		this.escaped = false;
+	}
+
+	void feed(byte[] bytes, int offset, int length) throws IOException {
+		int end = offset + length;
+		int start = depth > base ? offset : -1;
+		for (int i = offset; i < end; i++) {
+			byte b = bytes[i];
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (b == '\\') {
+					escaped = true;
+				} else if (b == '"') {
+					inString = false;
+				}
+			} else if (b == '"') {
+				inString = depth > base;
+			} else if (b == '{' || b == '[') {
+				if (depth == base) {
+					start = i;
+				}
+				depth++;
+			} else if ((b == '}' || b == ']') && depth > 0) {
+				depth--;
+				if (depth == base && start >= 0) {
+					emit(bytes, start, i + 1);
+					start = -1;
+				}
+			}
+		}
+		if (depth > base) {
+			pending.append(bytes, start, end - start);
+		}
+	}
+
+	/**
+	 * @throws IOException if stream ended in the middle of document
+	 */
+	void finish() throws IOException {
+		if (depth > 0) {
+			throw new IOException("Json stream ended in the middle of document");
+		}
+	}
+
+	private void emit(byte[] bytes, int from, int to) throws IOException {
+		if (pending.size() > 0) {
+			pending.append(bytes, from, to - from);
+			JsonNode value = mapper.readValue(pending.array(), 0, pending.size(), JsonNode.class);
+			pending.reset();
+			sink.onValue(value);
+		} else {
+			sink.onValue(mapper.readValue(bytes, from, to - from, JsonNode.class));
+		}
+	}
+
+	interface Sink {
+		void onValue(JsonNode value) throws IOException;
+	}
+}
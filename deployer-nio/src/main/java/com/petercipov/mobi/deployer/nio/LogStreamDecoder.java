@@ -0,0 +1,103 @@
+package com.petercipov.mobi.deployer.nio;
+
+/**
+ * Removes framing of multiplexed stdout and stderr of containers without
+ * tty. Every frame starts by 8 bytes header, stream type followed by three
+ * zeros and big endian length of the payload. Payload of every frame is
+ * passed as one chunk. Output of tty containers is not framed, it is passed
+ * in chunks that end by a new line.
+ *
+ * @author petercipov
+ */
+class LogStreamDecoder {
+
+	private static final int HEADER_BYTES = 8;
+	private static final int MAX_STREAM_TYPE = 2;
+
+	private final Sink sink;
+	private final Bytes chunk;
+	private final byte[] header;
+	private int headerRead;
+	private int frameRemaining;
+	private Boolean multiplexed;
+
+	LogStreamDecoder(Sink sink) {
+		this.sink = sink;
+		this.chunk = new Bytes(4096);
+		this.header = new byte[HEADER_BYTES];
+		this.headerRead = 0;
+		this.frameRemaining = 0;
+		this.multiplexed = null;
+	}
+
+	void feed(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return;
+		}
+		if (multiplexed == null) {
+			multiplexed = bytes[offset] >= 0 && bytes[offset] <= MAX_STREAM_TYPE;
+		}
+		if (! multiplexed) {
+			feedRaw(bytes, offset, length);
+			return;
+		}
+
+		int pos = offset;
+		int end = offset + length;
+		while (pos < end) {
+			if (frameRemaining == 0) {
+				int read = Math.min(HEADER_BYTES - headerRead, end - pos);
+				System.arraycopy(bytes, pos, header, headerRead, read);
+				headerRead += read;
+				pos += read;
+				if (headerRead == HEADER_BYTES) {
+					headerRead = 0;
+					frameRemaining = (header[4] & 0xff) << 24
+						| (header[5] & 0xff) << 16
+						| (header[6] & 0xff) << 8
+						| (header[7] & 0xff);
+				}
+			} else {
+				int read = Math.min(frameRemaining, end - pos);
+				chunk.append(bytes, pos, read);
+				pos += read;
+				frameRemaining -= read;
+				if (frameRemaining == 0) {
+					emit();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Passes output that does not end by a new line.
+	 */
+	void finish() {
+		if (chunk.size() > 0) {
+			emit();
+		}
+	}
+
+	private void feedRaw(byte[] bytes, int offset, int length) {
+		int lastLine = offset + length - 1;
+		while (lastLine >= offset && bytes[lastLine] != '\n') {
+			lastLine--;
+		}
+		if (lastLine >= offset) {
+			chunk.append(bytes, offset, lastLine + 1 - offset);
+			emit();
+			chunk.append(bytes, lastLine + 1, offset + length - lastLine - 1);
+		} else {
+			chunk.append(bytes, offset, length);
+		}
+	}
+
+	private void emit() {
+		sink.onChunk(chunk.toString());
+		chunk.reset();
+	}
+
+	interface Sink {
+		void onChunk(String chunk);
+	}
+}
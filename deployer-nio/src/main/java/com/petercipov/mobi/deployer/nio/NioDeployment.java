@@ -0,0 +1,328 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.deployer.RxDeployment;
+import com.petercipov.traces.api.Trace;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import rx.Observable;
+
+/**
+ * Deployment kept directly as json body of create container request.
+ *
+ * @author petercipov
+ */
+public class NioDeployment extends RxDeployment {
+
+	private static final String MOBI_LABEL_PREFIX = "mobi.";
+	private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+		.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+	private final ObjectNode containerConfig;
+	private final ObjectNode hostConfig;
+	private final NioRxDocker docker;
+
+	public NioDeployment(NioRxDocker docker) {
+		this.containerConfig = JsonNodeFactory.instance.objectNode();
+		this.hostConfig = JsonNodeFactory.instance.objectNode();
+		this.docker = docker;
+	}
+
+	private NioDeployment(NioDeployment other) {
+		super(other);
+		this.containerConfig = other.containerConfig.deepCopy();
+		this.hostConfig = other.hostConfig.deepCopy();
+		this.docker = other.docker;
+	}
+
+	@Override
+	public RxDeployment copy() {
+		return new NioDeployment(this);
+	}
+
+	@Override
+	public RxDeployment addVolume(String hostPath, String guestPath) {
+		return addVolumes(Collections.singletonList(hostPath + ":" + guestPath));
+	}
+
+	@Override
+	public RxDeployment addVolumes(Iterable<String> volumeBindings) {
+		ArrayNode binds = hostConfig.withArray("Binds");
+		volumeBindings.forEach(binds::add);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addEnv(String variable) {
+		containerConfig.withArray("Env").add(variable);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addEnv(String name, String value) {
+		return addEnv(name.trim() + "=" + value.trim());
+	}
+
+	@Override
+	public RxDeployment addPortMapping(String port, int customPort) {
+		ArrayNode bindings = hostConfig.with("PortBindings").putArray(port);
+		bindings.addObject().put("HostPort", String.valueOf(customPort));
+		return this;
+	}
+
+	@Override
+	public RxDeployment setPublishAllPorts(boolean publish) {
+		hostConfig.put("PublishAllPorts", publish);
+		return this;
+	}
+
+	@Override
+	public RxDeployment publishAllPorts() {
+		return setPublishAllPorts(true);
+	}
+
+	@Override
+	public RxDeployment setCmd(String... cmd) {
+		addAll(containerConfig.putArray("Cmd"), cmd);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setCpuQuota(long quota) {
+		hostConfig.put("CpuQuota", quota);
+		return this;
+	}
+
+	@Override
+	public long memory() {
+		return hostConfig.path("Memory").asLong(0);
+	}
+
+	@Override
+	public long cpuShares() {
+		return hostConfig.path("CpuShares").asLong(0);
+	}
+
+	@Override
+	public RxDeployment setCpuShares(long shares) {
+		hostConfig.put("CpuShares", shares);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setDomainName(String name) {
+		containerConfig.put("Domainname", name);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setEntryPoint(String... entry) {
+		addAll(containerConfig.putArray("Entrypoint"), entry);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addExposedPort(String port) {
+		containerConfig.with("ExposedPorts").putObject(port);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setHostName(String hostName) {
+		containerConfig.put("Hostname", hostName);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addLabel(String key, String value) {
+		containerConfig.with("Labels").put(key, value);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setMacAdress(String mac) {
+		containerConfig.put("MacAddress", mac);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setMemory(long memory) {
+		hostConfig.put("Memory", memory);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setMemory(long memory, long swap) {
+		hostConfig.put("Memory", memory);
+		hostConfig.put("MemorySwap", swap < 0 ? -1 : memory + swap);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setNetworkDisabled(boolean disabled) {
+		containerConfig.put("NetworkDisabled", disabled);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setOpenStdIn(boolean open) {
+		containerConfig.put("OpenStdin", open);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setStdInOnce(boolean once) {
+		containerConfig.put("StdinOnce", once);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setTty(boolean enabled) {
+		containerConfig.put("Tty", enabled);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setUser(String user) {
+		containerConfig.put("User", user);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setWorkDir(String workDir) {
+		containerConfig.put("WorkingDir", workDir);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setCgroupParent(String parent) {
+		hostConfig.put("CgroupParent", parent);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addDns(String... dns) {
+		addAll(hostConfig.withArray("Dns"), dns);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addDnsSearch(String... dns) {
+		addAll(hostConfig.withArray("DnsSearch"), dns);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addExtraHosts(String... hosts) {
+		addAll(hostConfig.withArray("ExtraHosts"), hosts);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addLinks(String... links) {
+		addAll(hostConfig.withArray("Links"), links);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addLxcParameter(String key, String value) {
+		hostConfig.withArray("LxcConf").addObject()
+			.put("Key", key)
+			.put("Value", value);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setNetworkMode(String mode) {
+		hostConfig.put("NetworkMode", mode);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setPrivileged(boolean privileged) {
+		hostConfig.put("Privileged", privileged);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addSecurityOpt(String... opts) {
+		addAll(hostConfig.withArray("SecurityOpt"), opts);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addVolumeFrom(String... volumes) {
+		addAll(hostConfig.withArray("VolumesFrom"), volumes);
+		return this;
+	}
+
+	/**
+	 * @param image
+	 * @return body of create container request
+	 */
+	public ObjectNode buildForImage(Instance image) {
+		ObjectNode body = containerConfig.deepCopy();
+		body.put("Image", image.toString());
+		body.set("HostConfig", hostConfig.deepCopy());
+		return body;
+	}
+
+	@Override
+	public String specHash(Instance image) {
+		ObjectNode spec = buildForImage(image);
+		JsonNode labels = spec.path("Labels");
+		if (labels.isObject()) {
+			List<String> mobiLabels = new LinkedList<>();
+			Iterator<String> names = labels.fieldNames();
+			while (names.hasNext()) {
+				String label = names.next();
+				if (label.startsWith(MOBI_LABEL_PREFIX)) {
+					mobiLabels.add(label);
+				}
+			}
+			((ObjectNode) labels).remove(mobiLabels);
+			if (labels.size() == 0) {
+				spec.remove("Labels");
+			}
+		}
+		spec.put("Name", name().orElse(""));
+
+		try {
+			String canonical = CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.treeToValue(spec, Object.class));
+			return hex(MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8)));
+		} catch(JsonProcessingException | NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("Could not compute hash of deployment", ex);
+		}
+	}
+
+	@Override
+	protected Observable<String> createContainer(Trace trace, Instance image) {
+		return docker.createContainer(trace, image, this);
+	}
+
+	private static void addAll(ArrayNode array, String... values) {
+		for (String value : values) {
+			array.add(value);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,339 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.petercipov.mobi.config.HostSettings;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Non-blocking HTTP client of a docker host. Exchanges are spread over few 
+ * event loops, so any number of concurrent requests costs the loop threads
+ * only. Number of requests in flight is bounded by max connections of the
+ * host, further requests wait in a queue without holding a thread. Responses
+ * are emitted on the loop threads.
+ *
+ * @author petercipov
+ */
+public class NioHttpClient {
+
+	private static final int MAX_LOOPS = 4;
+
+	private final Endpoint endpoint;
+	private final ObjectMapper mapper;
+	private final EventLoop[] loops;
+	private final AtomicInteger nextLoop;
+	private final int maxInFlight;
+	private final Object lock;
+	private final Queue<HttpExchange> waiting;
+	private int inFlight;
+	private final AtomicLong exchanges;
+	private final AtomicLong waits;
+
+	public NioHttpClient(Endpoint endpoint, HostSettings settings) {
+		this(endpoint, settings, Math.min(MAX_LOOPS, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+	}
+
+	public NioHttpClient(Endpoint endpoint, HostSettings settings, int loopCount) {
+		this.endpoint = endpoint;
+		this.mapper = new ObjectMapper();
+		this.loops = new EventLoop[loopCount];
+		for (int i = 0; i < loopCount; i++) {
+			loops[i] = new EventLoop("mobi-nio-" + endpoint.host() + "-" + i, endpoint.provider());
+		}
+		this.nextLoop = new AtomicInteger();
+		this.maxInFlight = settings.getMaxConnections();
+		this.lock = new Object();
+		this.waiting = new ArrayDeque<>();
+		this.inFlight = 0;
+		this.exchanges = new AtomicLong();
+		this.waits = new AtomicLong();
+	}
+
+	public ObjectMapper mapper() {
+		return mapper;
+	}
+
+	/**
+	 * @param request
+	 * @return status of response, body is ignored
+	 */
+	public Observable<Integer> call(HttpRequest request) {
+		return exchange(request, subscriber -> new ResponseHandler() {
+			@Override
+			protected void onBody(byte[] bytes, int offset, int length) {
+			}
+
+			@Override
+			protected void onComplete(int status) {
+				subscriber.onNext(status);
+				subscriber.onCompleted();
+			}
+
+			@Override
+			protected void onError(Throwable th) {
+				subscriber.onError(th);
+			}
+		});
+	}
+
+	/**
+	 * @param request
+	 * @return whole body parsed as single json document
+	 */
+	public Observable<JsonNode> json(HttpRequest request) {
+		return exchange(request, subscriber -> new ResponseHandler() {
+			private final Bytes body = new Bytes(4096);
+
+			@Override
+			protected void onBody(byte[] bytes, int offset, int length) {
+				body.append(bytes, offset, length);
+			}
+
+			@Override
+			protected void onComplete(int status) throws IOException {
+				subscriber.onNext(mapper.readValue(body.array(), 0, body.size(), JsonNode.class));
+				subscriber.onCompleted();
+			}
+
+			@Override
+			protected void onError(Throwable th) {
+				subscriber.onError(th);
+			}
+		});
+	}
+
+	/**
+	 * @param request
+	 * @param nested object and array fields of the body to decode
+	 * @return body parsed as single json object without nested values that
+	 * were not listed
+	 */
+	public Observable<JsonNode> json(HttpRequest request, Set<String> nested) {
+		return exchange(request, subscriber -> new ResponseHandler() {
+			private final Bytes body = new Bytes(4096);
+
+			@Override
+			protected void onBody(byte[] bytes, int offset, int length) {
+				body.append(bytes, offset, length);
+			}
+
+			@Override
+			protected void onComplete(int status) throws IOException {
+				subscriber.onNext(JsonNodes.project(mapper, body.array(), 0, body.size(), nested));
+				subscriber.onCompleted();
+			}
+
+			@Override
+			protected void onError(Throwable th) {
+				subscriber.onError(th);
+			}
+		});
+	}
+
+	/**
+	 * @param request
+	 * @return documents of the body as they arrive, f.e. progress messages
+	 * of pull
+	 */
+	public Observable<JsonNode> jsonStream(HttpRequest request) {
+		return stream(request, values -> new StreamHandler<JsonNode>(values) {
+			private final JsonStreamDecoder decoder = new JsonStreamDecoder(mapper, values::onNext);
+
+			@Override
+			protected void onBody(byte[] bytes, int offset, int length) throws IOException {
+				decoder.feed(bytes, offset, length);
+			}
+
+			@Override
+			protected void onComplete(int status) throws IOException {
+				decoder.finish();
+				values.onCompleted();
+			}
+		});
+	}
+
+	/**
+	 * @param request
+	 * @return elements of json array of the body as they arrive, f.e. 
+	 * listed containers
+	 */
+	public Observable<JsonNode> jsonArray(HttpRequest request) {
+		return stream(request, values -> new StreamHandler<JsonNode>(values) {
+			private final JsonStreamDecoder decoder = new JsonStreamDecoder(mapper, values::onNext, true);
+
+			@Override
+			protected void onBody(byte[] bytes, int offset, int length) throws IOException {
+				decoder.feed(bytes, offset, length);
+			}
+
+			@Override
+			protected void onComplete(int status) throws IOException {
+				decoder.finish();
+				values.onCompleted();
+			}
+		});
+	}
+
+	/**
+	 * @param request
+	 * @return chunks of multiplexed stdout and stderr stream as they arrive
+	 */
+	public Observable<String> logStream(HttpRequest request) {
+		return stream(request, values -> new StreamHandler<String>(values) {
+			private final LogStreamDecoder decoder = new LogStreamDecoder(values::onNext);
+
+			@Override
+			protected void onBody(byte[] bytes, int offset, int length) {
+				decoder.feed(bytes, offset, length);
+			}
+
+			@Override
+			protected void onComplete(int status) {
+				decoder.finish();
+				values.onCompleted();
+			}
+		});
+	}
+
+	private <T> Observable<T> exchange(HttpRequest request, HandlerFactory<T> handlers) {
+		Observable<T> response = Observable.create((Subscriber<? super T> subscriber) -> {
+			EventLoop loop = nextLoop();
+			HttpExchange exchange = new HttpExchange(
+				loop, endpoint, request, 
+				handlers.create(subscriber), 
+				request.isLimited() ? this::release : () -> {}
+			);
+			subscriber.add(Subscriptions.create(exchange::cancel));
+			exchanges.incrementAndGet();
+			submit(exchange, request.isLimited());
+		}).onBackpressureBuffer();
+
+		return withTimeout(request, response);
+	}
+
+	/**
+	 * Values are emitted as subscriber requests them, reading of the 
+	 * connection is paused while subscriber does not keep up.
+	 */
+	private <T> Observable<T> stream(HttpRequest request, StreamHandlerFactory<T> handlers) {
+		Observable<T> response = Observable.create((Subscriber<? super T> subscriber) -> {
+			EventLoop loop = nextLoop();
+			DemandQueue<T> values = new DemandQueue<>(loop, subscriber);
+			HttpExchange exchange = new HttpExchange(
+				loop, endpoint, request, 
+				handlers.create(values), 
+				request.isLimited() ? this::release : () -> {}
+			);
+			values.attach(exchange);
+			subscriber.add(Subscriptions.create(exchange::cancel));
+			subscriber.setProducer(values);
+			exchanges.incrementAndGet();
+			submit(exchange, request.isLimited());
+		});
+
+		return withTimeout(request, response);
+	}
+
+	private static <T> Observable<T> withTimeout(HttpRequest request, Observable<T> response) {
+		return request.getTimeoutMillis() > 0
+			? response.timeout(request.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+			: response;
+	}
+
+	private EventLoop nextLoop() {
+		return loops[Math.abs(nextLoop.getAndIncrement() % loops.length)];
+	}
+
+	private void submit(HttpExchange exchange, boolean limited) {
+		if (limited) {
+			synchronized(lock) {
+				if (inFlight >= maxInFlight) {
+					waits.incrementAndGet();
+					waiting.add(exchange);
+					return;
+				}
+				inFlight++;
+			}
+		}
+		exchange.loop().execute(exchange::start);
+	}
+
+	private void release() {
+		HttpExchange next;
+		synchronized(lock) {
+			next = waiting.poll();
+			if (next == null) {
+				inFlight--;
+				return;
+			}
+		}
+		next.loop().execute(next::start);
+	}
+
+	public void close() {
+		for (EventLoop loop : loops) {
+			loop.close();
+		}
+	}
+
+	public int getInFlight() {
+		synchronized(lock) {
+			return inFlight;
+		}
+	}
+
+	/**
+	 * @return number of requests waiting for a free slot
+	 */
+	public int getWaiting() {
+		synchronized(lock) {
+			return waiting.size();
+		}
+	}
+
+	public long getExchanges() {
+		return exchanges.get();
+	}
+
+	/**
+	 * @return number of requests that had to wait for a free slot
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	@Override
+	public String toString() {
+		return "NioHttpClient(endpoint=" + endpoint + ", loops=" + loops.length + ", inFlight=" + getInFlight() + ", waiting=" + getWaiting() + ", exchanges=" + exchanges + ')';
+	}
+
+	private interface HandlerFactory<T> {
+		ResponseHandler create(Subscriber<? super T> subscriber);
+	}
+
+	private interface StreamHandlerFactory<T> {
+		ResponseHandler create(DemandQueue<T> values);
+	}
+
+	private abstract static class StreamHandler<T> extends ResponseHandler {
+		private final DemandQueue<T> values;
+
+		StreamHandler(DemandQueue<T> values) {
+			this.values = values;
+		}
+
+		@Override
+		protected void onError(Throwable th) {
+			values.onError(th);
+		}
+	}
+}
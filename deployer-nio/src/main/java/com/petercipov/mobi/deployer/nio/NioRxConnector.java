@@ -0,0 +1,47 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.deployer.GovernedRxDocker;
+import com.petercipov.mobi.deployer.RequestGovernor;
+import com.petercipov.mobi.deployer.RetryPolicy;
+import com.petercipov.mobi.deployer.RxConnector;
+import com.petercipov.mobi.deployer.RxDocker;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Connector of nio module. MobiRule loads it when the module is on the
+ * classpath, only one connector module can be on the classpath.
+ *
+ * @author petercipov
+ */
+public class NioRxConnector implements RxConnector {
+
+	private static final Map<String, NioHttpClient> CLIENTS = new ConcurrentHashMap<>();
+	private static final Map<String, Set<String>> IMAGES = new ConcurrentHashMap<>();
+
+	private final EndpointBuilder endpointBuilder = new EndpointBuilder();
+
+	@Override
+	public RxDocker createRxDocker(ApiHost api, Scheduler scheduler) {
+		NioHttpClient client = CLIENTS.computeIfAbsent(api.getUri(), uri -> 
+			new NioHttpClient(api.setupBuilder(endpointBuilder), api.getSettings())
+		);
+		Set<String> images = IMAGES.computeIfAbsent(api.getUri(), uri -> ConcurrentHashMap.newKeySet());
+		return new GovernedRxDocker(new NioRxDocker(client, scheduler, images), RequestGovernor.forHost(api), RetryPolicy.forHost(api));
+	}
+
+	/**
+	 * Calls do not block any thread, results are observed on computation
+	 * scheduler.
+	 * @param api
+	 * @return 
+	 */
+	@Override
+	public RxDocker createRxDocker(ApiHost api) {
+		return createRxDocker(api, Schedulers.computation());
+	}
+}
@@ -0,0 +1,410 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.deployer.JsonDockerEvent;
+import com.petercipov.mobi.deployer.RxDeployment;
+import com.petercipov.mobi.deployer.RxDocker;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import com.petercipov.traces.api.Trace.Event;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Docker over non-blocking HTTP client. No thread is blocked while waiting 
+ * for the daemon, responses are decoded on event loops of the client and
+ * observed on the scheduler.
+ *
+ * @author petercipov
+ */
+public class NioRxDocker implements RxDocker {
+
+	private static final long STOP_TIMEOUT_SLACK_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final Set<String> TOP_LEVEL_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		"Args", "Volumes", "VolumesRW"
+	)));
+	private static final Set<String> DEPLOY_FIELDS = nestedFields(EnumSet.of(
+		InspectSection.STATE, InspectSection.NETWORK_SETTINGS
+	));
+
+	private final NioHttpClient client;
+	private final Scheduler scheduler;
+	private final Set<String> images;
+
+	/**
+	 * @param client client shared by dockers of the host, it is not closed
+	 * together with this docker
+	 * @param scheduler
+	 * @param images references of images known to be present on the host
+	 */
+	public NioRxDocker(NioHttpClient client, Scheduler scheduler, Set<String> images) {
+		this.client = client;
+		this.scheduler = scheduler;
+		this.images = images;
+	}
+
+	@Override
+	public RxDeployment deployment() {
+		return new NioDeployment(this);
+	}
+
+	@Override
+	public Observable<Instance> pull(Trace trace, Instance image) {
+		String reference = image.toString();
+		String repository = reference.substring(0, reference.length() - image.getTag().length() - 1);
+		HttpRequest request = HttpRequest.post("/images/create")
+			.query("fromImage", repository)
+			.query("tag", image.getTag())
+			.timeout(0);
+
+		return traced(trace, Level.ERROR, "RxDocker: pulling failed",
+			client.jsonStream(request)
+				.flatMap(progress -> progress.hasNonNull("error")
+					? Observable.<JsonNode>error(new IOException("Pull of " + reference + " failed: " + progress.get("error").asText()))
+					: Observable.just(progress)
+				)
+				.doOnNext(progress -> logPullProgress(trace, progress))
+				.lastOrDefault(null)
+				.map(last -> {
+					images.add(reference);
+					return image;
+				}),
+			"RxDocker: pull(image)", image
+		);
+	}
+
+	@Override
+	public Observable<Boolean> isPresent(Trace trace, Instance image) {
+		return Observable.defer(() -> {
+			final String reference = image.toString();
+			trace.event("RxDocker: checking if image is present", image);
+			if (images.contains(reference)) {
+				return Observable.just(true);
+			}
+			return traced(trace, Level.INFO, "RxDocker: inspecting image failed",
+				client.call(HttpRequest.get("/images/" + reference + "/json"))
+					.map(status -> {
+						images.add(reference);
+						return true;
+					})
+					.onErrorResumeNext(th -> isNotFound(th)
+						? Observable.just(false)
+						: Observable.error(th)
+					),
+				"RxDocker: inspecting image (reference): ", reference
+			);
+		});
+	}
+
+	public Observable<String> createContainer(Trace trace, Instance image, NioDeployment deployment) {
+		return Observable.defer(() -> {
+			HttpRequest request;
+			try {
+				request = createRequest(image, deployment);
+			} catch (IOException ex) {
+				return Observable.error(ex);
+			}
+			return traced(trace, Level.ERROR, "RxDocker: creation failed",
+				create(image, request),
+				"RxDocker: creating container from image ", image
+			);
+		});
+	}
+
+	/**
+	 * Chains create, start and inspect requests on the event loop, results
+	 * are observed on the scheduler once for the whole sequence.
+	 */
+	@Override
+	public Observable<ContainerInfo> createAndStart(Trace trace, Instance image, RxDeployment deployment) {
+		if (! (deployment instanceof NioDeployment)) {
+			return RxDocker.super.createAndStart(trace, image, deployment);
+		}
+		return Observable.defer(() -> {
+			HttpRequest request;
+			try {
+				request = createRequest(image, (NioDeployment) deployment);
+			} catch (IOException ex) {
+				return Observable.error(ex);
+			}
+			return traced(trace, Level.ERROR, "RxDocker: creating and starting failed",
+				create(image, request)
+					.flatMap(containerId -> client.call(startRequest(containerId)).map(status -> containerId))
+					.flatMap(containerId -> client.json(inspectRequest(containerId), DEPLOY_FIELDS)
+						.map(JsonInspectWrapper::new)
+						.flatMap(inspection -> {
+							if (inspection.state().running()) {
+								return Observable.just((ContainerInfo) inspection);
+							} else {
+								return Observable.error(new IllegalStateException("Expecting container to run. containerId="+containerId));
+							}
+						})
+						.onErrorResumeNext(ex -> client.call(killRequest(containerId))
+							.flatMap(status -> client.call(removeRequest(containerId)))
+							.flatMap(status -> Observable.<ContainerInfo>error(ex))
+						)
+					),
+				"RxDocker: creating and starting container from image ", image
+			);
+		});
+	}
+
+	private HttpRequest createRequest(Instance image, NioDeployment deployment) throws IOException {
+		HttpRequest request = HttpRequest.post("/containers/create");
+		if (deployment.name().isPresent()) {
+			request.query("name", deployment.name().get());
+		}
+		return request.json(client.mapper().writeValueAsBytes(deployment.buildForImage(image)));
+	}
+
+	private Observable<String> create(Instance image, HttpRequest request) {
+		return client.json(request)
+			.map(created -> created.get("Id").asText())
+			.doOnError(th -> {
+				if (isNotFound(th)) {
+					images.remove(image.toString());
+				}
+			});
+	}
+
+	@Override
+	public Observable<String> startContainer(Trace trace, String containerId) {
+		return traced(trace, Level.ERROR, "RxDocker: starting failed",
+			client.call(startRequest(containerId)).map(status -> containerId),
+			"RxDocker: starting container (containerId): ", containerId
+		);
+	}
+
+	@Override
+	public Observable<String> killContainer(Trace trace, String containerId) {
+		return traced(trace, Level.INFO, "RxDocker: killing failed",
+			client.call(killRequest(containerId)).map(status -> containerId),
+			"RxDocker: killing container: ", containerId
+		);
+	}
+
+	@Override
+	public Observable<String> stopContainer(Trace trace, String containerId, int secondsBeforeFail) {
+		HttpRequest request = HttpRequest.post("/containers/" + containerId + "/stop")
+			.query("t", secondsBeforeFail)
+			.timeout(TimeUnit.SECONDS.toMillis(secondsBeforeFail) + STOP_TIMEOUT_SLACK_MILLIS);
+		return traced(trace, Level.INFO, "RxDocker: stopping failed",
+			client.call(request).map(status -> containerId),
+			"RxDocker: stopping container: ", containerId
+		);
+	}
+
+	@Override
+	public Observable<String> removeContainer(Trace trace, String containerId) {
+		return traced(trace, Level.INFO, "RxDocker: removing failed",
+			client.call(removeRequest(containerId)).map(status -> containerId),
+			"RxDocker: removing container: ", containerId
+		);
+	}
+
+	@Override
+	public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId) {
+		return traced(trace, Level.INFO, "RxDocker: inspecting failed",
+			client.json(inspectRequest(containerId)).map(JsonInspectWrapper::new),
+			"RxDocker: inspecting container (containerId): ", containerId
+		);
+	}
+
+	@Override
+	public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId, Set<InspectSection> sections) {
+		return traced(trace, Level.INFO, "RxDocker: inspecting failed",
+			client.json(inspectRequest(containerId), nestedFields(sections)).map(JsonInspectWrapper::new),
+			"RxDocker: inspecting container (containerId, sections): ", containerId, sections
+		);
+	}
+
+	@Override
+	public Observable<String> listContainerIds(Trace trace, Map<String, String> labels) {
+		return Observable.defer(() -> {
+			List<String> values = new ArrayList<>(labels.size());
+			for (Map.Entry<String, String> label : labels.entrySet()) {
+				values.add(label.getValue() == null ? label.getKey() : label.getKey() + "=" + label.getValue());
+			}
+			HttpRequest request = HttpRequest.get("/containers/json").query("all", 1);
+			try {
+				request.query("filters", client.mapper().writeValueAsString(Collections.singletonMap("label", values)));
+			} catch (IOException ex) {
+				return Observable.error(ex);
+			}
+			return traced(trace, Level.INFO, "RxDocker: listing failed",
+				client.jsonArray(request)
+					.map(container -> container.get("Id").asText()),
+				"RxDocker: listing containers (labels)", labels
+			);
+		});
+	}
+
+	@Override
+	public Observable<String> logs(Trace trace, String containerId) {
+		HttpRequest request = HttpRequest.get("/containers/" + containerId + "/logs")
+			.query("stdout", 1)
+			.query("stderr", 1);
+		return traced(trace, Level.INFO, "RxDocker: reading logs failed",
+			client.logStream(request)
+				.collect(StringBuilder::new, StringBuilder::append)
+				.map(StringBuilder::toString),
+			"RxDocker: reading logs of container: ", containerId
+		);
+	}
+
+	@Override
+	public Observable<String> logStream(Trace trace, String containerId, boolean follow) {
+		return Observable.defer(() -> {
+			HttpRequest request = HttpRequest.get("/containers/" + containerId + "/logs")
+				.query("stdout", 1)
+				.query("stderr", 1)
+				.query("follow", follow ? 1 : 0);
+			if (follow) {
+				request.unbounded();
+			}
+			trace.event("RxDocker: opening log stream", request);
+			return client.logStream(request)
+				.doOnError(th -> trace.event(Level.ERROR, "RxDocker: reading log stream failed (container)", containerId, th))
+				.observeOn(scheduler);
+		});
+	}
+
+	@Override
+	public Observable<DockerEvent> events(Trace trace, Map<String, List<String>> filters) {
+		return Observable.defer(() -> {
+			HttpRequest request = HttpRequest.get("/events").unbounded();
+			if (! filters.isEmpty()) {
+				try {
+					request.query("filters", client.mapper().writeValueAsString(filters));
+				} catch (IOException ex) {
+					return Observable.error(ex);
+				}
+			}
+			trace.event("RxDocker: opening events stream", request);
+			return client.jsonStream(request)
+				.map(node -> (DockerEvent) new JsonDockerEvent(node))
+				.doOnNext(event -> {
+					if (trace.isDebugEnabled()) {
+						trace.event(Level.DEBUG, "RxDocker: event (type, action, id)", event.type(), event.action(), event.id());
+					}
+				})
+				.observeOn(scheduler);
+		});
+	}
+
+	/**
+	 * Error statuses below 500 are answers of the daemon, other io errors 
+	 * and timeouts are transient.
+	 */
+	@Override
+	public boolean isTransient(Throwable th) {
+		for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DockerResponseException) {
+				return ((DockerResponseException) cause).getStatus() >= 500;
+			}
+			if (cause instanceof IOException || cause instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int status(Throwable th) {
+		for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DockerResponseException) {
+				return ((DockerResponseException) cause).getStatus();
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void close(Trace trace) {
+		trace.event("RxDocker: closed");
+	}
+
+	private <T> Observable<T> traced(Trace trace, Level failureLevel, String failure, Observable<T> call, String message, Object... args) {
+		return Observable.defer(() -> {
+			Event event = trace.start(message, args);
+			return call
+				.doOnError(th -> trace.event(failureLevel, failure, th))
+				.doOnTerminate(event::end);
+		}).observeOn(scheduler);
+	}
+
+	private static HttpRequest startRequest(String containerId) {
+		return HttpRequest.post("/containers/" + containerId + "/start");
+	}
+
+	private static HttpRequest killRequest(String containerId) {
+		return HttpRequest.post("/containers/" + containerId + "/kill");
+	}
+
+	private static HttpRequest removeRequest(String containerId) {
+		return HttpRequest.delete("/containers/" + containerId).query("v", 1);
+	}
+
+	private static HttpRequest inspectRequest(String containerId) {
+		return HttpRequest.get("/containers/" + containerId + "/json");
+	}
+
+	/**
+	 * @return json fields of the sections together with nested top level
+	 * values of container info
+	 */
+	private static Set<String> nestedFields(Set<InspectSection> sections) {
+		Set<String> fields = new HashSet<>(TOP_LEVEL_FIELDS);
+		for (InspectSection section : sections) {
+			switch (section) {
+				case CONFIG:
+					fields.add("Config");
+					break;
+				case HOST_CONFIG:
+					fields.add("HostConfig");
+					break;
+				case STATE:
+					fields.add("State");
+					break;
+				case NETWORK_SETTINGS:
+					fields.add("NetworkSettings");
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown section " + section);
+			}
+		}
+		return fields;
+	}
+
+	private static boolean isNotFound(Throwable th) {
+		return th instanceof DockerResponseException && ((DockerResponseException) th).isNotFound();
+	}
+
+	protected void logPullProgress(Trace trace, JsonNode progress) {
+		if (trace.isDebugEnabled()) {
+			String status = JsonNodes.text(progress, "status");
+			if ("downloading".equalsIgnoreCase(status)) {
+				//ommit donloading messages
+				return;
+			}
+			trace.event(Level.DEBUG, "pull progress (id, status, progress)", JsonNodes.text(progress, "id"), status, JsonNodes.text(progress, "progress"));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NioRxDocker(" + client + ')';
+	}
+}
@@ -0,0 +1,54 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+
+/**
+ * Receives parts of response as they are decoded on the event loop. Body of
+ * error responses is collected and reported as DockerResponseException.
+ *
+ * @author petercipov
+ */
+abstract class ResponseHandler {
+
+	private static final int MIN_ERROR_STATUS = 400;
+
+	private int status;
+	private Bytes error;
+
+	final void head(int status) throws IOException {
+		this.status = status;
+		if (status >= MIN_ERROR_STATUS) {
+			this.error = new Bytes();
+		} else {
+			onHead(status);
+		}
+	}
+
+	final void body(byte[] bytes, int offset, int length) throws IOException {
+		if (error != null) {
+			error.append(bytes, offset, length);
+		} else {
+			onBody(bytes, offset, length);
+		}
+	}
+
+	final void complete() throws IOException {
+		if (error != null) {
+			throw new DockerResponseException(status, error.toString().trim());
+		}
+		onComplete(status);
+	}
+
+	protected void onHead(int status) throws IOException {
+	}
+
+	protected abstract void onBody(byte[] bytes, int offset, int length) throws IOException;
+
+	protected abstract void onComplete(int status) throws IOException;
+
+	/**
+	 * Exchange failed, called at most once and never after complete.
+	 * @param th
+	 */
+	protected abstract void onError(Throwable th);
+}
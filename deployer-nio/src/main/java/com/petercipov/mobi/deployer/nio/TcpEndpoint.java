@@ -0,0 +1,76 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+
+/**
+ *
+ * @author petercipov
+ */
+public class TcpEndpoint extends Endpoint {
+
+	private final String host;
+	private final int port;
+
+	public TcpEndpoint(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public SelectorProvider provider() {
+		return SelectorProvider.provider();
+	}
+
+	@Override
+	public Channel open() throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		return new Channel() {
+			@Override
+			public SelectableChannel selectable() {
+				return channel;
+			}
+
+			@Override
+			public boolean connect() throws IOException {
+				return channel.connect(new InetSocketAddress(host, port));
+			}
+
+			@Override
+			public boolean finishConnect() throws IOException {
+				return channel.finishConnect();
+			}
+
+			@Override
+			public int read(ByteBuffer buffer) throws IOException {
+				return channel.read(buffer);
+			}
+
+			@Override
+			public int write(ByteBuffer buffer) throws IOException {
+				return channel.write(buffer);
+			}
+
+			@Override
+			public void close() throws IOException {
+				channel.close();
+			}
+		};
+	}
+
+	@Override
+	public String host() {
+		return host + ":" + port;
+	}
+
+	@Override
+	public String toString() {
+		return "TcpEndpoint(host=" + host + ", port=" + port + ')';
+	}
+}
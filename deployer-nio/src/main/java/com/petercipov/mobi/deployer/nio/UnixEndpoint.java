@@ -0,0 +1,79 @@
+package com.petercipov.mobi.deployer.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.spi.SelectorProvider;
+import jnr.enxio.channels.NativeSelectorProvider;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+
+/**
+ * Unix domain socket of docker daemon. Java 8 has no unix socket channels,
+ * channels of jnr are selected by native selectors of jnr.
+ *
+ * @author petercipov
+ */
+public class UnixEndpoint extends Endpoint {
+
+	private static final String HOST = "docker";
+
+	private final String path;
+
+	public UnixEndpoint(String path) {
+		this.path = path;
+	}
+
+	@Override
+	public SelectorProvider provider() {
+		return NativeSelectorProvider.getInstance();
+	}
+
+	@Override
+	public Channel open() throws IOException {
+		UnixSocketChannel channel = UnixSocketChannel.open();
+		channel.configureBlocking(false);
+		return new Channel() {
+			@Override
+			public SelectableChannel selectable() {
+				return channel;
+			}
+
+			@Override
+			public boolean connect() throws IOException {
+				return channel.connect(new UnixSocketAddress(new File(path)));
+			}
+
+			@Override
+			public boolean finishConnect() throws IOException {
+				return channel.finishConnect();
+			}
+
+			@Override
+			public int read(ByteBuffer buffer) throws IOException {
+				return channel.read(buffer);
+			}
+
+			@Override
+			public int write(ByteBuffer buffer) throws IOException {
+				return channel.write(buffer);
+			}
+
+			@Override
+			public void close() throws IOException {
+				channel.close();
+			}
+		};
+	}
+
+	@Override
+	public String host() {
+		return HOST;
+	}
+
+	@Override
+	public String toString() {
+		return "UnixEndpoint(path=" + path + ')';
+	}
+}
@@ -0,0 +1,176 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class HttpResponseDecoderTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Test
+	public void chunkedJsonStreamIsDecodedWhenFedByteByByte() throws IOException {
+		String response = "HTTP/1.1 200 OK\r\n"
+			+ "Transfer-Encoding: chunked\r\n"
+			+ "\r\n"
+			+ "1b\r\n{\"status\":\"a\",\"id\":\"x}\\\"\"}\r\n"
+			+ "d\r\n{\"status\":\"b\"\r\n"
+			+ "1\r\n}\r\n"
+			+ "0\r\n\r\n";
+
+		List<JsonNode> values = new ArrayList<>();
+		Handler handler = new Handler();
+		JsonStreamDecoder json = new JsonStreamDecoder(MAPPER, values::add);
+		handler.sink = json;
+		HttpResponseDecoder decoder = new HttpResponseDecoder(handler);
+
+		byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+		boolean done = false;
+		for (byte b : bytes) {
+			assertFalse(done);
+			done = decoder.feed(ByteBuffer.wrap(new byte[] {b}));
+		}
+
+		assertTrue(done);
+		assertEquals(200, handler.status);
+		assertEquals(2, values.size());
+		assertEquals("x}\"", values.get(0).get("id").asText());
+		assertEquals("b", values.get(1).get("status").asText());
+	}
+
+	@Test
+	public void bodyOfContentLengthIsPassedAsSlices() throws IOException {
+		Handler handler = new Handler();
+		HttpResponseDecoder decoder = new HttpResponseDecoder(handler);
+
+		assertTrue(decoder.feed(ByteBuffer.wrap("HTTP/1.1 201 Created\r\nContent-Length: 4\r\n\r\nabcd".getBytes(StandardCharsets.UTF_8))));
+		assertEquals(201, handler.status);
+		assertEquals("abcd", handler.body.toString());
+	}
+
+	@Test
+	public void responseWithoutLengthEndsByClose() throws IOException {
+		Handler handler = new Handler();
+		HttpResponseDecoder decoder = new HttpResponseDecoder(handler);
+
+		assertFalse(decoder.feed(ByteBuffer.wrap("HTTP/1.0 200 OK\r\n\r\nabc".getBytes(StandardCharsets.UTF_8))));
+		decoder.endOfStream();
+		assertTrue(decoder.isDone());
+		assertEquals("abc", handler.body.toString());
+	}
+
+	@Test
+	public void errorStatusIsReportedWithBody() throws IOException {
+		Handler handler = new Handler();
+		HttpResponseDecoder decoder = new HttpResponseDecoder(handler);
+
+		try {
+			decoder.feed(ByteBuffer.wrap("HTTP/1.1 404 Not Found\r\nContent-Length: 17\r\n\r\nno such container".getBytes(StandardCharsets.UTF_8)));
+			fail("error expected");
+		} catch (DockerResponseException ex) {
+			assertTrue(ex.isNotFound());
+			assertTrue(ex.getMessage().contains("no such container"));
+		}
+	}
+
+	@Test
+	public void logFramesArePassedAsChunks() {
+		List<String> chunks = new ArrayList<>();
+		LogStreamDecoder decoder = new LogStreamDecoder(chunks::add);
+		byte[] frames = {
+			1, 0, 0, 0, 0, 0, 0, 3, 'a', 'b', '\n',
+			2, 0, 0, 0, 0, 0, 0, 2, 'c', '\n'
+		};
+		decoder.feed(frames, 0, 5);
+		decoder.feed(frames, 5, 10);
+		decoder.feed(frames, 15, frames.length - 15);
+
+		decoder.finish();
+
+		assertEquals(Arrays.asList("ab\n", "c\n"), chunks);
+	}
+
+	@Test
+	public void rawLogIsPassedByLines() {
+		List<String> chunks = new ArrayList<>();
+		LogStreamDecoder decoder = new LogStreamDecoder(chunks::add);
+		byte[] raw = "ab\ncd\nef".getBytes(StandardCharsets.UTF_8);
+		decoder.feed(raw, 0, 4);
+		decoder.feed(raw, 4, raw.length - 4);
+		decoder.finish();
+
+		assertEquals(Arrays.asList("ab\n", "cd\n", "ef"), chunks);
+	}
+
+	@Test
+	public void elementsOfJsonArrayArePassedAsTheyArrive() throws IOException {
+		List<JsonNode> values = new ArrayList<>();
+		JsonStreamDecoder decoder = new JsonStreamDecoder(MAPPER, values::add, true);
+		byte[] array = "[{\"Id\":\"a\",\"Names\":[\"/x]\"]},{\"Id\":\"b\"}]".getBytes(StandardCharsets.UTF_8);
+		decoder.feed(array, 0, 28);
+		assertEquals(1, values.size());
+		decoder.feed(array, 28, array.length - 28);
+		decoder.finish();
+
+		assertEquals(2, values.size());
+		assertEquals("a", values.get(0).get("Id").asText());
+		assertEquals("b", values.get(1).get("Id").asText());
+	}
+
+	@Test
+	public void projectionSkipsUnlistedSections() throws IOException {
+		byte[] inspect = ("{\"Id\":\"a\",\"Config\":{\"Labels\":{\"x\":\"y\"}},"
+			+ "\"State\":{\"Running\":true},\"Mounts\":[{\"Source\":\"/v\"}],\"Name\":\"/c\"}")
+			.getBytes(StandardCharsets.UTF_8);
+		JsonNode projection = JsonNodes.project(MAPPER, inspect, 0, inspect.length, Collections.singleton("State"));
+
+		assertEquals("a", projection.get("Id").asText());
+		assertEquals("/c", projection.get("Name").asText());
+		assertTrue(projection.get("State").get("Running").asBoolean());
+		assertFalse(projection.has("Config"));
+		assertFalse(projection.has("Mounts"));
+	}
+
+	private static class Handler extends ResponseHandler {
+		private int status;
+		private final Bytes body = new Bytes();
+		private JsonStreamDecoder sink;
+
+		@Override
+		protected void onHead(int status) {
+			this.status = status;
+		}
+
+		@Override
+		protected void onBody(byte[] bytes, int offset, int length) throws IOException {
+			if (sink != null) {
+				sink.feed(bytes, offset, length);
+			} else {
+				body.append(bytes, offset, length);
+			}
+		}
+
+		@Override
+		protected void onComplete(int status) throws IOException {
+			if (sink != null) {
+				sink.finish();
+			}
+		}
+
+		@Override
+		protected void onError(Throwable th) {
+		}
+	}
+}
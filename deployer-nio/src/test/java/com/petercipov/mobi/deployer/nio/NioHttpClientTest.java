@@ -0,0 +1,95 @@
+package com.petercipov.mobi.deployer.nio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.petercipov.mobi.config.HostSettings;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class NioHttpClientTest {
+
+	private static final int DOCUMENTS = 10000;
+
+	private ServerSocket server;
+	private NioHttpClient client;
+
+	@Before
+	public void before() throws IOException {
+		server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Thread daemon = new Thread(this::serveDocuments, "fake-daemon");
+		daemon.setDaemon(true);
+		daemon.start();
+		client = new NioHttpClient(new TcpEndpoint("127.0.0.1", server.getLocalPort()), HostSettings.DEFAULT, 1);
+	}
+
+	@After
+	public void after() throws IOException {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void streamedDocumentsAreEmittedOnDemand() throws InterruptedException {
+		TestSubscriber<JsonNode> subscriber = new TestSubscriber<>(1);
+		client.jsonStream(HttpRequest.get("/events").unbounded()).subscribe(subscriber);
+
+		awaitValues(subscriber, 1);
+		Thread.sleep(100);
+		assertEquals(1, subscriber.getOnNextEvents().size());
+
+		subscriber.requestMore(5);
+		awaitValues(subscriber, 6);
+		Thread.sleep(100);
+		assertEquals(6, subscriber.getOnNextEvents().size());
+		assertEquals(5, subscriber.getOnNextEvents().get(5).get("n").asInt());
+
+		subscriber.requestMore(Long.MAX_VALUE);
+		subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+		subscriber.assertNoErrors();
+		subscriber.assertCompleted();
+		assertEquals(DOCUMENTS, subscriber.getOnNextEvents().size());
+	}
+
+	private static void awaitValues(TestSubscriber<?> subscriber, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (subscriber.getOnNextEvents().size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(count, subscriber.getOnNextEvents().size());
+	}
+
+	private void serveDocuments() {
+		try (Socket socket = server.accept()) {
+			InputStream in = socket.getInputStream();
+			int matched = 0;
+			while (matched < 4) {
+				int b = in.read();
+				if (b < 0) {
+					return;
+				}
+				matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+			}
+			OutputStream out = socket.getOutputStream();
+			out.write("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+			for (int i = 0; i < DOCUMENTS; i++) {
+				out.write(("{\"n\":" + i + "}\n").getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException ex) {
+			// client went away
+		}
+	}
+}
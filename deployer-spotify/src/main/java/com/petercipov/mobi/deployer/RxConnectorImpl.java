@@ -1,9 +1,15 @@
 package com.petercipov.mobi.deployer;
 
 import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.deployer.spotify.DockerClientPool;
+import com.petercipov.mobi.deployer.spotify.ImageIndex;
 import com.petercipov.mobi.deployer.spotify.SpotifyClientBuilder;
 import com.petercipov.mobi.deployer.spotify.SpotifyRxDocker;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import rx.Observable;
 import rx.Scheduler;
+import rx.schedulers.Schedulers;
 
 /**
  *
@@ -11,10 +17,41 @@ import rx.Scheduler;
  */
 public class RxConnectorImpl implements RxConnector {
 	
+	private static final Map<String, ImageIndex> IMAGE_INDEXES = new ConcurrentHashMap<>();
+	private static final Map<String, DockerClientPool> CLIENT_POOLS = new ConcurrentHashMap<>();
+	private static final Map<String, IoExecutor> IO_EXECUTORS = new ConcurrentHashMap<>();
+	
 	private final SpotifyClientBuilder apiBuilder = new SpotifyClientBuilder();
 
 	@Override
 	public RxDocker createRxDocker(ApiHost api, Scheduler scheduler) {
-		return new SpotifyRxDocker(api.setupBuilder(apiBuilder), scheduler);
+		ImageIndex images = IMAGE_INDEXES.computeIfAbsent(api.getUri(), uri -> new ImageIndex());
+		return new GovernedRxDocker(new SpotifyRxDocker(clientPool(api), scheduler, images), RequestGovernor.forHost(api), RetryPolicy.forHost(api));
+	}
+	
+	@Override
+	public Observable<Integer> prewarm(ApiHost api, int connections) {
+		return clientPool(api).prewarm(connections, Schedulers.io());
+	}
+	
+	private DockerClientPool clientPool(ApiHost api) {
+		return CLIENT_POOLS.computeIfAbsent(api.getUri(), uri -> 
+			new DockerClientPool(api.setupBuilder(apiBuilder), api.getSettings()).startEviction(Schedulers.computation())
+		);
+	}
+	
+	@Override
+	public RxDocker createRxDocker(ApiHost api) {
+		return createRxDocker(api, ioExecutor(api).scheduler());
+	}
+	
+	/**
+	 * @param api
+	 * @return executor running blocking calls to the host
+	 */
+	public static IoExecutor ioExecutor(ApiHost api) {
+		return IO_EXECUTORS.computeIfAbsent(api.getUri(), uri -> 
+			new IoExecutor("mobi-io-" + api.getPublishedHost(), api.getSettings().getIoThreads())
+		);
 	}
 }
@@ -0,0 +1,242 @@
+package com.petercipov.mobi.deployer.spotify;
+
+import com.petercipov.mobi.config.HostSettings;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+
+/**
+ * Docker clients of a host shared by all threads. DefaultDockerClient is
+ * thread safe and keeps its own pool of connections, so the pool holds single
+ * client with connection pool sized to the maximal number of connections.
+ * Number of concurrent requests is bounded by leases, caller waits for a free
+ * lease. Client unused for longer than idle timeout is closed together with
+ * its connections and created again on demand. Streamed responses share one
+ * pool of connections of the same size.
+ *
+ * @author petercipov
+ */
+public class DockerClientPool {
+
+	private final DefaultDockerClient.Builder builder;
+	private final HostSettings settings;
+	private final Semaphore permits;
+	private final SpotifyStreams streams;
+	private static final long PREWARM_SYNC_MILLIS = 1000;
+
+	private final Object lock;
+	private DefaultDockerClient client;
+	private int leased;
+	private long idleSince;
+	private boolean closed;
+	private Subscription eviction;
+
+	private final AtomicLong leases;
+	private final AtomicLong waits;
+	private final AtomicLong created;
+	private final AtomicLong evicted;
+
+	public DockerClientPool(DefaultDockerClient.Builder builder, HostSettings settings) {
+		this.builder = builder.connectionPoolSize(settings.getMaxConnections());
+		this.settings = settings;
+		this.permits = new Semaphore(settings.getMaxConnections(), true);
+		this.streams = new SpotifyStreams(this.builder, settings.getMaxConnections());
+		this.lock = new Object();
+		this.client = null;
+		this.leased = 0;
+		this.idleSince = System.currentTimeMillis();
+		this.closed = false;
+		this.leases = new AtomicLong();
+		this.waits = new AtomicLong();
+		this.created = new AtomicLong();
+		this.evicted = new AtomicLong();
+	}
+
+	/**
+	 * Periodically closes client that is idle for too long
+	 * @param scheduler
+	 * @return this
+	 */
+	public DockerClientPool startEviction(Scheduler scheduler) {
+		synchronized(lock) {
+			if (eviction == null) {
+				long period = Math.max(1000, settings.getIdleTimeoutMillis() / 2);
+				Scheduler.Worker worker = scheduler.createWorker();
+				eviction = worker;
+				worker.schedulePeriodically(
+					() -> evictIdle(System.currentTimeMillis()),
+					period,
+					period,
+					TimeUnit.MILLISECONDS
+				);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Waits for free lease. Lease has to be closed after the request.
+	 * @return lease of client
+	 * @throws InterruptedException
+	 */
+	public Lease borrow() throws InterruptedException {
+		if (! permits.tryAcquire()) {
+			waits.incrementAndGet();
+			permits.acquire();
+		}
+
+		DockerClient leasedClient;
+		synchronized(lock) {
+			if (closed) {
+				permits.release();
+				throw new IllegalStateException("Docker client pool is closed");
+			}
+			if (client == null) {
+				client = builder.build();
+				created.incrementAndGet();
+			}
+			leased++;
+			leasedClient = client;
+		}
+		leases.incrementAndGet();
+		return new Lease(leasedClient);
+	}
+
+	/**
+	 * Opens connections in advance, so the first requests do not pay for 
+	 * connecting and TLS handshake. Daemon is pinged by all leases at once, 
+	 * so every ping needs its own connection.
+	 * @param connections number of connections, at most max connections
+	 * @param scheduler has to run all pings in parallel
+	 * @return number of opened connections
+	 */
+	public Observable<Integer> prewarm(int connections, Scheduler scheduler) {
+		int count = Math.min(connections, getMaxConnections());
+		CountDownLatch ready = new CountDownLatch(count);
+		return Observable.range(0, count)
+			.flatMap(i -> Observable.fromCallable(() -> {
+				try (Lease lease = borrow()) {
+					ready.countDown();
+					ready.await(PREWARM_SYNC_MILLIS, TimeUnit.MILLISECONDS);
+					return lease.client().ping();
+				}
+			}).subscribeOn(scheduler), count)
+			.count();
+	}
+
+	/**
+	 * @param now
+	 * @return true if client was closed
+	 */
+	public boolean evictIdle(long now) {
+		streams.evictIdle(settings.getIdleTimeoutMillis());
+		DockerClient idle = null;
+		synchronized(lock) {
+			if (client != null && leased == 0 && now - idleSince >= settings.getIdleTimeoutMillis()) {
+				idle = client;
+				client = null;
+			}
+		}
+		if (idle != null) {
+			idle.close();
+			evicted.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	public void close() {
+		DockerClient toClose;
+		synchronized(lock) {
+			closed = true;
+			if (eviction != null) {
+				eviction.unsubscribe();
+			}
+			toClose = client;
+			client = null;
+		}
+		if (toClose != null) {
+			toClose.close();
+		}
+		streams.close();
+	}
+
+	private void giveBack() {
+		synchronized(lock) {
+			leased--;
+			if (leased == 0) {
+				idleSince = System.currentTimeMillis();
+			}
+		}
+		permits.release();
+	}
+
+	SpotifyStreams streams() {
+		return streams;
+	}
+
+	public int getMaxConnections() {
+		return settings.getMaxConnections();
+	}
+
+	public int getLeased() {
+		synchronized(lock) {
+			return leased;
+		}
+	}
+
+	/**
+	 * @return number of borrows
+	 */
+	public long getLeases() {
+		return leases.get();
+	}
+
+	/**
+	 * @return number of borrows that had to wait for free lease
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	public long getCreated() {
+		return created.get();
+	}
+
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	@Override
+	public String toString() {
+		return "DockerClientPool(maxConnections=" + getMaxConnections() + ", leased=" + getLeased() + ", leases=" + leases + ", waits=" + waits + ", created=" + created + ", evicted=" + evicted + ')';
+	}
+
+	public class Lease implements AutoCloseable {
+		private final DockerClient client;
+		private boolean returned;
+
+		private Lease(DockerClient client) {
+			this.client = client;
+			this.returned = false;
+		}
+
+		public DockerClient client() {
+			return client;
+		}
+
+		@Override
+		public void close() {
+			if (! returned) {
+				returned = true;
+				giveBack();
+			}
+		}
+	}
+}
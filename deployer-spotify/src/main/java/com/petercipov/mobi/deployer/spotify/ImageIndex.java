@@ -0,0 +1,132 @@
+package com.petercipov.mobi.deployer.spotify;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.spotify.docker.client.messages.Image;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of images present on a single docker host. Images are looked up by
+ * full reference (repository:tag) or by digest in constant time, so checking
+ * presence does not depend on the number of images on the daemon. Image 
+ * removed from the daemon by someone else is evicted when creation of its
+ * container fails.
+ *
+ * @author petercipov
+ */
+public class ImageIndex {
+
+	private static final String DIGEST_DELIMITER = "@";
+	private static final String DIGEST_PREFIX = "sha256:";
+	private static final String UNTAGGED = "<none>:<none>";
+
+	private final Map<String, String> byReference;
+	private final Map<String, String> byDigest;
+	private volatile boolean populated;
+
+	public ImageIndex() {
+		this.byReference = new ConcurrentHashMap<>();
+		this.byDigest = new ConcurrentHashMap<>();
+		this.populated = false;
+	}
+
+	public boolean isPopulated() {
+		return populated;
+	}
+
+	public void populate(List<Image> images) {
+		for (Image image : images) {
+			add(image);
+		}
+		markPopulated();
+	}
+
+	/**
+	 * Adds all tags of the listed image.
+	 * @param image
+	 */
+	public void add(Image image) {
+		if (image.repoTags() == null) {
+			add(image.id(), image.id());
+			return;
+		}
+		for (String tag : image.repoTags()) {
+			add(tag, image.id());
+		}
+	}
+
+	/**
+	 * Adds tags and digests of image listed or inspected by the daemon, 
+	 * docker-client does not decode the digests.
+	 * @param image json of the image with Id, RepoTags and RepoDigests
+	 */
+	public void add(JsonNode image) {
+		String imageId = image.path("Id").asText(null);
+		if (imageId == null) {
+			return;
+		}
+		add(imageId, imageId);
+		for (JsonNode tag : image.path("RepoTags")) {
+			add(tag.asText(), imageId);
+		}
+		for (JsonNode digest : image.path("RepoDigests")) {
+			add(digest.asText(), imageId);
+		}
+	}
+
+	/**
+	 * Marks index as complete, all images of the host were added.
+	 */
+	public void markPopulated() {
+		populated = true;
+	}
+
+	public void add(String reference, String imageId) {
+		if (imageId == null || UNTAGGED.equals(reference)) {
+			return;
+		}
+
+		byDigest.put(imageId, imageId);
+		int delimiter = reference.indexOf(DIGEST_DELIMITER);
+		if (delimiter >= 0) {
+			byDigest.put(reference.substring(delimiter + 1), imageId);
+		} else if (! reference.equals(imageId)) {
+			byReference.put(reference, imageId);
+		}
+	}
+
+	public Optional<String> lookup(String reference) {
+		int delimiter = reference.indexOf(DIGEST_DELIMITER);
+		if (delimiter >= 0) {
+			return Optional.ofNullable(byDigest.get(reference.substring(delimiter + 1)));
+		}
+		if (reference.startsWith(DIGEST_PREFIX)) {
+			return Optional.ofNullable(byDigest.get(reference));
+		}
+		return Optional.ofNullable(byReference.get(reference));
+	}
+
+	public boolean contains(String reference) {
+		return lookup(reference).isPresent();
+	}
+
+	public void evict(String reference) {
+		int delimiter = reference.indexOf(DIGEST_DELIMITER);
+		if (delimiter >= 0) {
+			byDigest.remove(reference.substring(delimiter + 1));
+		} else {
+			byReference.remove(reference);
+		}
+	}
+
+	public int size() {
+		return byReference.size();
+	}
+
+	@Override
+	public String toString() {
+		return "ImageIndex(populated=" + populated + ", references=" + byReference.size() + ", digests=" + byDigest.size() + ')';
+	}
+}
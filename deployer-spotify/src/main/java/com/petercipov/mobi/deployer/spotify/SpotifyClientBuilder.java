@@ -8,6 +8,10 @@ import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerCertificateException;
 import com.spotify.docker.client.DockerCertificates;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLSessionContext;
 
 /**
  *
@@ -15,6 +19,9 @@ import java.nio.file.Paths;
  */
 public class SpotifyClientBuilder implements ApiHost.Builder<DefaultDockerClient.Builder> {
 
+	private static final int TLS_SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+	private static final Map<String, DockerCertificates> CERTIFICATES = new ConcurrentHashMap<>();
+
 	@Override
 	public DefaultDockerClient.Builder build(HttpRestApiHost host) {
 		return DefaultDockerClient
@@ -28,13 +35,29 @@ public class SpotifyClientBuilder implements ApiHost.Builder<DefaultDockerClient
 		DefaultDockerClient.Builder builder = DefaultDockerClient.builder();
 			
 		builder.uri(host.getUri());
-		try {
-			builder.dockerCertificates(new DockerCertificates(Paths.get(host.getCertPath())));			
-		} catch(DockerCertificateException ex) {
-			throw new IllegalArgumentException("Certificates could not be resolved", ex);
-		}
+		builder.dockerCertificates(certificates(host));
 		return builder;
 	}
+	
+	/**
+	 * Certificates and ssl context are loaded once per host. All connections
+	 * of the host share the context, so its session cache lets them resume 
+	 * TLS session instead of doing full handshake.
+	 * @param host
+	 * @return 
+	 */
+	public static DockerCertificates certificates(HttpsRestApiHost host) {
+		return CERTIFICATES.computeIfAbsent(host.getUri() + host.getCertPath(), key -> {
+			try {
+				DockerCertificates certificates = new DockerCertificates(Paths.get(host.getCertPath()));
+				SSLSessionContext sessions = certificates.sslContext().getClientSessionContext();
+				sessions.setSessionTimeout(TLS_SESSION_TIMEOUT_SECONDS);
+				return certificates;
+			} catch(DockerCertificateException ex) {
+				throw new IllegalArgumentException("Certificates could not be resolved", ex);
+			}
+		});
+	}
 
 	@Override
 	public DefaultDockerClient.Builder build(UnixRestApiHost host) {
@@ -11,23 +11,21 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 /**
+ * Sections of inspection are wrapped on first access, callers usually read
+ * state and ports only.
  *
  * @author petercipov
  */
 public class SpotifyInspectWrapper implements RxDocker.ContainerInfo {
 
 	private final ContainerInfo container;
-	private final NetworkSettings networkSettings;
-	private final ContainerState containerState;
-	private final HostConfig hostConfig;
-	private final ContainerConfig containerConfig;
+	private NetworkSettings networkSettings;
+	private ContainerState containerState;
+	private HostConfig hostConfig;
+	private ContainerConfig containerConfig;
 
 	public SpotifyInspectWrapper(ContainerInfo info) {
 		this.container = info;
-		this.networkSettings = new NetworkSettings(this.container.networkSettings());
-		this.containerState = new ContainerState(this.container.state());
-		this.hostConfig = new HostConfig(this.container.hostConfig());
-		this.containerConfig = new ContainerConfig(this.container.config());
 	}
 
 	@Override
@@ -107,21 +105,33 @@ public class SpotifyInspectWrapper implements RxDocker.ContainerInfo {
 
 	@Override
 	public RxDocker.ContainerConfig config() {
+		if (this.containerConfig == null) {
+			this.containerConfig = new ContainerConfig(this.container.config());
+		}
 		return this.containerConfig;
 	}
 
 	@Override
 	public RxDocker.HostConfig hostConfig() {
+		if (this.hostConfig == null) {
+			this.hostConfig = new HostConfig(this.container.hostConfig());
+		}
 		return this.hostConfig;
 	}
 
 	@Override
 	public RxDocker.ContainerState state() {
+		if (this.containerState == null) {
+			this.containerState = new ContainerState(this.container.state());
+		}
 		return this.containerState;
 	}
 
 	@Override
 	public RxDocker.NetworkSettings networkSettings() {
+		if (this.networkSettings == null) {
+			this.networkSettings = new NetworkSettings(this.container.networkSettings());
+		}
 		return this.networkSettings;
 	}
 	
@@ -386,11 +396,10 @@ public class SpotifyInspectWrapper implements RxDocker.ContainerInfo {
 	private static class NetworkSettings implements RxDocker.NetworkSettings{
 
 		private final com.spotify.docker.client.messages.NetworkSettings settings;
-		private final Map<String, List<RxDocker.PortBinding>> ports;
+		private Map<String, List<RxDocker.PortBinding>> ports;
 
 		public NetworkSettings(com.spotify.docker.client.messages.NetworkSettings settings) {
 			this.settings = settings;
-			this.ports = wrapPorts();
 		}
 		
 		@Override
@@ -420,6 +429,9 @@ public class SpotifyInspectWrapper implements RxDocker.ContainerInfo {
 
 		@Override
 		public Map<String, List<RxDocker.PortBinding>> ports() {
+			if (this.ports == null) {
+				this.ports = wrapPorts();
+			}
 			return this.ports;
 		}
 
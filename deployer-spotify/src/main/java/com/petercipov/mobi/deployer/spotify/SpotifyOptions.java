@@ -1,15 +1,22 @@
 package com.petercipov.mobi.deployer.spotify;
 
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.petercipov.mobi.Instance;
 import com.petercipov.mobi.deployer.RxDeployment;
 import com.petercipov.traces.api.Trace;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.PortBinding;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import rx.Observable;
@@ -20,6 +27,11 @@ import rx.Observable;
  * @author Peter Cipov
  */
 public class SpotifyOptions extends RxDeployment {
+	
+	private static final String MOBI_LABEL_PREFIX = "mobi.";
+	private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+		.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+		.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
     
     private final ContainerConfig.Builder containerConfig;
 	private final HostConfig.Builder hostConfig;
@@ -30,6 +42,21 @@ public class SpotifyOptions extends RxDeployment {
 		this.hostConfig = HostConfig.builder();
 		this.docker = docker;
     }
+	
+	private SpotifyOptions(SpotifyOptions other) {
+		super(other);
+		this.containerConfig = other.containerConfig.build().toBuilder();
+		this.hostConfig = other.hostConfig.build().toBuilder();
+		if (other.hostConfig.portBindings() != null) {
+			this.hostConfig.portBindings(new HashMap<>(other.hostConfig.portBindings()));
+		}
+		this.docker = other.docker;
+	}
+
+	@Override
+	public RxDeployment copy() {
+		return new SpotifyOptions(this);
+	}
 
     @Override
     public RxDeployment addVolume(String hostPath, String guestPath) {
@@ -113,6 +140,18 @@ public class SpotifyOptions extends RxDeployment {
 		return this;
 	}
 
+	@Override
+	public long memory() {
+		Long memory = this.containerConfig.memory();
+		return memory == null ? 0 : memory;
+	}
+
+	@Override
+	public long cpuShares() {
+		Long shares = this.containerConfig.cpuShares();
+		return shares == null ? 0 : shares;
+	}
+
 	@Override
 	public RxDeployment setCpuShares(long shares) {
 		this.containerConfig.cpuShares(shares);
@@ -314,6 +353,35 @@ public class SpotifyOptions extends RxDeployment {
 		return setPublishAllPorts(true);
 	}
 
+	@Override
+	public String specHash(Instance image) {
+		ObjectNode spec = CANONICAL_MAPPER.valueToTree(buildForImage(image));
+		if (spec.has("Labels") && spec.get("Labels").isObject()) {
+			ObjectNode labels = (ObjectNode) spec.get("Labels");
+			List<String> mobiLabels = new LinkedList<>();
+			Iterator<String> names = labels.fieldNames();
+			while (names.hasNext()) {
+				String label = names.next();
+				if (label.startsWith(MOBI_LABEL_PREFIX)) {
+					mobiLabels.add(label);
+				}
+			}
+			labels.remove(mobiLabels);
+		}
+		if (! spec.path("Labels").isObject() || spec.get("Labels").size() == 0) {
+			spec.remove("Labels");
+		}
+		spec.put("Name", name().orElse(""));
+		
+		try {
+			return Hashing.sha256()
+				.hashString(CANONICAL_MAPPER.writeValueAsString(spec), StandardCharsets.UTF_8)
+				.toString();
+		} catch(Exception ex) {
+			throw new IllegalStateException("Could not compute hash of deployment", ex);
+		}
+	}
+
 	@Override
 	protected Observable<String> createContainer(Trace trace, Instance image) {
 		return this.docker.createContainer(trace, image, this);
@@ -1,18 +1,32 @@
 package com.petercipov.mobi.deployer.spotify;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.config.HostSettings;
 import com.petercipov.mobi.deployer.RxDeployment;
 import com.petercipov.traces.api.Level;
 import com.petercipov.traces.api.Trace;
 import com.petercipov.traces.api.Trace.Event;
+import com.spotify.docker.client.ContainerNotFoundException;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerException;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.DockerRequestException;
+import com.spotify.docker.client.DockerTimeoutException;
+import com.spotify.docker.client.ImageNotFoundException;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.messages.ImageInfo;
 import com.spotify.docker.client.messages.ProgressMessage;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeoutException;
 import rx.Observable;
 import rx.Scheduler;
 import rx.Subscriber;
@@ -24,14 +38,38 @@ import com.petercipov.mobi.deployer.RxDocker;
  */
 public class SpotifyRxDocker implements RxDocker{
     
-    private final DefaultDockerClient.Builder clientBuilder;
+	private static final ObjectMapper FILTER_MAPPER = new ObjectMapper();
+	
 	private final Scheduler scheduler;
-	private final Map<Long, DockerClient> clients;
+	private final DockerClientPool clients;
+	private final boolean ownsClients;
+	private final ImageIndex images;
+	private final SpotifyStreams streams;
 
 	public SpotifyRxDocker(DefaultDockerClient.Builder builder, Scheduler scheduler) {
-		this.clientBuilder = builder;
+		this(builder, scheduler, new ImageIndex());
+	}
+	
+	public SpotifyRxDocker(DefaultDockerClient.Builder builder, Scheduler scheduler, ImageIndex images) {
+		this(new DockerClientPool(builder, HostSettings.DEFAULT), true, scheduler, images);
+	}
+	
+	/**
+	 * @param clients pool shared by dockers of the host, it is not closed 
+	 * together with this docker
+	 * @param scheduler
+	 * @param images 
+	 */
+	public SpotifyRxDocker(DockerClientPool clients, Scheduler scheduler, ImageIndex images) {
+		this(clients, false, scheduler, images);
+	}
+	
+	private SpotifyRxDocker(DockerClientPool clients, boolean ownsClients, Scheduler scheduler, ImageIndex images) {
 		this.scheduler = scheduler;
-		this.clients = Collections.synchronizedMap(new HashMap<>());
+		this.clients = clients;
+		this.ownsClients = ownsClients;
+		this.images = images;
+		this.streams = clients.streams();
 	}
 
     @Override
@@ -39,9 +77,9 @@ public class SpotifyRxDocker implements RxDocker{
         return Observable.create((Subscriber<? super Instance> subscriber) -> {
 			Trace.Event pulling = trace.start("RxDocker: pull(image)", image);
 			final DockerClient client;
-			try {
-				client = obtainDockerClient();
-				client.pull(image.toString(), message -> logPullProgress(trace, message));
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
+				pullAndIndex(trace, client, image.toString());
 			} catch(Exception ex) {
 				trace.event(Level.ERROR, "RxDocker: pulling failed", ex);
 				pulling.end();
@@ -59,74 +97,109 @@ public class SpotifyRxDocker implements RxDocker{
     }
     
     public Observable<List<com.spotify.docker.client.messages.Image>> listImages(Trace trace) {
-		return Observable.create((Subscriber<? super List<com.spotify.docker.client.messages.Image>> subscriber) -> {
-			Trace.Event listing = trace.start("RxDocker: listing images");
-			final DockerClient client;
-			final List<com.spotify.docker.client.messages.Image> list;
+		return streamImages(trace).toList();
+	}
+	
+	/**
+	 * Images are decoded one by one as they are read from the daemon, 
+	 * unsubscribing stops the read, f.e. takeFirst or exists.
+	 * @param trace
+	 * @return images of the host
+	 */
+	public Observable<com.spotify.docker.client.messages.Image> streamImages(Trace trace) {
+		return streams.values(trace, "/images/json", Collections.emptyMap(), com.spotify.docker.client.messages.Image.class)
+			.subscribeOn(scheduler);
+	}
+	
+	/**
+	 * Containers are decoded one by one as they are read from the daemon, 
+	 * unsubscribing stops the read.
+	 * @param trace
+	 * @param all includes stopped containers
+	 * @return containers of the host
+	 */
+	public Observable<com.spotify.docker.client.messages.Container> listContainers(Trace trace, boolean all) {
+		return streams.values(trace, "/containers/json", Collections.singletonMap("all", all ? "1" : "0"), com.spotify.docker.client.messages.Container.class)
+			.subscribeOn(scheduler);
+	}
+
+	@Override
+	public Observable<String> listContainerIds(Trace trace, Map<String, String> labels) {
+		return Observable.defer(() -> {
+			Map<String, String> query = new LinkedHashMap<>();
+			query.put("all", "1");
 			try {
-				client = obtainDockerClient();
-				list = client.listImages();
-			} catch(Exception ex) {
-				trace.event(Level.ERROR, "RxDocker: listing failed", ex);
-				listing.end();
-				
-				if (subscriber.isUnsubscribed()) return;
-				subscriber.onError(ex);
-				return;
+				query.put("filters", labelFilter(labels));
+			} catch (IOException ex) {
+				return Observable.error(ex);
 			}
-			listing.end();
-			
-			if (subscriber.isUnsubscribed()) return;
-			subscriber.onNext(list);
-			subscriber.onCompleted();
-		}).subscribeOn(scheduler);
+			trace.event("RxDocker: listing containers (labels)", labels);
+			return streams.json(trace, "/containers/json", query);
+		})
+		.map(container -> container.get("Id").asText())
+		.subscribeOn(scheduler);
 	}
 	
-	public Observable<com.spotify.docker.client.messages.Container> listContainers(Trace trace, boolean all) {
-		return Observable.create((Subscriber<? super com.spotify.docker.client.messages.Container> subscriber) -> {
-			Trace.Event listing = trace.start("RxDocker: listing containers");
+	private static String labelFilter(Map<String, String> labels) throws IOException {
+		List<String> values = new ArrayList<>(labels.size());
+		for (Map.Entry<String, String> label : labels.entrySet()) {
+			values.add(label.getValue() == null ? label.getKey() : label.getKey() + "=" + label.getValue());
+		}
+		return FILTER_MAPPER.writeValueAsString(Collections.singletonMap("label", values));
+	}
+
+    @Override
+    public Observable<Boolean> isPresent(Trace trace, Instance image) {
+        return Observable.defer(() -> {
+			final String reference = image.toString();
+			trace.event("RxDocker: checking if image is present", image);
+			if (images.contains(reference)) {
+				return Observable.just(true);
+			}
+			
+			if (images.isPopulated()) {
+				return inspectImage(trace, reference);
+			} else {
+				return streams.json(trace, "/images/json", Collections.emptyMap())
+					.subscribeOn(scheduler)
+					.doOnNext(images::add)
+					.doOnCompleted(() -> {
+						images.markPopulated();
+						trace.event("RxDocker: image index populated", images);
+					})
+					.exists(listed -> images.contains(reference));
+			}
+		});
+    }
+	
+	protected Observable<Boolean> inspectImage(Trace trace, String reference) {
+		return Observable.create((Subscriber<? super Boolean> subscriber) -> {
+			Event inspecting = trace.start("RxDocker: inspecting image (reference): ", reference);
 			final DockerClient client;
-			final List<com.spotify.docker.client.messages.Container> list;
-			try {
-				client = obtainDockerClient();
-				list = client.listContainers(DockerClient.ListContainersParam.allContainers(all));
+			boolean present;
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
+				ImageInfo info = client.inspectImage(reference);
+				images.add(reference, info.id());
+				present = true;
+			} catch(ImageNotFoundException ex) {
+				present = false;
 			} catch(Exception ex) {
-				trace.event("RxDocker: listing failed", ex);
-				listing.end();
+				trace.event("RxDocker: inspecting image failed", ex);
+				inspecting.end();
 				
 				if (subscriber.isUnsubscribed()) return;
 				subscriber.onError(ex);
 				return;
 			}
-			listing.end();
+			inspecting.end();
 			
 			if (subscriber.isUnsubscribed()) return;
-			for(com.spotify.docker.client.messages.Container container : list) {
-				subscriber.onNext(container);
-			}
+			subscriber.onNext(present);
 			subscriber.onCompleted();
 		}).subscribeOn(scheduler);
 	}
 
-    @Override
-    public Observable<Boolean> isPresent(Trace trace, Instance image) {
-        return Observable.defer(() -> {
-			final String id = image.toString();
-			trace.event("RxDocker: checking if image is present", image);
-			return listImages(trace)
-				.map(list -> {
-					for (com.spotify.docker.client.messages.Image entry : list) {
-						for (String tag: entry.repoTags()) {
-							if (tag.equals(id)) {
-								return true;
-							}
-						}
-					}
-					return false;
-				});
-		});
-    }
-
     public Observable<String> createContainer(Trace trace, Instance image, SpotifyOptions builder) {
         return Observable.create((Subscriber<? super String> subscriber) -> {
             Optional<String> name = builder.name();
@@ -134,11 +207,9 @@ public class SpotifyRxDocker implements RxDocker{
 			Event creating = trace.start("RxDocker: creating container from image ", containerConfig.image());
 			final DockerClient client;
 			final String containerId;
-			try {
-				client = obtainDockerClient();
-				containerId = name.isPresent() 
-					? client.createContainer(containerConfig, name.get()).id() 
-					: client.createContainer(containerConfig).id();
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
+				containerId = create(trace, client, image, containerConfig, name);
 			} catch(Exception ex) {
 				trace.event(Level.ERROR, "RxDocker: creation failed", ex);
 				creating.end();
@@ -155,13 +226,119 @@ public class SpotifyRxDocker implements RxDocker{
 		}).subscribeOn(scheduler);
     }
 
+	/**
+	 * Image that was removed from the daemon by someone else after it was
+	 * indexed is evicted, pulled again and the container is created again.
+	 */
+	private String create(Trace trace, DockerClient client, Instance image, com.spotify.docker.client.messages.ContainerConfig config, Optional<String> name) throws DockerException, InterruptedException {
+		try {
+			return createOnce(client, config, name);
+		} catch(ImageNotFoundException ex) {
+			images.evict(image.toString());
+			trace.event(Level.WARN, "RxDocker: image is missing, pulling it again (image)", image);
+			pullAndIndex(trace, client, image.toString());
+			return createOnce(client, config, name);
+		}
+	}
+	
+	private static String createOnce(DockerClient client, com.spotify.docker.client.messages.ContainerConfig config, Optional<String> name) throws DockerException, InterruptedException {
+		return name.isPresent() 
+			? client.createContainer(config, name.get()).id() 
+			: client.createContainer(config).id();
+	}
+	
+	/**
+	 * Image is indexed by its tags and digests, docker-client does not 
+	 * decode the digests, so the image is inspected as json.
+	 */
+	private void pullAndIndex(Trace trace, DockerClient client, String reference) throws DockerException, InterruptedException {
+		client.pull(reference, message -> logPullProgress(trace, message));
+		for (JsonNode info : streams.json(trace, "/images/" + reference + "/json", Collections.emptyMap()).toBlocking().toIterable()) {
+			images.add(reference, info.path("Id").asText(null));
+			images.add(info);
+		}
+	}
+
+	/**
+	 * Creates, starts and inspects container in one task on one client, so
+	 * the deployment is scheduled once instead of once per call. Container
+	 * that could not be started or does not run is killed and removed, so 
+	 * is container created for subscriber that unsubscribed meanwhile.
+	 */
+	@Override
+	public Observable<ContainerInfo> createAndStart(Trace trace, Instance image, RxDeployment deployment) {
+		if (! (deployment instanceof SpotifyOptions)) {
+			return RxDocker.super.createAndStart(trace, image, deployment);
+		}
+		SpotifyOptions options = (SpotifyOptions) deployment;
+		return Observable.create((Subscriber<? super ContainerInfo> subscriber) -> {
+			Optional<String> name = options.name();
+			com.spotify.docker.client.messages.ContainerConfig containerConfig = options.buildForImage(image);
+			Event deploying = trace.start("RxDocker: creating and starting container from image ", containerConfig.image());
+			final ContainerInfo info;
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				DockerClient client = lease.client();
+				final String containerId = create(trace, client, image, containerConfig, name);
+				try {
+					client.startContainer(containerId);
+					info = inspectRunning(client, containerId);
+				} catch(Exception ex) {
+					trace.event("RxDocker: container could not be started, removing (containerId)", containerId);
+					discard(trace, client, containerId);
+					throw ex;
+				}
+				if (subscriber.isUnsubscribed()) {
+					trace.event("RxDocker: deployment was unsubscribed, removing created container (containerId)", containerId);
+					discard(trace, client, containerId);
+				}
+			} catch(Exception ex) {
+				trace.event(Level.ERROR, "RxDocker: creating and starting failed", ex);
+				deploying.end();
+				
+				if (subscriber.isUnsubscribed()) return;
+				subscriber.onError(ex);
+				return;
+			}
+			deploying.end();
+			
+			if (subscriber.isUnsubscribed()) return;
+			subscriber.onNext(info);
+			subscriber.onCompleted();
+		}).subscribeOn(scheduler);
+	}
+	
+	private static ContainerInfo inspectRunning(DockerClient client, String containerId) throws Exception {
+		ContainerInfo info = new SpotifyInspectWrapper(client.inspectContainer(containerId));
+		if (! info.state().running()) {
+			throw new IllegalStateException("Expecting container to run. containerId="+containerId);
+		}
+		return info;
+	}
+	
+	/**
+	 * Kills container if it runs and removes it. Failures are only traced,
+	 * the failure that caused the removal is the one reported.
+	 */
+	private static void discard(Trace trace, DockerClient client, String containerId) {
+		try {
+			client.killContainer(containerId);
+		} catch(Exception ex) {
+			trace.event("RxDocker: created container was not killed, it does not run (containerId)", containerId, ex);
+		}
+		try {
+			client.removeContainer(containerId, true);
+		} catch(Exception ex) {
+			trace.event(Level.ERROR, "RxDocker: created container could not be removed (containerId)", containerId, ex);
+		}
+	}
+
     @Override
     public Observable<String> startContainer(Trace trace, String containerId) {
         return Observable.create((Subscriber<? super String> subscriber) -> {
 			Event starting = trace.start("RxDocker: starting container (containerId): ", containerId);
 			final DockerClient client;
-			try {
-				client = obtainDockerClient();
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
 				client.startContainer(containerId);
 			} catch(Exception ex) {
 				trace.event(Level.ERROR, "RxDocker: starting failed", ex);
@@ -184,8 +361,8 @@ public class SpotifyRxDocker implements RxDocker{
         return Observable.create((Subscriber<? super String> subscriber) -> {
 			Event killing = trace.start("RxDocker: killing container: ", containerId);
 			final DockerClient client;
-			try {
-				client = obtainDockerClient();
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
 				client.killContainer(containerId);
 			} catch(Exception ex) {
 				trace.event("RxDocker: killing failed", ex);
@@ -203,13 +380,49 @@ public class SpotifyRxDocker implements RxDocker{
 		}).subscribeOn(scheduler);
     }
 
+    @Override
+    public Observable<String> logs(Trace trace, String containerId) {
+        return Observable.create((Subscriber<? super String> subscriber) -> {
+			Event reading = trace.start("RxDocker: reading logs of container: ", containerId);
+			final String log;
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				DockerClient client = lease.client();
+				try (LogStream stream = client.logs(containerId, LogsParam.stdout(), LogsParam.stderr())) {
+					log = stream.readFully();
+				}
+			} catch(Exception ex) {
+				trace.event("RxDocker: reading logs failed", ex);
+				reading.end();
+				
+				if (subscriber.isUnsubscribed()) return;
+				subscriber.onError(ex);
+				return;
+			}
+			reading.end();
+			
+			if (subscriber.isUnsubscribed()) return;
+			subscriber.onNext(log);
+			subscriber.onCompleted();
+		}).subscribeOn(scheduler);
+    }
+
+    @Override
+    public Observable<DockerEvent> events(Trace trace, Map<String, List<String>> filters) {
+		return streams.events(trace, filters).subscribeOn(scheduler);
+    }
+
+    @Override
+    public Observable<String> logStream(Trace trace, String containerId, boolean follow) {
+		return streams.logs(trace, containerId, follow).subscribeOn(scheduler);
+    }
+
     @Override
     public Observable<String> stopContainer(Trace trace, String containerId, int secondsBeforeFail) {
         return Observable.create((Subscriber<? super String> subscriber) -> {
 			Event stopping = trace.start("RxDocker: stopping container: ", containerId);
 			final DockerClient client;
-			try {
-				client = obtainDockerClient();
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
 				client.stopContainer(containerId, secondsBeforeFail);
 			} catch(Exception ex) {
 				trace.event("RxDocker: stopping failed", ex);
@@ -232,8 +445,8 @@ public class SpotifyRxDocker implements RxDocker{
         return Observable.create((Subscriber<? super String> subscriber) -> {
 			Event removing = trace.start("RxDocker: removing container: ", containerId);
 			final DockerClient client;
-			try {
-				client = obtainDockerClient();
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
 				client.removeContainer(containerId, true);
 			} catch(Exception ex) {
 				trace.event("RxDocker: removing failed", ex);
@@ -251,16 +464,44 @@ public class SpotifyRxDocker implements RxDocker{
 		}).subscribeOn(scheduler);
     }
 
+	/**
+	 * Errors the daemon answered with status below 500 are not transient,
+	 * timeouts and failed connections are.
+	 */
+	@Override
+	public boolean isTransient(Throwable th) {
+		for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DockerRequestException) {
+				return ((DockerRequestException) cause).status() >= 500;
+			}
+			if (cause instanceof DockerTimeoutException || cause instanceof IOException || cause instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int status(Throwable th) {
+		for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DockerRequestException) {
+				return ((DockerRequestException) cause).status();
+			}
+			if (cause instanceof ContainerNotFoundException || cause instanceof ImageNotFoundException) {
+				return 404;
+			}
+		}
+		return 0;
+	}
+
     public void close(Trace trace) {
         closeAllClients(trace);
         trace.event("RxDocker: closed all containers");
     }
     
     protected void closeAllClients(Trace trace) {
-		synchronized(clients) {
-			for (DockerClient client : clients.values()) {
-				client.close();
-			}
+		if (ownsClients) {
+			clients.close();
 		}
 	}
     
@@ -274,21 +515,14 @@ public class SpotifyRxDocker implements RxDocker{
 		}
 	}
     
-    protected DockerClient obtainDockerClient() {
-		return clients.computeIfAbsent(
-			Thread.currentThread().getId(), 
-			(Long threadId) -> clientBuilder.build()
-		);
-	}
-
 	@Override
 	public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId) {
 		return Observable.create((Subscriber<? super ContainerInfo> subscriber) -> {
 			Event inspecting = trace.start("RxDocker: inspecting container (containerId): ", containerId);
 			final DockerClient client;
 			final ContainerInfo info;
-			try {
-				client = obtainDockerClient();
+			try (DockerClientPool.Lease lease = clients.borrow()) {
+				client = lease.client();
 				info = new SpotifyInspectWrapper(client.inspectContainer(containerId));
 			} catch(Exception ex) {
 				trace.event("RxDocker: inspecting failed", ex);
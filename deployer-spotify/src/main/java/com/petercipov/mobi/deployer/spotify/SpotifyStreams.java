@@ -0,0 +1,290 @@
+package com.petercipov.mobi.deployer.spotify;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.petercipov.mobi.deployer.JsonDockerEvent;
+import com.petercipov.mobi.config.HostSettings;
+import com.petercipov.mobi.deployer.RxDocker;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerCertificates;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogReader;
+import com.spotify.docker.client.ObjectMapperProvider;
+import com.spotify.docker.client.UnixConnectionSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import rx.Observable;
+import rx.Observer;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Streamed responses of the daemon read by their own connection to the same
+ * endpoint. docker-client reads whole responses into the heap and does not
+ * support events at all. Values are read from the socket one by one as 
+ * subscriber requests them, so slow subscriber leaves unread data in the 
+ * socket instead of the heap. Connections are pooled per host, bounded by
+ * max connections of the host and reused by subsequent streams, so listings
+ * do not pay for connecting and TLS handshake. Stream closed before its end 
+ * closes its connection.
+ *
+ * @author petercipov
+ */
+public class SpotifyStreams {
+
+	private static final String UNIX_SCHEME = "unix";
+	private static final String HTTPS_SCHEME = "https";
+
+	private final DefaultDockerClient.Builder builder;
+	private final ObjectMapper mapper;
+	private final PoolingHttpClientConnectionManager connections;
+	private final CloseableHttpClient client;
+
+	public SpotifyStreams(DefaultDockerClient.Builder builder) {
+		this(builder, HostSettings.DEFAULT.getMaxConnections());
+	}
+
+	/**
+	 * @param builder builder of the host, shares its certificates
+	 * @param maxConnections maximal number of open streams, further streams 
+	 * wait for a free connection
+	 */
+	public SpotifyStreams(DefaultDockerClient.Builder builder, int maxConnections) {
+		this.builder = builder;
+		this.mapper = new ObjectMapperProvider().getContext(ObjectMapper.class);
+		this.connections = new PoolingHttpClientConnectionManager(registry(builder));
+		this.connections.setMaxTotal(maxConnections);
+		this.connections.setDefaultMaxPerRoute(maxConnections);
+		this.client = HttpClients.custom()
+			.setConnectionManager(connections)
+			.setDefaultRequestConfig(RequestConfig.custom()
+				.setConnectTimeout((int) builder.connectTimeoutMillis())
+				.setSocketTimeout(0)
+				.build()
+			)
+			.build();
+	}
+
+	public Observable<RxDocker.DockerEvent> events(Trace trace, Map<String, List<String>> filters) {
+		return Observable.defer(() -> {
+			Map<String, String> query = new LinkedHashMap<>();
+			if (! filters.isEmpty()) {
+				try {
+					query.put("filters", mapper.writeValueAsString(filters));
+				} catch (IOException ex) {
+					return Observable.error(ex);
+				}
+			}
+			return json(trace, "/events", query);
+		})
+		.map(node -> (RxDocker.DockerEvent) new JsonDockerEvent(node))
+		.doOnNext(event -> {
+			if (trace.isDebugEnabled()) {
+				trace.event(Level.DEBUG, "RxDocker: event (type, action, id)", event.type(), event.action(), event.id());
+			}
+		});
+	}
+
+	/**
+	 * @param trace
+	 * @param path
+	 * @param query
+	 * @return documents of the response, elements of json array or
+	 * concatenated documents
+	 */
+	public Observable<JsonNode> json(Trace trace, String path, Map<String, String> query) {
+		return values(trace, path, query, JsonNode.class);
+	}
+
+	/**
+	 * Documents are decoded one by one by pull parser, so only the current
+	 * document is held in the heap. Unsubscribing closes the connection 
+	 * without reading the rest of the response.
+	 * @param <T>
+	 * @param trace
+	 * @param path
+	 * @param query
+	 * @param type message of docker-client or JsonNode
+	 * @return documents of the response, elements of json array or
+	 * concatenated documents
+	 */
+	public <T> Observable<T> values(Trace trace, String path, Map<String, String> query, Class<T> type) {
+		return stream(trace, path, query, in -> {
+			MappingIterator<T> values = mapper.readerFor(type).readValues(in);
+			return () -> values.hasNextValue() ? values.nextValue() : null;
+		});
+	}
+
+	/**
+	 * @param trace
+	 * @param containerId
+	 * @param follow
+	 * @return payload of frames of multiplexed stdout and stderr
+	 */
+	public Observable<String> logs(Trace trace, String containerId, boolean follow) {
+		Map<String, String> query = new LinkedHashMap<>();
+		query.put("stdout", "1");
+		query.put("stderr", "1");
+		query.put("follow", follow ? "1" : "0");
+		return stream(trace, "/containers/" + containerId + "/logs", query, in -> {
+			LogReader frames = new LogReader(in);
+			return () -> {
+				LogMessage frame = frames.nextMessage();
+				return frame == null ? null : StandardCharsets.UTF_8.decode(frame.content()).toString();
+			};
+		});
+	}
+
+	private <T> Observable<T> stream(Trace trace, String path, Map<String, String> query, ReaderFactory<T> readers) {
+		return Observable.create(SyncOnSubscribe.<Connection<T>, T>createStateful(
+			() -> new Connection<>(trace, path, query, readers),
+			(connection, observer) -> {
+				connection.next(observer);
+				return connection;
+			},
+			connection -> connection.close()
+		));
+	}
+
+	/**
+	 * Closes pooled connections idle for longer than given time
+	 * @param idleMillis
+	 */
+	public void evictIdle(long idleMillis) {
+		connections.closeExpiredConnections();
+		connections.closeIdleConnections(idleMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void close() {
+		try {
+			client.close();
+		} catch (IOException ex) {
+			connections.shutdown();
+		}
+	}
+
+	private static Registry<ConnectionSocketFactory> registry(DefaultDockerClient.Builder builder) {
+		RegistryBuilder<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+			.register("http", PlainConnectionSocketFactory.getSocketFactory());
+
+		DockerCertificates certificates = builder.dockerCertificates();
+		if (certificates != null) {
+			registry.register(HTTPS_SCHEME, new SSLConnectionSocketFactory(certificates.sslContext(), certificates.hostnameVerifier()));
+		} else {
+			registry.register(HTTPS_SCHEME, SSLConnectionSocketFactory.getSocketFactory());
+		}
+
+		if (UNIX_SCHEME.equals(builder.uri().getScheme())) {
+			registry.register(UNIX_SCHEME, new UnixConnectionSocketFactory(builder.uri()));
+		}
+		return registry.build();
+	}
+
+	private URI uri(String path, Map<String, String> query) throws IOException {
+		URI uri = builder.uri();
+		URI base = UNIX_SCHEME.equals(uri.getScheme())
+			? UnixConnectionSocketFactory.sanitizeUri(uri)
+			: uri;
+		String version = builder.apiVersion() == null ? "" : "/v" + builder.apiVersion();
+
+		try {
+			URIBuilder request = new URIBuilder(base).setPath(version + path);
+			for (Map.Entry<String, String> param : query.entrySet()) {
+				request.addParameter(param.getKey(), param.getValue());
+			}
+			return request.build();
+		} catch (URISyntaxException ex) {
+			throw new IOException("Invalid docker uri " + uri, ex);
+		}
+	}
+
+	private class Connection<T> {
+		private final Trace trace;
+		private final String path;
+		private final Map<String, String> query;
+		private final ReaderFactory<T> readers;
+		private CloseableHttpResponse response;
+		private Reader<T> reader;
+		private volatile boolean closed;
+
+		public Connection(Trace trace, String path, Map<String, String> query, ReaderFactory<T> readers) {
+			this.trace = trace;
+			this.path = path;
+			this.query = query;
+			this.readers = readers;
+		}
+
+		void next(Observer<? super T> observer) {
+			try {
+				if (reader == null) {
+					open();
+				}
+				T value = reader.next();
+				if (value != null) {
+					observer.onNext(value);
+				} else {
+					trace.event("RxDocker: stream was closed by daemon (path)", path);
+					observer.onCompleted();
+				}
+			} catch (IOException ex) {
+				if (! closed) {
+					trace.event(Level.ERROR, "RxDocker: reading stream failed (path)", path, ex);
+				}
+				observer.onError(ex);
+			}
+		}
+
+		private void open() throws IOException {
+			URI uri = uri(path, query);
+			trace.event("RxDocker: opening stream", uri);
+			response = client.execute(new HttpGet(uri));
+			if (response.getStatusLine().getStatusCode() != 200) {
+				throw new IOException("Stream " + path + " could not be opened: " + response.getStatusLine());
+			}
+			reader = readers.open(response.getEntity().getContent());
+		}
+
+		void close() {
+			closed = true;
+			try {
+				if (response != null) {
+					response.close();
+				}
+			} catch (IOException ex) {
+				trace.event(Level.ERROR, "RxDocker: closing stream failed", ex);
+			}
+		}
+	}
+
+	private interface Reader<T> {
+		/**
+		 * @return next value or null at the end of stream
+		 */
+		T next() throws IOException;
+	}
+
+	private interface ReaderFactory<T> {
+		Reader<T> open(InputStream in) throws IOException;
+	}
+}
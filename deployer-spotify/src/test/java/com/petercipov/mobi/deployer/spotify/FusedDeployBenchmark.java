@@ -0,0 +1,132 @@
+package com.petercipov.mobi.deployer.spotify;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.deployer.RxDocker;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Compares create, start and inspect chained from single calls with the 
+ * fused call. Daemon is faked in-process and answers immediately, so the 
+ * difference is the overhead of the client side: scheduled tasks and 
+ * observable chains per deployment.
+ * 
+ * Usage: FusedDeployBenchmark [deployments]
+ *
+ * @author petercipov
+ */
+public class FusedDeployBenchmark {
+
+	private static final String INSPECT = "{\"Id\":\"c0ffee\",\"State\":{\"Running\":true},"
+		+ "\"NetworkSettings\":{\"IPAddress\":\"172.17.0.2\",\"Ports\":{\"8080/tcp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"32768\"}]}}}";
+
+	public static void main(String[] args) throws Exception {
+		int deployments = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		ExecutorService daemonThreads = Executors.newFixedThreadPool(4);
+		HttpServer daemon = fakeDaemon(daemonThreads);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		AtomicLong tasks = new AtomicLong();
+		Scheduler scheduler = Schedulers.from(task -> {
+			tasks.incrementAndGet();
+			threads.execute(task);
+		});
+
+		SpotifyRxDocker docker = new SpotifyRxDocker(
+			DefaultDockerClient.builder().uri("http://127.0.0.1:" + daemon.getAddress().getPort()), 
+			scheduler
+		);
+		Trace trace = NoopTrace.INSTANCE;
+		Instance image = new Instance(new DefaultRegistry(), new Name("busybox"), "latest");
+
+		for (int round = 0; round < 2; round++) {
+			boolean warmup = round == 0;
+			measure("stepwise", warmup, deployments, tasks, () -> 
+				RxDocker.createAndStartStepwise(docker, trace, image, docker.deployment())
+			);
+			measure("fused", warmup, deployments, tasks, () -> 
+				docker.createAndStart(trace, image, docker.deployment())
+			);
+		}
+
+		docker.close(trace);
+		threads.shutdown();
+		daemon.stop(0);
+		daemonThreads.shutdown();
+	}
+
+	private static void measure(String name, boolean warmup, int deployments, AtomicLong tasks, Deployment deployment) {
+		long tasksBefore = tasks.get();
+		long start = System.nanoTime();
+		for (int i = 0; i < deployments; i++) {
+			deployment.run().toBlocking().single();
+		}
+		long micros = (System.nanoTime() - start) / 1000;
+		if (! warmup) {
+			System.out.printf("%-9s %8.1f us/deployment %5.1f scheduled tasks/deployment%n", 
+				name, 
+				(double) micros / deployments, 
+				(double) (tasks.get() - tasksBefore) / deployments
+			);
+		}
+	}
+
+	private static HttpServer fakeDaemon(ExecutorService threads) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+		server.setExecutor(threads);
+		server.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			drain(exchange.getRequestBody());
+			if (path.endsWith("/containers/create")) {
+				respond(exchange, 201, "{\"Id\":\"c0ffee\"}");
+			} else if (path.endsWith("/start")) {
+				respond(exchange, 204, null);
+			} else if (path.endsWith("/json")) {
+				respond(exchange, 200, INSPECT);
+			} else {
+				respond(exchange, 404, "{\"message\":\"not found\"}");
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		// keep-alive connections of the fake daemon stall the apache connector
+		exchange.getResponseHeaders().add("Connection", "close");
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, bytes.length);
+			exchange.getResponseBody().write(bytes);
+		}
+		exchange.close();
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[1024];
+		while (in.read(buffer) >= 0) {
+			// request body is not needed
+		}
+	}
+
+	private interface Deployment {
+		Observable<RxDocker.ContainerInfo> run();
+	}
+}
@@ -0,0 +1,154 @@
+package com.petercipov.mobi.deployer.spotify;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class SpotifyRxDockerTest {
+
+	private static final String IMAGE = "{\"Id\":\"sha256:1\",\"RepoTags\":[\"busybox:latest\"],\"RepoDigests\":[\"busybox@sha256:abc\"]}";
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("busybox"), "latest");
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private final List<Integer> listingPorts = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean missingImage = new AtomicBoolean();
+	private final ImageIndex images = new ImageIndex();
+
+	private HttpServer daemon;
+	private SpotifyRxDocker docker;
+
+	@Before
+	public void before() throws IOException {
+		daemon = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+		daemon.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath().replaceFirst("^/v[0-9.]+", "");
+			requests.add(exchange.getRequestMethod() + " " + path);
+			drain(exchange.getRequestBody());
+			if (path.equals("/images/json")) {
+				respond(exchange, 200, "[" + IMAGE + "]");
+			} else if (path.equals("/images/busybox:latest/json")) {
+				respond(exchange, 200, IMAGE);
+			} else if (path.equals("/images/create")) {
+				missingImage.set(false);
+				respond(exchange, 200, "{\"status\":\"Downloaded newer image for busybox:latest\"}");
+			} else if (path.endsWith("/containers/create") && missingImage.get()) {
+				respond(exchange, 404, "{\"message\":\"No such image: busybox:latest\"}");
+			} else if (path.endsWith("/containers/json")) {
+				listingPorts.add(exchange.getRemoteAddress().getPort());
+				byte[] bytes = "[{\"Id\":\"c0ffee\"}]".getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, bytes.length);
+				exchange.getResponseBody().write(bytes);
+				exchange.close();
+			} else if (path.endsWith("/containers/create")) {
+				respond(exchange, 201, "{\"Id\":\"c0ffee\"}");
+			} else if (path.endsWith("/start")) {
+				respond(exchange, 500, "{\"message\":\"port is already allocated\"}");
+			} else if (path.endsWith("/kill")) {
+				respond(exchange, 500, "{\"message\":\"container is not running\"}");
+			} else {
+				respond(exchange, 204, null);
+			}
+		});
+		daemon.start();
+		docker = new SpotifyRxDocker(
+			DefaultDockerClient.builder().uri("http://127.0.0.1:" + daemon.getAddress().getPort()), 
+			Schedulers.immediate(),
+			images
+		);
+	}
+
+	@After
+	public void after() {
+		docker.close(trace);
+		daemon.stop(0);
+	}
+
+	@Test
+	public void containerThatFailedToStartIsRemoved() {
+		TestSubscriber<Object> subscriber = new TestSubscriber<>();
+		docker.createAndStart(trace, image, docker.deployment()).subscribe(subscriber);
+
+		subscriber.assertError(Exception.class);
+		assertTrue(requests.toString(), requests.contains("POST /containers/c0ffee/kill"));
+		assertTrue(requests.toString(), requests.contains("DELETE /containers/c0ffee"));
+	}
+
+	@Test
+	public void imagesAreIndexedByDigest() {
+		assertTrue(docker.isPresent(trace, image).toBlocking().single());
+
+		assertTrue(images.contains("busybox@sha256:abc"));
+		assertTrue(images.contains("sha256:1"));
+	}
+
+	@Test
+	public void imageRemovedFromDaemonIsPulledAgain() {
+		images.add("busybox:latest", "sha256:1");
+		missingImage.set(true);
+
+		String containerId = docker.createContainer(trace, image, (SpotifyOptions) docker.deployment()).toBlocking().single();
+
+		assertEquals("c0ffee", containerId);
+		assertTrue(requests.toString(), requests.contains("POST /images/create"));
+		assertTrue(images.contains("busybox@sha256:abc"));
+	}
+
+	@Test
+	public void listingsReuseConnection() {
+		for (int i = 0; i < 3; i++) {
+			TestSubscriber<String> subscriber = new TestSubscriber<>();
+			docker.listContainerIds(trace, Collections.singletonMap("mobi", "test")).subscribe(subscriber);
+			subscriber.assertValue("c0ffee");
+			subscriber.assertCompleted();
+		}
+
+		assertEquals(3, listingPorts.size());
+		assertEquals(listingPorts.toString(), 1, new HashSet<>(listingPorts).size());
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		exchange.getResponseHeaders().add("Connection", "close");
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, bytes.length);
+			exchange.getResponseBody().write(bytes);
+		}
+		exchange.close();
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[1024];
+		while (in.read(buffer) >= 0) {
+			// request body is not needed
+		}
+	}
+}
@@ -10,9 +10,15 @@ import java.util.Optional;
 public abstract class ApiHost {
 
 	private final Optional<List<String>> defaultVolumeBindings;
+	private final HostSettings settings;
 
 	public ApiHost(Optional<List<String>> volumeBindings) {
+		this(volumeBindings, HostSettings.DEFAULT);
+	}
+	
+	public ApiHost(Optional<List<String>> volumeBindings, HostSettings settings) {
 		this.defaultVolumeBindings = volumeBindings;
+		this.settings = settings;
 	}
 	
 	public interface Builder<T> {
@@ -22,8 +28,19 @@ public abstract class ApiHost {
 	}
 
 	public abstract <T> T setupBuilder(Builder<T> b);
+	
+	public abstract String getUri();
+	
+	/**
+	 * @return host on which published ports of containers are reachable
+	 */
+	public abstract String getPublishedHost();
 
 	public Optional<List<String>> getVolumeBindings() {
 		return defaultVolumeBindings;
 	}
+	
+	public HostSettings getSettings() {
+		return settings;
+	}
 }
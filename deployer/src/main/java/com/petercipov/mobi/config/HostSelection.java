@@ -0,0 +1,48 @@
+package com.petercipov.mobi.config;
+
+/**
+ * Strategy choosing api host of a test, configured by scheduler name in 
+ * mobi.yml. Weight of the host scales its share of tests, capacity excludes
+ * hosts that already run that many containers.
+ *
+ * @author petercipov
+ */
+public enum HostSelection {
+	/**
+	 * Hosts take turns in proportion to their weights, no calls to hosts
+	 */
+	ROUND_ROBIN("round-robin"),
+	/**
+	 * Host running the fewest containers per unit of weight
+	 */
+	LEAST_CONTAINERS("least-containers"),
+	/**
+	 * Host with the least memory reserved by running containers per unit of
+	 * weight
+	 */
+	LEAST_MEMORY("least-memory"),
+	/**
+	 * Host with the lowest moving average of api latency per unit of weight,
+	 * latency is measured by pings in the background
+	 */
+	LATENCY("latency");
+	
+	private final String name;
+
+	private HostSelection(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+	
+	public static HostSelection fromName(String name) {
+		for (HostSelection selection : values()) {
+			if (selection.name.equals(name)) {
+				return selection;
+			}
+		}
+		throw new IllegalStateException("Unknown scheduler " + name);
+	}
+}
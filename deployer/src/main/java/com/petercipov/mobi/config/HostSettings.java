@@ -0,0 +1,114 @@
+package com.petercipov.mobi.config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of connections to a docker host.
+ *
+ * @author petercipov
+ */
+public class HostSettings {
+	
+	public static final HostSettings DEFAULT = new HostSettings(8, TimeUnit.MINUTES.toMillis(1), 16);
+	
+	private final int maxConnections;
+	private final long idleTimeoutMillis;
+	private final int ioThreads;
+	private final int weight;
+	private final int capacity;
+	private final long memoryBudget;
+	private final long cpuBudget;
+
+	/**
+	 * @param maxConnections maximal number of concurrent requests to the host
+	 * @param idleTimeoutMillis connections unused for the time are closed
+	 * @param ioThreads number of threads running blocking calls to the host
+	 */
+	public HostSettings(int maxConnections, long idleTimeoutMillis, int ioThreads) {
+		this(maxConnections, idleTimeoutMillis, ioThreads, 1, 0);
+	}
+
+	/**
+	 * @param maxConnections maximal number of concurrent requests to the host
+	 * @param idleTimeoutMillis connections unused for the time are closed
+	 * @param ioThreads number of threads running blocking calls to the host
+	 * @param weight share of tests scheduled to the host relative to other 
+	 * hosts
+	 * @param capacity maximal number of running containers, host is not 
+	 * scheduled when it runs that many, 0 for unlimited
+	 */
+	public HostSettings(int maxConnections, long idleTimeoutMillis, int ioThreads, int weight, int capacity) {
+		this(maxConnections, idleTimeoutMillis, ioThreads, weight, capacity, 0, 0);
+	}
+
+	/**
+	 * @param maxConnections maximal number of concurrent requests to the host
+	 * @param idleTimeoutMillis connections unused for the time are closed
+	 * @param ioThreads number of threads running blocking calls to the host
+	 * @param weight share of tests scheduled to the host relative to other 
+	 * hosts
+	 * @param capacity maximal number of running containers, host is not 
+	 * scheduled when it runs that many, 0 for unlimited
+	 * @param memoryBudget bytes of memory deployments may reserve on the 
+	 * host, 0 for unlimited
+	 * @param cpuBudget cpu shares deployments may reserve on the host, 0 for
+	 * unlimited
+	 */
+	public HostSettings(int maxConnections, long idleTimeoutMillis, int ioThreads, int weight, int capacity, long memoryBudget, long cpuBudget) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("max connections has to be positive, was " + maxConnections);
+		}
+		if (ioThreads < 1) {
+			throw new IllegalArgumentException("io threads has to be positive, was " + ioThreads);
+		}
+		if (weight < 1) {
+			throw new IllegalArgumentException("weight has to be positive, was " + weight);
+		}
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity can not be negative, was " + capacity);
+		}
+		if (memoryBudget < 0 || cpuBudget < 0) {
+			throw new IllegalArgumentException("budget can not be negative, was (memory, cpu) " + memoryBudget + ", " + cpuBudget);
+		}
+		this.maxConnections = maxConnections;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.ioThreads = ioThreads;
+		this.weight = weight;
+		this.capacity = capacity;
+		this.memoryBudget = memoryBudget;
+		this.cpuBudget = cpuBudget;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public long getCpuBudget() {
+		return cpuBudget;
+	}
+
+	@Override
+	public String toString() {
+		return "HostSettings(maxConnections=" + maxConnections + ", idleTimeoutMillis=" + idleTimeoutMillis + ", ioThreads=" + ioThreads + ", weight=" + weight + ", capacity=" + capacity + ", memoryBudget=" + memoryBudget + ", cpuBudget=" + cpuBudget + ')';
+	}
+}
@@ -12,7 +12,11 @@ public class HttpRestApiHost extends ApiHost {
 	private final int port;
 
 	public HttpRestApiHost(String host, int port, Optional<List<String>> volumeBindings) {
-		super(volumeBindings);
+		this(host, port, volumeBindings, HostSettings.DEFAULT);
+	}
+	
+	public HttpRestApiHost(String host, int port, Optional<List<String>> volumeBindings, HostSettings settings) {
+		super(volumeBindings, settings);
 		this.host = host;
 		this.port = port;
 	}
@@ -25,13 +29,19 @@ public class HttpRestApiHost extends ApiHost {
 		return port;
 	}
 
+	@Override
+	public String getPublishedHost() {
+		return getHost();
+	}
+
+	@Override
 	public String getUri() {
 		return "http://"+ this.getHost() + ":" + this.getPort();
 	}
 	
 	@Override
 	public String toString() {
-		return "HttpRestApiHost(host=" + host + ", port=" + port + ", volumeBindings=" + getVolumeBindings() + ')';
+		return "HttpRestApiHost(host=" + host + ", port=" + port + ", volumeBindings=" + getVolumeBindings() + ", settings=" + getSettings() + ')';
 	}
 	
 	@Override
@@ -13,7 +13,11 @@ public class HttpsRestApiHost extends ApiHost {
 	private final String certPath;
 
 	public HttpsRestApiHost(String host, int port, String certPath, Optional<List<String>> volumeBindings) {
-		super(volumeBindings);
+		this(host, port, certPath, volumeBindings, HostSettings.DEFAULT);
+	}
+	
+	public HttpsRestApiHost(String host, int port, String certPath, Optional<List<String>> volumeBindings, HostSettings settings) {
+		super(volumeBindings, settings);
 		this.host = host;
 		this.port = port;
 		this.certPath = certPath;
@@ -31,6 +35,12 @@ public class HttpsRestApiHost extends ApiHost {
 		return certPath;
 	}
 	
+	@Override
+	public String getPublishedHost() {
+		return getHost();
+	}
+
+	@Override
 	public String getUri() {
 		return "https://"+ this.getHost() + ":" + this.getPort();
 	}
@@ -42,6 +52,6 @@ public class HttpsRestApiHost extends ApiHost {
 	
 	@Override
 	public String toString() {
-		return "HttpsRestApiHost(host=" + host + ", port=" + port + ", certPath=" + certPath + ", volumeBindings=" + getVolumeBindings() + ')';
+		return "HttpsRestApiHost(host=" + host + ", port=" + port + ", certPath=" + certPath + ", volumeBindings=" + getVolumeBindings() + ", settings=" + getSettings() + ')';
 	}
 }
\ No newline at end of file
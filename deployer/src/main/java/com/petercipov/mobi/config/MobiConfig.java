@@ -13,17 +13,37 @@ public class MobiConfig {
 	private final Registry registry;	
 	private final List<ApiHost> apis;
 	private final List<TagOverride> tags;
+	private final HostSelection hostSelection;
 
 	public MobiConfig(List<ApiHost> api, Registry registry, List<TagOverride> explicitTags) {
+		this(api, registry, explicitTags, HostSelection.ROUND_ROBIN);
+	}
+
+	public MobiConfig(List<ApiHost> api, Registry registry, List<TagOverride> explicitTags, HostSelection hostSelection) {
 		this.apis = api;
 		this.registry = registry;
 		this.tags = explicitTags;
+		this.hostSelection = hostSelection;
 	}
 
 	public List<ApiHost> getApis() {
 		return apis;
 	}
 	
+	/**
+	 * @return how the api host of a test is chosen
+	 */
+	public HostSelection getHostSelection() {
+		return hostSelection;
+	}
+	
+	/**
+	 * @deprecated hosts picked by the clock are not balanced, tests started 
+	 * in the same millisecond share the host. Use HostScheduler of the 
+	 * deployer.
+	 * @return 
+	 */
+	@Deprecated
 	public ApiHost getRandomApiHost() {
 		List<ApiHost> hosts = getApis();
 		if (hosts.isEmpty()) {
@@ -43,6 +63,6 @@ public class MobiConfig {
 
 	@Override
 	public String toString() {
-		return "MobiConfig(" + "\napi=" + apis + ", \nrepository=" + registry + ", \ntags=" + tags + ')';
+		return "MobiConfig(" + "\napi=" + apis + ", \nrepository=" + registry + ", \ntags=" + tags + ", \nhostSelection=" + hostSelection + ')';
 	}
 }
\ No newline at end of file
@@ -13,7 +13,11 @@ public class UnixRestApiHost extends ApiHost {
 	private final String path;
 
 	public UnixRestApiHost(String path, Optional<List<String>> volumeBindings) {
-		super(volumeBindings);
+		this(path, volumeBindings, HostSettings.DEFAULT);
+	}
+	
+	public UnixRestApiHost(String path, Optional<List<String>> volumeBindings, HostSettings settings) {
+		super(volumeBindings, settings);
 		this.path = path;
 	}
 
@@ -22,6 +26,12 @@ public class UnixRestApiHost extends ApiHost {
 		return path;
 	}
 	
+	@Override
+	public String getPublishedHost() {
+		return "localhost";
+	}
+	
+	@Override
 	public String getUri() {
 		return UNIX_SOCKET_SCHEME + path;
 	}
@@ -33,6 +43,6 @@ public class UnixRestApiHost extends ApiHost {
 
 	@Override
 	public String toString() {
-		return "UnixRestApiHost(path=" + path +", volumeBindings=" + getVolumeBindings() + ')';
+		return "UnixRestApiHost(path=" + path +", volumeBindings=" + getVolumeBindings() + ", settings=" + getSettings() + ')';
 	}
 }
\ No newline at end of file
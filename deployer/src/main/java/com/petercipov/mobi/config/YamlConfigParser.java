@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.events.DocumentEndEvent;
 import org.yaml.snakeyaml.events.DocumentStartEvent;
@@ -42,6 +43,7 @@ public class YamlConfigParser {
 		List<ApiHost> apis = new LinkedList<>();
 		List<TagOverride> overrides = new LinkedList<>();
 		Registry registry = new DefaultRegistry();
+		HostSelection selection = HostSelection.ROUND_ROBIN;
 		
 		events.expectStreamStart();
 		if (events.isDocumentStarting()) {
@@ -64,6 +66,9 @@ public class YamlConfigParser {
 					case "registry":
 						registry = toApiRegistry(events);
 						break;
+					case "scheduler":
+						selection = HostSelection.fromName(events.expectScalar().getValue());
+						break;
 					case "override":
 						if (events.isSequenceStarting()) {
 							events.expectSequenceStart();
@@ -83,7 +88,7 @@ public class YamlConfigParser {
 		}
 		events.expectStreamEnd();
 		
-		return new MobiConfig(apis, registry, overrides);
+		return new MobiConfig(apis, registry, overrides, selection);
 	}
 	
 	private Registry toApiRegistry(Events events) {
@@ -126,6 +131,13 @@ public class YamlConfigParser {
 		String cert = null;
 		Integer port = null;
 		Optional<List<String>> volumes = Optional.empty();
+		int maxConnections = HostSettings.DEFAULT.getMaxConnections();
+		long idleTimeoutMillis = HostSettings.DEFAULT.getIdleTimeoutMillis();
+		int ioThreads = HostSettings.DEFAULT.getIoThreads();
+		int weight = HostSettings.DEFAULT.getWeight();
+		int capacity = HostSettings.DEFAULT.getCapacity();
+		long memoryBudget = HostSettings.DEFAULT.getMemoryBudget();
+		long cpuBudget = HostSettings.DEFAULT.getCpuBudget();
 		
 		events.expectMappingStart();
 		
@@ -155,6 +167,27 @@ public class YamlConfigParser {
 				case "volumes":
 					volumes = Optional.of(events.expectList());
 					break;
+				case "maxConnections":
+					maxConnections = Integer.parseInt(events.expectScalar().getValue());
+					break;
+				case "idleTimeout":
+					idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(events.expectScalar().getValue()));
+					break;
+				case "ioThreads":
+					ioThreads = Integer.parseInt(events.expectScalar().getValue());
+					break;
+				case "weight":
+					weight = Integer.parseInt(events.expectScalar().getValue());
+					break;
+				case "capacity":
+					capacity = Integer.parseInt(events.expectScalar().getValue());
+					break;
+				case "memory":
+					memoryBudget = toBytes(events.expectScalar().getValue());
+					break;
+				case "cpuShares":
+					cpuBudget = Long.parseLong(events.expectScalar().getValue());
+					break;
 				default:
 					throw new IllegalStateException("unknown name "+name);
 			}
@@ -166,25 +199,49 @@ public class YamlConfigParser {
 			throw new IllegalStateException("Type of API is not specified");
 		} 
 		
+		HostSettings settings = new HostSettings(maxConnections, idleTimeoutMillis, ioThreads, weight, capacity, memoryBudget, cpuBudget);
+		
 		switch(type) {
 			case "http":
 				Objects.requireNonNull(host, "host may be not be null for http api");
 				Objects.requireNonNull(port, "port may be not be null for http api");
-				return new HttpRestApiHost(host, port, volumes);
+				return new HttpRestApiHost(host, port, volumes, settings);
 			case "https":
 				Objects.requireNonNull(host, "host may be not be null for https api");
 				Objects.requireNonNull(port, "port may be not be null for https api");
 				Objects.requireNonNull(cert, "cert may be not be null for https api");
-				return new HttpsRestApiHost(host, port, cert, volumes);
+				return new HttpsRestApiHost(host, port, cert, volumes, settings);
 			case "unix":
 				Objects.requireNonNull(cert, "path may be not be null for unix api");
-				return new UnixRestApiHost(path, volumes);
+				return new UnixRestApiHost(path, volumes, settings);
 			default:
 				throw new IllegalStateException("Unknown type of api " + type);
 		}
 		
 	}
 
+	/**
+	 * @param size bytes with optional suffix k, m or g, f.e. 16g
+	 */
+	private static long toBytes(String size) {
+		String value = size.trim().toLowerCase();
+		long unit = 1;
+		switch (value.charAt(value.length() - 1)) {
+			case 'k':
+				unit = 1L << 10;
+				break;
+			case 'm':
+				unit = 1L << 20;
+				break;
+			case 'g':
+				unit = 1L << 30;
+				break;
+			default:
+				return Long.parseLong(value);
+		}
+		return Long.parseLong(value.substring(0, value.length() - 1)) * unit;
+	}
+
 	private TagOverride toOverrides(Events events) {
 		events.expectMappingStart();
 		
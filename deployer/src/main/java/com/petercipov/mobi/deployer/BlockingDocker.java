@@ -0,0 +1,167 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Trace;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import rx.Observable;
+import rx.Subscription;
+
+/**
+ * Blocking api over deployer and docker. Calls return plain values or
+ * futures, so callers do not have to deal with schedulers. Every call is
+ * bounded by the timeout, cancelled future and interrupted caller
+ * unsubscribe from the call. Docker created by {@link #forHost} runs its
+ * calls on virtual threads when the runtime supports them.
+ *
+ * @author petercipov
+ */
+public class BlockingDocker {
+
+	private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private final Deployer deployer;
+	private final RxDocker docker;
+	private long timeoutMillis;
+
+	public BlockingDocker(Deployer deployer, RxDocker docker) {
+		this.deployer = deployer;
+		this.docker = docker;
+		this.timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+	}
+
+	/**
+	 * Creates docker of the host that runs calls on virtual threads, or on
+	 * the io threads of the connector if virtual threads are not supported.
+	 * @param connector
+	 * @param api
+	 * @return blocking api with its own deployer
+	 */
+	public static BlockingDocker forHost(RxConnector connector, ApiHost api) {
+		RxDocker docker = VirtualThreads.isSupported()
+			? connector.createRxDocker(api, VirtualThreads.scheduler())
+			: connector.createRxDocker(api);
+		return new BlockingDocker(new Deployer(api, docker), docker);
+	}
+
+	/**
+	 * Sets maximal duration of every call, one minute by default
+	 * @param timeout
+	 * @param unit
+	 * @return this
+	 */
+	public BlockingDocker setTimeout(long timeout, TimeUnit unit) {
+		this.timeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+
+	public Container deploy(Trace trace, Instance image, RxDeployment deployment) {
+		return await(deployAsync(trace, image, deployment));
+	}
+
+	public CompletableFuture<Container> deployAsync(Trace trace, Instance image, RxDeployment deployment) {
+		return call(deployer.deploy(trace, image, deployment));
+	}
+
+	public Container deploy(Trace trace, Deployment deployment) {
+		return deploy(trace, deployment.getImage(), deployment.getOptions());
+	}
+
+	public List<Container> deployAll(Trace trace, List<Deployment> deployments, int maxConcurrency) {
+		return await(deployAllAsync(trace, deployments, maxConcurrency));
+	}
+
+	public CompletableFuture<List<Container>> deployAllAsync(Trace trace, List<Deployment> deployments, int maxConcurrency) {
+		return call(deployer.deployAll(trace, deployments, maxConcurrency).toList());
+	}
+
+	public Map<String, Container> deploy(Trace trace, Topology topology) {
+		return await(deployAsync(trace, topology));
+	}
+
+	public CompletableFuture<Map<String, Container>> deployAsync(Trace trace, Topology topology) {
+		return call(topology.deploy(trace));
+	}
+
+	public Container killContainer(Trace trace, Container container) {
+		return await(call(deployer.killContainer(trace, container)));
+	}
+
+	public Container stopContainer(Trace trace, Container container, int secondsBeforeKill) {
+		return await(call(deployer.stopContainer(trace, container, secondsBeforeKill)));
+	}
+
+	public RxDocker.ContainerInfo inspectContainer(Trace trace, String containerId) {
+		return await(inspectContainerAsync(trace, containerId));
+	}
+
+	public CompletableFuture<RxDocker.ContainerInfo> inspectContainerAsync(Trace trace, String containerId) {
+		return call(docker.inspectContainer(trace, containerId));
+	}
+
+	public Instance pull(Trace trace, Instance image) {
+		return await(call(docker.pull(trace, image)));
+	}
+
+	public boolean isPresent(Trace trace, Instance image) {
+		return await(call(docker.isPresent(trace, image)));
+	}
+
+	public List<String> listContainerIds(Trace trace, Map<String, String> labels) {
+		return await(call(docker.listContainerIds(trace, labels).toList()));
+	}
+
+	public String logs(Trace trace, String containerId) {
+		return await(call(docker.logs(trace, containerId)));
+	}
+
+	public Deployer deployer() {
+		return deployer;
+	}
+
+	public RxDocker docker() {
+		return docker;
+	}
+
+	/**
+	 * Subscribes to the call, future completes with its single value.
+	 * Completing the future in any other way unsubscribes from the call.
+	 */
+	private <T> CompletableFuture<T> call(Observable<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Subscription subscription = call
+			.timeout(timeoutMillis, TimeUnit.MILLISECONDS)
+			.single()
+			.subscribe(future::complete, future::completeExceptionally);
+		future.whenComplete((value, th) -> subscription.unsubscribe());
+		return future;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for docker", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Docker call has failed", cause);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BlockingDocker(timeoutMillis=" + timeoutMillis + ", virtualThreads=" + VirtualThreads.isSupported() + ')';
+	}
+}
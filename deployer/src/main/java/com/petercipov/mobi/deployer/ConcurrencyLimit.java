@@ -0,0 +1,151 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.deployer.RequestGovernor.Lane;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Number of calls a docker host admits in flight. Adaptive limit grows by
+ * one per limit of successful calls while the host is kept busy, and it is
+ * cut when calls fail or when 95th percentile of latency of a lane rises
+ * well above the lowest percentile seen for the lane. Latency is compared
+ * per lane, since deployments are slower than inspections by orders. 
+ * Latency of pulls and teardown is not sampled, it depends on image size 
+ * and stop grace period rather than on load of the daemon.
+ *
+ * @author petercipov
+ */
+public class ConcurrencyLimit {
+
+	private static final int WINDOW = 40;
+	private static final double TOLERANCE = 2.0;
+	private static final double LATENCY_BACKOFF = 0.9;
+	private static final double ERROR_BACKOFF = 0.7;
+	private static final double BASELINE_DRIFT = 0.05;
+
+	private final int min;
+	private final int max;
+	private final boolean adaptive;
+	private final Map<Lane, Window> windows;
+	private double limit;
+	private long increases;
+	private long decreases;
+
+	private ConcurrencyLimit(int initial, int min, int max, boolean adaptive) {
+		if (min < 1 || max < min || initial < min || initial > max) {
+			throw new IllegalArgumentException("expecting 1 <= min <= initial <= max, was (min, initial, max) " + min + ", " + initial + ", " + max);
+		}
+		this.min = min;
+		this.max = max;
+		this.adaptive = adaptive;
+		this.windows = new EnumMap<>(Lane.class);
+		windows.put(Lane.DEPLOY, new Window());
+		windows.put(Lane.INSPECT, new Window());
+		this.limit = initial;
+	}
+
+	public static ConcurrencyLimit fixed(int limit) {
+		return new ConcurrencyLimit(limit, limit, limit, false);
+	}
+
+	/**
+	 * @param initial
+	 * @param min
+	 * @param max
+	 * @return limit adapting to latency between min and max
+	 */
+	public static ConcurrencyLimit adaptive(int initial, int min, int max) {
+		return new ConcurrencyLimit(initial, min, max, true);
+	}
+
+	/**
+	 * @return calls admitted in flight now
+	 */
+	public synchronized int get() {
+		return (int) limit;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * Records finished call
+	 * @param lane
+	 * @param latencyNanos time the daemon served the call
+	 * @param failed call failed by overload of the daemon, f.e. timeout
+	 * @param inFlight calls in flight when the call finished
+	 */
+	public synchronized void onSample(Lane lane, long latencyNanos, boolean failed, int inFlight) {
+		if (! adaptive) {
+			return;
+		}
+		if (failed) {
+			decrease(ERROR_BACKOFF);
+			return;
+		}
+		Window window = windows.get(lane);
+		if (window == null) {
+			return;
+		}
+		if (window.add(latencyNanos)) {
+			long p95 = window.percentile95();
+			if (window.baseline == 0 || p95 < window.baseline) {
+				window.baseline = p95;
+			} else {
+				boolean congested = p95 > window.baseline * TOLERANCE;
+				window.baseline += (long) ((p95 - window.baseline) * BASELINE_DRIFT);
+				if (congested) {
+					decrease(LATENCY_BACKOFF);
+					return;
+				}
+			}
+		}
+		if (inFlight * 2 >= (int) limit) {
+			double next = Math.min(max, limit + 1.0 / limit);
+			if ((int) next > (int) limit) {
+				increases++;
+			}
+			limit = next;
+		}
+	}
+
+	private void decrease(double backoff) {
+		double next = Math.max(min, limit * backoff);
+		if ((int) next < (int) limit) {
+			decreases++;
+		}
+		limit = next;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ConcurrencyLimit(limit=" + (int) limit + ", min=" + min + ", max=" + max + ", adaptive=" + adaptive + ", increases=" + increases + ", decreases=" + decreases + ')';
+	}
+
+	private static class Window {
+		private final long[] samples = new long[WINDOW];
+		private int size;
+		private long baseline;
+
+		/**
+		 * @return true when window is full, it is emptied for next round
+		 */
+		boolean add(long sample) {
+			samples[size++] = sample;
+			return size == WINDOW;
+		}
+
+		long percentile95() {
+			long[] sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			size = 0;
+			return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+		}
+	}
+}
@@ -14,11 +14,17 @@ public class Container {
 	private final String containerId;
 	private final Instance image;
 	private final Map<String, List<PortBinding>> ports;
+	private final String ipAddress;
 
 	public Container(String containerId, Instance image, Map<String, List<PortBinding>> ports) {
+		this(containerId, image, ports, null);
+	}
+	
+	public Container(String containerId, Instance image, Map<String, List<PortBinding>> ports, String ipAddress) {
 		this.containerId = containerId;
 		this.image = image;
 		this.ports = Collections.unmodifiableMap(ports);
+		this.ipAddress = ipAddress;
 	}
 
 	public String getContainerId() {
@@ -37,8 +43,15 @@ public class Container {
 		return image;
 	}
 	
+	/**
+	 * @return ip address of the container in the docker network, null if not known
+	 */
+	public String getIpAddress() {
+		return ipAddress;
+	}
+	
 	@Override
 	public String toString() {
-		return "container id: "+containerId+", image:"+image+ ", exposed ports: "+ports;
+		return "container id: "+containerId+", image:"+image+ ", exposed ports: "+ports+", ip address: "+ipAddress;
 	}
 }
@@ -0,0 +1,361 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Pool of warm containers of a single image spec. Pool keeps containers
+ * started in the background and hands them out on lease, so leasing usually
+ * does not wait for the container start. Returned containers are recycled or
+ * replaced asynchronously.
+ *
+ * @author petercipov
+ */
+public class ContainerPool {
+
+	private final Deployer deployer;
+	private final Instance image;
+	private final Supplier<RxDeployment> options;
+	private final PoolSettings settings;
+	private final Scheduler scheduler;
+
+	private final Object lock;
+	private final LinkedList<Idle> idle;
+	private final LinkedList<Waiter> waiters;
+	private int size;
+	private int creating;
+	private boolean closed;
+	private Subscription eviction;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong leases;
+	private final AtomicLong waitNanos;
+	private final AtomicLong maxWaitNanos;
+
+	public ContainerPool(Deployer deployer, Instance image, Supplier<RxDeployment> options, PoolSettings settings, Scheduler scheduler) {
+		if (settings.getMaxSize() < 1 || settings.getMinIdle() > settings.getMaxSize()) {
+			throw new IllegalArgumentException("Invalid pool settings " + settings);
+		}
+		this.deployer = deployer;
+		this.image = image;
+		this.options = options;
+		this.settings = settings;
+		this.scheduler = scheduler;
+		this.lock = new Object();
+		this.idle = new LinkedList<>();
+		this.waiters = new LinkedList<>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.leases = new AtomicLong();
+		this.waitNanos = new AtomicLong();
+		this.maxWaitNanos = new AtomicLong();
+	}
+
+	/**
+	 * Starts minimal number of idle containers and periodical eviction of
+	 * containers that are idle for too long.
+	 * @param trace
+	 * @return this
+	 */
+	public ContainerPool start(Trace trace) {
+		synchronized(lock) {
+			if (eviction == null) {
+				Scheduler.Worker worker = scheduler.createWorker();
+				eviction = worker;
+				worker.schedulePeriodically(
+					() -> evict(trace),
+					settings.getEvictionPeriodMillis(),
+					settings.getEvictionPeriodMillis(),
+					TimeUnit.MILLISECONDS
+				);
+			}
+		}
+		refill(trace);
+		return this;
+	}
+
+	public Observable<Container> lease(Trace trace) {
+		return Observable.defer(() -> {
+			final long started = System.nanoTime();
+			final Observable<Container> leased;
+			boolean create = false;
+
+			synchronized(lock) {
+				if (closed) {
+					return Observable.error(new IllegalStateException("Pool is closed " + image));
+				}
+				Idle first = idle.pollFirst();
+				if (first != null) {
+					hits.incrementAndGet();
+					leased = Observable.just(first.container);
+				} else {
+					misses.incrementAndGet();
+					Waiter waiter = new Waiter();
+					waiters.add(waiter);
+					leased = waiter.subject
+						.doOnNext(container -> waiter.delivered.set(true))
+						.doOnUnsubscribe(() -> abandon(trace, waiter));
+					if (size < settings.getMaxSize()) {
+						size++;
+						creating++;
+						create = true;
+					}
+				}
+			}
+
+			if (create) {
+				create(trace);
+			}
+			refill(trace);
+			return leased
+				.doOnNext(container -> {
+					recordWait(System.nanoTime() - started);
+					trace.event("ContainerPool: container leased (container)", container);
+				});
+		});
+	}
+
+	/**
+	 * Returns container to the pool. Container is recycled or replaced in
+	 * the background.
+	 * @param trace
+	 * @param container
+	 */
+	public void release(Trace trace, Container container) {
+		trace.event("ContainerPool: container returned (container)", container);
+		if (settings.getRecycler() == null) {
+			replace(trace, container);
+			return;
+		}
+		settings.getRecycler().call(container)
+			.subscribe(
+				recycled -> offer(trace, recycled),
+				th -> {
+					trace.event(Level.ERROR, "ContainerPool: recycling failed, replacing container (container)", container, th);
+					replace(trace, container);
+				}
+			);
+	}
+
+	public void close(Trace trace) {
+		List<Idle> toKill;
+		List<Waiter> toFail;
+		synchronized(lock) {
+			closed = true;
+			if (eviction != null) {
+				eviction.unsubscribe();
+			}
+			toKill = new ArrayList<>(idle);
+			toFail = new ArrayList<>(waiters);
+			size -= idle.size();
+			idle.clear();
+			waiters.clear();
+		}
+		for (Waiter waiter : toFail) {
+			waiter.subject.onError(new IllegalStateException("Pool was closed " + image));
+		}
+		Observable.from(toKill)
+			.flatMap(i -> kill(trace, i.container))
+			.toList().toBlocking().single();
+	}
+
+	private void replace(Trace trace, Container container) {
+		kill(trace, container)
+			.onErrorResumeNext(Observable.empty())
+			.doOnCompleted(() -> {
+				synchronized(lock) {
+					size--;
+				}
+				refill(trace);
+			})
+			.subscribe();
+	}
+
+	private void refill(Trace trace) {
+		int toCreate;
+		synchronized(lock) {
+			if (closed) {
+				return;
+			}
+			int missing = settings.getMinIdle() + waiters.size() - idle.size() - creating;
+			toCreate = Math.max(0, Math.min(missing, settings.getMaxSize() - size));
+			size += toCreate;
+			creating += toCreate;
+		}
+		for (int i = 0; i < toCreate; i++) {
+			create(trace);
+		}
+	}
+
+	private void create(Trace trace) {
+		deployer.deploy(trace, image, options.get())
+			.subscribe(
+				container -> {
+					synchronized(lock) {
+						creating--;
+					}
+					offer(trace, container);
+				},
+				th -> {
+					trace.event(Level.ERROR, "ContainerPool: container could not be created", image, th);
+					Waiter waiter;
+					synchronized(lock) {
+						creating--;
+						size--;
+						waiter = waiters.pollFirst();
+					}
+					if (waiter != null) {
+						waiter.subject.onError(th);
+					}
+				}
+			);
+	}
+
+	private void offer(Trace trace, Container container) {
+		Waiter waiter;
+		boolean kill = false;
+		synchronized(lock) {
+			waiter = waiters.pollFirst();
+			if (waiter == null) {
+				if (closed) {
+					size--;
+					kill = true;
+				} else {
+					idle.addLast(new Idle(container, System.currentTimeMillis()));
+				}
+			}
+		}
+		if (waiter != null) {
+			waiter.subject.onNext(container);
+			waiter.subject.onCompleted();
+			reclaim(trace, waiter);
+		} else if (kill) {
+			kill(trace, container).subscribe(c -> {}, th -> {});
+		}
+	}
+
+	/**
+	 * Lease was unsubscribed before it got a container, f.e. on timeout
+	 */
+	private void abandon(Trace trace, Waiter waiter) {
+		waiter.abandoned.set(true);
+		boolean waiting;
+		synchronized(lock) {
+			waiting = waiters.remove(waiter);
+		}
+		if (! waiting) {
+			reclaim(trace, waiter);
+		}
+	}
+
+	/**
+	 * Container handed to a waiter that was abandoned meanwhile is offered
+	 * again, so it is not lost to the pool. Both the lease and the offer
+	 * check, the one that comes second reclaims the container.
+	 */
+	private void reclaim(Trace trace, Waiter waiter) {
+		if (waiter.abandoned.get() && ! waiter.delivered.get() && waiter.subject.hasValue() && waiter.reclaimed.compareAndSet(false, true)) {
+			trace.event("ContainerPool: lease was abandoned, container offered again (container)", waiter.subject.getValue());
+			offer(trace, waiter.subject.getValue());
+		}
+	}
+
+	private void evict(Trace trace) {
+		List<Container> evicted = new LinkedList<>();
+		long deadline = System.currentTimeMillis() - settings.getIdleTimeoutMillis();
+		synchronized(lock) {
+			Iterator<Idle> it = idle.iterator();
+			while (it.hasNext() && idle.size() > settings.getMinIdle()) {
+				Idle i = it.next();
+				if (i.since < deadline) {
+					it.remove();
+					size--;
+					evicted.add(i.container);
+				}
+			}
+		}
+		for (Container container : evicted) {
+			trace.event("ContainerPool: evicting idle container (container)", container);
+			kill(trace, container).subscribe(c -> {}, th -> {});
+		}
+	}
+
+	private Observable<Container> kill(Trace trace, Container container) {
+		return deployer.killContainer(trace, container)
+			.doOnError(th -> trace.event(Level.ERROR, "ContainerPool: container could not be killed (container)", container, th));
+	}
+
+	private void recordWait(long nanos) {
+		leases.incrementAndGet();
+		waitNanos.addAndGet(nanos);
+		long max;
+		do {
+			max = maxWaitNanos.get();
+		} while (nanos > max && ! maxWaitNanos.compareAndSet(max, nanos));
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long count = leases.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get()) / 1000.0 / count;
+	}
+
+	public double getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()) / 1000.0;
+	}
+
+	public int getIdle() {
+		synchronized(lock) {
+			return idle.size();
+		}
+	}
+
+	public int getSize() {
+		synchronized(lock) {
+			return size;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ContainerPool(image=" + image + ", size=" + getSize() + ", idle=" + getIdle() + ", hits=" + hits + ", misses=" + misses + ", avgWaitMillis=" + getAverageWaitMillis() + ')';
+	}
+
+	private static class Waiter {
+		private final AsyncSubject<Container> subject = AsyncSubject.create();
+		private final AtomicBoolean delivered = new AtomicBoolean();
+		private final AtomicBoolean abandoned = new AtomicBoolean();
+		private final AtomicBoolean reclaimed = new AtomicBoolean();
+	}
+
+	private static class Idle {
+		private final Container container;
+		private final long since;
+
+		public Idle(Container container, long since) {
+			this.container = container;
+			this.since = since;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Removes containers in the background. Deployer hands containers over and
+ * returns immediately, reaper threads stop, kill and remove them concurrently.
+ * Queue is bounded, when the docker host can not keep up, handing over blocks
+ * until there is a free slot. Remaining containers are flushed at JVM exit
+ * and containers that could not be removed are reported.
+ *
+ * @author petercipov
+ */
+public class ContainerReaper {
+
+	public static final int KILL = -1;
+	private static final Logger LOGGER = LoggerFactory.getLogger(ContainerReaper.class);
+	private static final int DEFAULT_CAPACITY = 256;
+	private static final int DEFAULT_CONCURRENCY = 4;
+	private static final long STOP_TIMEOUT_SLACK_SECONDS = 5;
+	private static final long REMOVE_TIMEOUT_SECONDS = 30;
+	private static final long FLUSH_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final Map<String, ContainerReaper> HOSTS = new ConcurrentHashMap<>();
+
+	private final RxDocker docker;
+	private final BlockingQueue<Item> queue;
+	private final List<Container> failed;
+	private final AtomicLong removed;
+	private final Object lock;
+	private int pending;
+
+	public ContainerReaper(RxDocker docker, int capacity, int concurrency) {
+		this.docker = docker;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.failed = new ArrayList<>();
+		this.removed = new AtomicLong();
+		this.lock = new Object();
+		this.pending = 0;
+
+		for (int i = 0; i < concurrency; i++) {
+			Thread worker = new Thread(this::drain, "mobi-reaper-" + i);
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * @param api
+	 * @param docker creates docker used by reaper threads
+	 * @return reaper of the host, flushed at JVM exit
+	 */
+	public static ContainerReaper forHost(ApiHost api, Func0<RxDocker> docker) {
+		return HOSTS.computeIfAbsent(api.getUri(), uri -> {
+			ContainerReaper reaper = new ContainerReaper(docker.call(), DEFAULT_CAPACITY, DEFAULT_CONCURRENCY);
+			Runtime.getRuntime().addShutdownHook(new Thread(
+				() -> reaper.flushAndReport(uri),
+				"mobi-reaper-flush"
+			));
+			return reaper;
+		});
+	}
+
+	/**
+	 * Hands container over to the reaper. Blocks while the queue is full.
+	 * @param trace
+	 * @param container
+	 * @param stopGraceSeconds seconds between SIGTERM and kill, KILL to kill
+	 * right away
+	 */
+	public void submit(Trace trace, Container container, int stopGraceSeconds) {
+		submit(trace, container, stopGraceSeconds, () -> {});
+	}
+
+	/**
+	 * Hands container over to the reaper. Blocks while the queue is full.
+	 * @param trace
+	 * @param container
+	 * @param stopGraceSeconds seconds between SIGTERM and kill, KILL to kill
+	 * right away
+	 * @param processed called by reaper thread once the container is removed
+	 * or could not be removed
+	 */
+	public void submit(Trace trace, Container container, int stopGraceSeconds, Runnable processed) {
+		synchronized(lock) {
+			pending++;
+		}
+		Item item = new Item(trace, container, stopGraceSeconds, processed);
+		try {
+			if (! queue.offer(item)) {
+				trace.event("ContainerReaper: queue is full, waiting (container)", container);
+				queue.put(item);
+			}
+		} catch (InterruptedException ex) {
+			done();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while handing over container " + container.getContainerId(), ex);
+		}
+	}
+
+	/**
+	 * Waits until all handed over containers are processed
+	 * @param timeout
+	 * @param unit
+	 * @return true if nothing is pending
+	 * @throws InterruptedException
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		synchronized(lock) {
+			long remaining;
+			while (pending > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+				lock.wait(remaining);
+			}
+			return pending == 0;
+		}
+	}
+
+	/**
+	 * @return containers that could not be removed
+	 */
+	public List<Container> getFailed() {
+		synchronized(failed) {
+			return new ArrayList<>(failed);
+		}
+	}
+
+	public long getRemoved() {
+		return removed.get();
+	}
+
+	public int getPending() {
+		synchronized(lock) {
+			return pending;
+		}
+	}
+
+	/**
+	 * Stops container, kills it if it does not stop within grace period.
+	 * Errors of kill are swallowed, removal of still running container fails
+	 * anyway.
+	 */
+	static Observable<String> stopOrKill(Trace trace, RxDocker docker, String containerId, int stopGraceSeconds) {
+		Observable<String> killing = docker.killContainer(trace, containerId)
+			.onErrorResumeNext(th -> {
+				trace.event(Level.ERROR, "Container could not be killed (container id)", containerId, th);
+				return Observable.just(containerId);
+			});
+		if (stopGraceSeconds == KILL) {
+			return killing;
+		}
+		return docker.stopContainer(trace, containerId, stopGraceSeconds)
+			.timeout(stopGraceSeconds + STOP_TIMEOUT_SLACK_SECONDS, TimeUnit.SECONDS)
+			.onErrorResumeNext(th -> {
+				trace.event("Container did not stop, killing (container id)", containerId, th);
+				return killing;
+			});
+	}
+
+	private void drain() {
+		while (true) {
+			Item item;
+			try {
+				item = queue.take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+
+			try {
+				stopOrKill(item.trace, docker, item.container.getContainerId(), item.stopGraceSeconds)
+					.flatMap(id -> docker.removeContainer(item.trace, id))
+					.timeout(Math.max(item.stopGraceSeconds, 0) + STOP_TIMEOUT_SLACK_SECONDS + REMOVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+					.toBlocking().last();
+				removed.incrementAndGet();
+				item.trace.event("ContainerReaper: container was removed (container id)", item.container.getContainerId());
+			} catch (RuntimeException ex) {
+				item.trace.event(Level.ERROR, "ContainerReaper: container could not be removed (container)", item.container, ex);
+				synchronized(failed) {
+					failed.add(item.container);
+				}
+			} finally {
+				item.processed.run();
+				done();
+			}
+		}
+	}
+
+	private void done() {
+		synchronized(lock) {
+			pending--;
+			if (pending == 0) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private void flushAndReport(String uri) {
+		boolean flushed;
+		try {
+			flushed = flush(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			flushed = false;
+		}
+		List<Container> left = getFailed();
+		if (! flushed || ! left.isEmpty()) {
+			LOGGER.warn("Containers on {} were not removed, pending: {}, failed: {}", uri, getPending(), left);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ContainerReaper(pending=" + getPending() + ", removed=" + removed + ", failed=" + getFailed().size() + ')';
+	}
+
+	private static class Item {
+		private final Trace trace;
+		private final Container container;
+		private final int stopGraceSeconds;
+		private final Runnable processed;
+
+		public Item(Trace trace, Container container, int stopGraceSeconds, Runnable processed) {
+			this.trace = trace;
+			this.container = container;
+			this.stopGraceSeconds = stopGraceSeconds;
+			this.processed = processed;
+		}
+	}
+}
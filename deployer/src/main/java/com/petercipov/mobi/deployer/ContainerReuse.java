@@ -0,0 +1,183 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Registry of containers that are kept alive across deployers of a docker
+ * host. Container is identified by structural hash of the image and its
+ * deployment options. When later deployment has the same hash, container is
+ * reused instead of deploying a new one. Hash is recorded in container label,
+ * so reuse is verified against the daemon. Containers are removed at JVM exit.
+ * Resources reserved by a container stay reserved in the budget of the host
+ * until the container is discarded.
+ *
+ * @author petercipov
+ */
+public class ContainerReuse {
+
+	public static final String HASH_LABEL = "mobi.reuse.hash";
+	private static final long CLEANUP_TIMEOUT_SECONDS = 60;
+	private static final Map<String, ContainerReuse> HOSTS = new ConcurrentHashMap<>();
+	private static final Logger LOGGER = LoggerFactory.getLogger(ContainerReuse.class);
+
+	private final Func0<RxDocker> cleanupDocker;
+	private final Map<String, Entry> containers;
+
+	public ContainerReuse(Func0<RxDocker> cleanupDocker) {
+		this.cleanupDocker = cleanupDocker;
+		this.containers = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @param api
+	 * @param cleanupDocker creates docker used to remove containers at JVM exit
+	 * @return registry of the host
+	 */
+	public static ContainerReuse forHost(ApiHost api, Func0<RxDocker> cleanupDocker) {
+		return HOSTS.computeIfAbsent(api.getUri(), uri -> {
+			ContainerReuse reuse = new ContainerReuse(cleanupDocker);
+			Runtime.getRuntime().addShutdownHook(new Thread(
+				() -> reuse.cleanup(NoopTrace.INSTANCE),
+				"mobi-reuse-cleanup"
+			));
+			return reuse;
+		});
+	}
+
+	/**
+	 * Marks idle container with the hash as used.
+	 * @param hash
+	 * @return container that can be reused
+	 */
+	public synchronized Optional<Container> acquire(String hash) {
+		for (Entry entry : containers.values()) {
+			if (! entry.inUse && entry.hash.equals(hash)) {
+				entry.inUse = true;
+				return Optional.of(entry.container);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * @param hash
+	 * @param container
+	 * @param reservation resources held by the container, released when the
+	 * container is discarded, may be null
+	 */
+	public synchronized void register(String hash, Container container, ResourceBudget.Reservation reservation) {
+		Entry entry = new Entry(hash, container, reservation);
+		entry.inUse = true;
+		containers.put(container.getContainerId(), entry);
+	}
+
+	public synchronized void release(Container container) {
+		Entry entry = containers.get(container.getContainerId());
+		if (entry != null) {
+			entry.inUse = false;
+		}
+	}
+
+	public void discard(Container container) {
+		Entry entry = containers.remove(container.getContainerId());
+		if (entry != null) {
+			entry.releaseReservation();
+		}
+	}
+
+	public boolean isManaged(Container container) {
+		return isManaged(container.getContainerId());
+	}
+	
+	public boolean isManaged(String containerId) {
+		return containers.containsKey(containerId);
+	}
+
+	public boolean verify(String hash, RxDocker.ContainerInfo info) {
+		Map<String, String> labels = info.config().labels();
+		return Boolean.TRUE.equals(info.state().running())
+			&& labels != null
+			&& hash.equals(labels.get(HASH_LABEL));
+	}
+
+	public int size() {
+		return containers.size();
+	}
+
+	public void cleanup(Trace trace) {
+		List<Container> list = new ArrayList<>();
+		for (Entry entry : containers.values()) {
+			list.add(entry.container);
+			entry.releaseReservation();
+		}
+		containers.clear();
+		if (list.isEmpty()) {
+			return;
+		}
+
+		trace.event("ContainerReuse: removing reused containers (count)", list.size());
+		Set<String> left = ConcurrentHashMap.newKeySet();
+		for (Container container : list) {
+			left.add(container.getContainerId());
+		}
+		RxDocker docker = cleanupDocker.call();
+		try {
+			Observable.from(list)
+				.flatMap(c -> docker.killContainer(trace, c.getContainerId())
+					.flatMap(id -> docker.removeContainer(trace, id))
+					.doOnNext(left::remove)
+					.onErrorResumeNext(th -> {
+						trace.event(Level.ERROR, "ContainerReuse: container could not be removed (container)", c, th);
+						return Observable.empty();
+					})
+				)
+				.timeout(CLEANUP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+				.toList().toBlocking().single();
+		} catch(RuntimeException ex) {
+			trace.event(Level.ERROR, "ContainerReuse: removing of reused containers did not finish", ex);
+		} finally {
+			docker.close(trace);
+		}
+		if (! left.isEmpty()) {
+			LOGGER.warn("Reused containers were not removed: {}", left);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ContainerReuse(containers=" + containers.size() + ')';
+	}
+
+	private static class Entry {
+		private final String hash;
+		private final Container container;
+		private final ResourceBudget.Reservation reservation;
+		private boolean inUse;
+
+		public Entry(String hash, Container container, ResourceBudget.Reservation reservation) {
+			this.hash = hash;
+			this.container = container;
+			this.reservation = reservation;
+		}
+
+		void releaseReservation() {
+			if (reservation != null) {
+				reservation.release();
+			}
+		}
+	}
+}
@@ -2,14 +2,27 @@ package com.petercipov.mobi.deployer;
 
 import com.petercipov.mobi.Instance;
 import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.deployer.readiness.ProbeLoop;
+import com.petercipov.mobi.deployer.readiness.ProbeTarget;
+import com.petercipov.mobi.deployer.readiness.Readiness;
 import com.petercipov.traces.api.Level;
 import com.petercipov.traces.api.Trace;
 import com.petercipov.traces.api.Trace.Event;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import rx.Observable;
 
 /**
@@ -18,100 +31,450 @@ import rx.Observable;
  */
 public class Deployer{
 	
+	public static final String DEPLOYER_LABEL = "mobi.deployer";
+	private static final long PROBE_ATTEMPT_TIMEOUT_MILLIS = 2000;
+	private static final Set<RxDocker.InspectSection> REUSE_SECTIONS = Collections.unmodifiableSet(
+		EnumSet.of(RxDocker.InspectSection.CONFIG, RxDocker.InspectSection.STATE)
+	);
+	
 	private final ApiHost api;
 	private final List<Container> deployedContainers;
 	private final RxDocker rxdocker;
+	private final PullRegistry pulls;
+	private final ResourceBudget budget;
+	private final Map<String, ResourceBudget.Reservation> reservations;
+	private final List<Container> reusedContainers;
+	private volatile Optional<ContainerReuse> reuse;
+	private volatile TeardownPolicy teardown;
+	private volatile Optional<ContainerReaper> reaper;
+	private final String deployerId;
 	
 	public Deployer(ApiHost api, RxDocker rxdocker) {
+		this(api, rxdocker, PullRegistry.forHost(api));
+	}
+	
+	public Deployer(ApiHost api, RxDocker rxdocker, PullRegistry pulls) {
+		this(api, rxdocker, pulls, ResourceBudget.forHost(api));
+	}
+	
+	/**
+	 * @param api
+	 * @param rxdocker
+	 * @param pulls
+	 * @param budget memory and cpu shares reserved by deployments before 
+	 * their containers are created, reservations are released when the
+	 * containers are killed, stopped or left at close, containers handed 
+	 * over to reaper release them once they are removed. Reservations of 
+	 * reusable containers are held by the reuse until they are discarded.
+	 */
+	public Deployer(ApiHost api, RxDocker rxdocker, PullRegistry pulls, ResourceBudget budget) {
 		this.api = api;
 		this.rxdocker = rxdocker;
+		this.pulls = pulls;
+		this.budget = budget;
+		this.reservations = new ConcurrentHashMap<>();
 		this.deployedContainers = Collections.synchronizedList(new LinkedList<>());
+		this.reusedContainers = Collections.synchronizedList(new LinkedList<>());
+		this.reuse = Optional.empty();
+		this.teardown = new TeardownPolicy();
+		this.reaper = Optional.empty();
+		this.deployerId = UUID.randomUUID().toString();
+	}
+	
+	/**
+	 * Enables reuse of containers. Containers are not killed when deployer is
+	 * closed and are reused by later deployments with the same image and options.
+	 * @param reuse registry of reusable containers
+	 * @return 
+	 */
+	public Deployer enableReuse(ContainerReuse reuse) {
+		this.reuse = Optional.of(reuse);
+		return this;
+	}
+	
+	/**
+	 * Sets how containers are removed when deployer is closed
+	 * @param teardown
+	 * @return 
+	 */
+	public Deployer setTeardown(TeardownPolicy teardown) {
+		this.teardown = teardown;
+		return this;
+	}
+	
+	/**
+	 * Containers that are killed, stopped or left at close are handed over
+	 * to the reaper and removed in the background.
+	 * @param reaper
+	 * @return 
+	 */
+	public Deployer enableReaper(ContainerReaper reaper) {
+		this.reaper = Optional.of(reaper);
+		return this;
 	}
 	
 	public Observable<Container> deploy(Trace trace, Instance image, RxDeployment deployment) {
 		return Observable.defer(() -> {
 			setDefaults(deployment);
 			Event deployEvent = trace.start("Deployer: deploying image", image);
-			return rxdocker.isPresent(trace, image)
-				.flatMap(present -> {
-					if (present) {
-						trace.event("Deployer: Image already present in the docker", image);
-						return  Observable.just(image);
-					} else {
-						trace.event("Deployer: Image not present in the docker, pulling image from registry", image);
-						return rxdocker.pull(trace, image); 
-					}
-				})
-				.flatMap((xxx) -> deployment.createContainer(trace, image))
-				.flatMap(containerId -> rxdocker.startContainer(trace, containerId))
-                .flatMap(containerId -> 
-                    rxdocker.inspectContainer(trace, containerId)
-                    .flatMap(inspection -> {
-                        if (inspection.state().running()) {
-                            return Observable.just(inspection);
-                        } else {
-                            return Observable.error(new IllegalStateException("Expecting container to run. containerId="+containerId));
-                        }
-                    })
-					.map(inspection -> new Container(containerId, image, inspection.networkSettings().ports()))
-					.onErrorResumeNext(ex ->  rxdocker.killContainer(trace, containerId)
-						.flatMap(id -> rxdocker.removeContainer(trace, id))
-						.flatMap(id -> Observable.error(ex))
-					)
-                )
-				.doOnNext(container -> {
-					trace.event("Deployer: image was deployed, (container)", container);
-                    deployedContainers.add(container);
-				})
+			return reuse
+				.map(r -> reuseOrRun(trace, image, deployment, r))
+				.orElseGet(() -> prepareImage(trace, image).flatMap((xxx) -> run(trace, image, deployment)))
 				.doOnError((th) -> trace.event(Level.ERROR, "Deployer: could not deploy", th))
 				.doOnTerminate(() -> deployEvent.end());
 		});
-    }
+	}
 	
+	/**
+	 * Deploys batch of deployments. Presence of every distinct image is checked 
+	 * once for the whole batch, missing images are pulled while containers of 
+	 * present images are already being created. Containers are emitted as soon 
+	 * as they are ready. If any deployment fails, containers created by the 
+	 * batch are killed, also those still waiting for readiness, and the error
+	 * is propagated.
+	 * @param trace
+	 * @param deployments 
+	 * @param maxConcurrency maximal number of containers being deployed at once,
+	 * concurrency limit of the docker applies when it is lower
+	 * @return 
+	 */
+	public Observable<Container> deployAll(Trace trace, List<Deployment> deployments, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("max concurrency has to be positive, was " + maxConcurrency);
+		}
+		return Observable.defer(() -> {
+			int concurrency = Math.min(maxConcurrency, rxdocker.concurrencyLimit());
+			Event batchEvent = trace.start("Deployer: deploying batch (size, max concurrency)", deployments.size(), concurrency);
+			Map<String, List<Deployment>> byImage = new LinkedHashMap<>();
+			for (Deployment deployment : deployments) {
+				setDefaults(deployment.getOptions());
+				byImage
+					.computeIfAbsent(deployment.getImage().toString(), ref -> new LinkedList<>())
+					.add(deployment);
+			}
+			
+			List<Container> created = Collections.synchronizedList(new LinkedList<>());
+			return Observable.from(byImage.values())
+				.flatMap(group -> prepareImage(trace, group.get(0).getImage())
+					.flatMap(image -> Observable.from(group))
+				)
+				.flatMap(d -> run(trace, d.getImage(), d.getOptions(), created::add), concurrency)
+				.onErrorResumeNext(ex -> {
+					trace.event(Level.ERROR, "Deployer: batch failed, rolling back created containers (count)", created.size(), ex);
+					return rollback(trace, created).flatMap(xxx -> Observable.<Container>error(ex));
+				})
+				.doOnTerminate(() -> batchEvent.end());
+		});
+	}
+	
+	/**
+	 * Deploys batch with as many deployments at once as the docker admits
+	 * @param trace
+	 * @param deployments
+	 * @return 
+	 */
+	public Observable<Container> deployAll(Trace trace, List<Deployment> deployments) {
+		return deployAll(trace, deployments, Integer.MAX_VALUE);
+	}
+	
+	private Observable<Container> reuseOrRun(Trace trace, Instance image, RxDeployment deployment, ContainerReuse reuse) {
+		final String hash = deployment.specHash(image);
+		deployment.addLabel(ContainerReuse.HASH_LABEL, hash);
+		
+		Observable<Container> deploying = prepareImage(trace, image)
+			.flatMap((xxx) -> run(trace, image, deployment))
+			.doOnNext(container -> {
+				deployedContainers.remove(container);
+				reusedContainers.add(container);
+				reuse.register(hash, container, reservations.remove(container.getContainerId()));
+			});
+		
+		return reuse.acquire(hash)
+			.map(candidate -> {
+				AtomicBoolean verified = new AtomicBoolean();
+				return rxdocker.inspectContainer(trace, candidate.getContainerId(), REUSE_SECTIONS)
+					.map(info -> reuse.verify(hash, info))
+					.onErrorReturn(th -> false)
+					.doOnUnsubscribe(() -> {
+						if (verified.compareAndSet(false, true)) {
+							trace.event("Deployer: verification was abandoned, releasing container (container)", candidate);
+							reuse.release(candidate);
+						}
+					})
+					.flatMap(valid -> {
+						verified.set(true);
+						if (valid) {
+							trace.event("Deployer: reusing container (container, hash)", candidate, hash);
+							reusedContainers.add(candidate);
+							return Observable.just(candidate);
+						} else {
+							trace.event("Deployer: container can not be reused (container, hash)", candidate, hash);
+							reuse.discard(candidate);
+							return deploying;
+						}
+					});
+			})
+			.orElse(deploying);
+	}
+	
+	private Observable<Instance> prepareImage(Trace trace, Instance image) {
+		return rxdocker.isPresent(trace, image)
+			.flatMap(present -> {
+				if (present) {
+					trace.event("Deployer: Image already present in the docker", image);
+					return  Observable.just(image);
+				} else {
+					trace.event("Deployer: Image not present in the docker, pulling image from registry", image);
+					return pulls.pull(trace, image, () -> rxdocker.pull(trace, image));
+				}
+			});
+	}
+	
+	private Observable<Container> run(Trace trace, Instance image, RxDeployment deployment) {
+		return run(trace, image, deployment, container -> {});
+	}
+	
+	/**
+	 * Container is tracked as deployed as soon as it runs, so it is killed
+	 * at close or by rollback of a batch even when waiting for its readiness
+	 * was unsubscribed.
+	 * @param created called with every container once it runs
+	 */
+	private Observable<Container> run(Trace trace, Instance image, RxDeployment deployment, Consumer<Container> created) {
+		return budget.reserve(trace, deployment.memory(), deployment.cpuShares())
+			.flatMap(reservation -> {
+				AtomicBoolean kept = new AtomicBoolean();
+				return rxdocker.createAndStart(trace, image, deployment)
+					.map(inspection -> new Container(
+						inspection.id(), 
+						image, 
+						inspection.networkSettings().ports(), 
+						inspection.networkSettings().ipAddress()
+					))
+					.doOnNext(container -> {
+						kept.set(true);
+						reservations.put(container.getContainerId(), reservation);
+						deployedContainers.add(container);
+						created.accept(container);
+					})
+					.doOnUnsubscribe(() -> {
+						if (! kept.get()) {
+							reservation.release();
+						}
+					})
+					.flatMap(container -> awaitReady(trace, container, deployment)
+						.onErrorResumeNext(ex -> killContainer(trace, container)
+							.ignoreElements()
+							.onErrorResumeNext(th -> {
+								trace.event(Level.ERROR, "Deployer: container that is not ready could not be killed (container)", container, th);
+								return Observable.empty();
+							})
+							.concatWith(Observable.error(ex))
+						)
+					);
+			})
+			.doOnNext(container -> trace.event("Deployer: image was deployed, (container)", container));
+	}
+	
+	private void releaseReservation(String containerId) {
+		ResourceBudget.Reservation reservation = reservations.remove(containerId);
+		if (reservation != null) {
+			reservation.release();
+		}
+	}
+	
+	private Observable<Container> awaitReady(Trace trace, Container container, RxDeployment deployment) {
+		if (deployment.readiness().isEmpty()) {
+			return Observable.just(container);
+		}
+		Event readyEvent = trace.start("Deployer: waiting for readiness (container, probes)", container.getContainerId(), deployment.readiness());
+		ProbeTarget target = new ProbeTarget(
+			container, 
+			api.getPublishedHost(), 
+			rxdocker, 
+			ProbeLoop.shared(), 
+			Math.min(PROBE_ATTEMPT_TIMEOUT_MILLIS, deployment.readinessTimeoutMillis())
+		);
+		return Readiness.await(trace, target, deployment.readiness(), deployment.readinessIntervalMillis(), deployment.readinessTimeoutMillis())
+			.ignoreElements()
+			.map(xxx -> container)
+			.concatWith(Observable.just(container))
+			.doOnTerminate(() -> readyEvent.end());
+	}
+	
+	private Observable<List<Container>> rollback(Trace trace, List<Container> containers) {
+		List<Container> list;
+		synchronized(containers) {
+			list = new ArrayList<>(containers);
+		}
+		return Observable.from(list)
+			.filter(deployedContainers::contains)
+			.flatMap(c -> this.killContainer(trace, c)
+				.onErrorResumeNext(th -> {
+					trace.event(Level.ERROR, "Deployer: rollback of container failed (container)", c, th);
+					return Observable.empty();
+				})
+			)
+			.toList();
+	}
+	
+	public Topology topology() {
+		return new Topology(this);
+	}
+	
+	int concurrencyLimit() {
+		return rxdocker.concurrencyLimit();
+	}
+	
+	public PullRegistry pulls() {
+		return pulls;
+	}
 	
 	protected void setDefaults(RxDeployment options) {
 		api
 			.getVolumeBindings()
 			.ifPresent(options::addVolumes);
+		options.addLabel(DEPLOYER_LABEL, deployerId);
+		Session.current().labels().forEach(options::addLabel);
 	}
 	
 	public Observable<Container> killContainer(Trace trace, Container container) {
 		trace.event("Deployer: killing container, (container id, image)", container.getContainerId(), container.getImage());
+		forgetReused(container);
+		if (reaper.isPresent()) {
+			return handOver(trace, container, ContainerReaper.KILL);
+		}
 		return rxdocker.killContainer(trace, container.getContainerId())
 			.flatMap(id -> rxdocker.removeContainer(trace, id))
 			.map(id -> {
 				trace.event("Deployer: container was killed, (container id)", id);
 				deployedContainers.remove(container);
+				releaseReservation(id);
 				return container;
 			});
     }
 	
 	public Observable<Container> stopContainer(Trace trace, Container container, int secondsBefaoreKill) {
 		trace.event("Deployer: stopping container (container id, image)", container.getContainerId(), container.getImage());
+		forgetReused(container);
+		if (reaper.isPresent()) {
+			return handOver(trace, container, secondsBefaoreKill);
+		}
 		return rxdocker.stopContainer(trace, container.getContainerId(), secondsBefaoreKill)
 			.flatMap(id -> rxdocker.removeContainer(trace, id))
 			.map(id -> {
 				trace.event("Deployer: container was stopped, (container id)", id);
 				deployedContainers.remove(container);
+				releaseReservation(id);
 				return container;
 			});		
     }
 	
+	private Observable<Container> handOver(Trace trace, Container container, int stopGraceSeconds) {
+		return Observable.fromCallable(() -> {
+			reaper.get().submit(trace, container, stopGraceSeconds, () -> releaseReservation(container.getContainerId()));
+			deployedContainers.remove(container);
+			return container;
+		});
+	}
+	
+	private void forgetReused(Container container) {
+		if (reusedContainers.remove(container)) {
+			reuse.ifPresent(r -> r.discard(container));
+		}
+	}
+	
 	public void close(Trace trace) throws IOException {
+		releaseReusedContainers(trace);
 		killAllPendingContainers(trace);
 	}
+	
+	private void releaseReusedContainers(Trace trace) {
+		List<Container> list;
+		synchronized(reusedContainers) {
+			list = new ArrayList<>(reusedContainers);
+			reusedContainers.clear();
+		}
+		for (Container container : list) {
+			trace.event("Deployer: keeping container for reuse (container)", container);
+			reuse.ifPresent(r -> r.release(container));
+		}
+	}
 
 	private void killAllPendingContainers(Trace trace) {
-		trace.event("Deployer: killing all pending containers");
-		
+		TeardownPolicy policy = this.teardown;
 		List<Container> list;
 		synchronized(deployedContainers) {
 			list = new ArrayList<>(deployedContainers);
 		}
+		if (reaper.isPresent()) {
+			trace.event("Deployer: handing pending containers over to reaper (count)", list.size());
+			for (Container container : list) {
+				reaper.get().submit(trace, container, policy.getStopGraceSeconds(), () -> releaseReservation(container.getContainerId()));
+				deployedContainers.remove(container);
+			}
+			return;
+		}
+		
+		Event teardownEvent = trace.start("Deployer: killing all pending containers (count, policy)", list.size(), policy);
 		
-		Observable.from(list)
-			.flatMap((c) -> this.killContainer(trace, c))
-			.toList().toBlocking().single()
-		;
+		int parallelism = Math.min(policy.getParallelism(), rxdocker.concurrencyLimit());
+		Observable<String> removed = Observable.from(list)
+			.flatMap(c -> retire(trace, c, policy), parallelism);
+		if (policy.isRemoveByLabel()) {
+			removed = removed.toList().flatMap(xxx -> removeByLabel(trace, parallelism));
+		}
+		
+		removed
+			.takeUntil(Observable.timer(policy.getDeadlineMillis(), TimeUnit.MILLISECONDS))
+			.toList().toBlocking().single();
+		
+		synchronized(deployedContainers) {
+			if (! deployedContainers.isEmpty()) {
+				trace.event(Level.ERROR, "Deployer: containers were not removed before deadline (containers)", new ArrayList<>(deployedContainers));
+			}
+		}
+		for (String containerId : new ArrayList<>(reservations.keySet())) {
+			releaseReservation(containerId);
+		}
+		teardownEvent.end();
+	}
+	
+	/**
+	 * Stops container, kills it when it does not stop within grace period and
+	 * removes it unless containers are removed by label.
+	 */
+	private Observable<String> retire(Trace trace, Container container, TeardownPolicy policy) {
+		Observable<String> stopped = ContainerReaper.stopOrKill(trace, rxdocker, container.getContainerId(), policy.getStopGraceSeconds());
+		
+		if (policy.isRemoveByLabel()) {
+			return stopped;
+		}
+		return stopped
+			.flatMap(id -> rxdocker.removeContainer(trace, id))
+			.doOnNext(id -> {
+				deployedContainers.remove(container);
+				releaseReservation(id);
+			})
+			.onErrorResumeNext(th -> {
+				trace.event(Level.ERROR, "Deployer: container could not be removed (container)", container, th);
+				return Observable.empty();
+			});
+	}
+	
+	private Observable<String> removeByLabel(Trace trace, int parallelism) {
+		return rxdocker.listContainerIds(trace, Collections.singletonMap(DEPLOYER_LABEL, deployerId))
+			.filter(id -> ! reuse.map(r -> r.isManaged(id)).orElse(false))
+			.flatMap(id -> rxdocker.removeContainer(trace, id)
+				.doOnNext(removed -> {
+					deployedContainers.removeIf(c -> c.getContainerId().equals(removed));
+					releaseReservation(removed);
+				})
+				.onErrorResumeNext(th -> {
+					trace.event(Level.ERROR, "Deployer: container could not be removed (container id)", id, th);
+					return Observable.empty();
+				}), 
+				parallelism
+			);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+
+/**
+ * Image together with options of a container that should be deployed from it.
+ * 
+ * @author petercipov
+ */
+public class Deployment {
+	
+	private final Instance image;
+	private final RxDeployment options;
+
+	public Deployment(Instance image, RxDeployment options) {
+		this.image = image;
+		this.options = options;
+	}
+
+	public Instance getImage() {
+		return image;
+	}
+
+	public RxDeployment getOptions() {
+		return options;
+	}
+
+	@Override
+	public String toString() {
+		return "Deployment(image=" + image + ", name=" + options.name() + ')';
+	}
+}
@@ -0,0 +1,227 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.deployer.RequestGovernor.Lane;
+import com.petercipov.mobi.deployer.RetryPolicy.Operation;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Docker whose calls are admitted by governor of the host and repeated by
+ * retry policy of the host when they fail transiently. Every attempt waits
+ * for its own permit. Streams of events and followed logs are neither
+ * governed nor repeated, they stay open for the whole test and would hold
+ * their permits.
+ *
+ * @author petercipov
+ */
+public class GovernedRxDocker implements RxDocker {
+
+	public static final String CREATION_LABEL = "mobi.creation";
+	private static final int NOT_MODIFIED = 304;
+	private static final int NOT_FOUND = 404;
+	private static final int CONFLICT = 409;
+
+	private final RxDocker docker;
+	private final RequestGovernor governor;
+	private final RetryPolicy retries;
+
+	public GovernedRxDocker(RxDocker docker, RequestGovernor governor, RetryPolicy retries) {
+		this.docker = docker;
+		this.governor = governor;
+		this.retries = retries;
+	}
+
+	@Override
+	public RxDeployment deployment() {
+		return docker.deployment();
+	}
+
+	@Override
+	public Observable<Instance> pull(Trace trace, Instance image) {
+		return call(trace, Lane.PULL, Operation.PULL, () -> docker.pull(trace, image));
+	}
+
+	@Override
+	public Observable<Boolean> isPresent(Trace trace, Instance image) {
+		return call(trace, Lane.INSPECT, Operation.READ, () -> docker.isPresent(trace, image));
+	}
+
+	@Override
+	public Observable<String> startContainer(Trace trace, String containerId) {
+		return change(trace, Lane.DEPLOY, containerId, () -> docker.startContainer(trace, containerId), NOT_MODIFIED);
+	}
+
+	@Override
+	public Observable<String> killContainer(Trace trace, String containerId) {
+		return change(trace, Lane.TEARDOWN, containerId, () -> docker.killContainer(trace, containerId), NOT_FOUND, CONFLICT);
+	}
+
+	@Override
+	public Observable<String> stopContainer(Trace trace, String containerId, int secondsBeforeFail) {
+		return change(trace, Lane.TEARDOWN, containerId, () -> docker.stopContainer(trace, containerId, secondsBeforeFail), NOT_MODIFIED, NOT_FOUND);
+	}
+
+	@Override
+	public Observable<String> removeContainer(Trace trace, String containerId) {
+		return change(trace, Lane.TEARDOWN, containerId, () -> docker.removeContainer(trace, containerId), NOT_FOUND);
+	}
+
+	@Override
+	public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId) {
+		return call(trace, Lane.INSPECT, Operation.READ, () -> docker.inspectContainer(trace, containerId));
+	}
+
+	@Override
+	public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId, Set<InspectSection> sections) {
+		return call(trace, Lane.INSPECT, Operation.READ, () -> docker.inspectContainer(trace, containerId, sections));
+	}
+
+	/**
+	 * Creation of named deployment is repeated on its own and the container
+	 * is started by separate calls. Repeating the whole unit would create 
+	 * the container again after it failed to start, which the daemon refuses
+	 * because of the name. Other deployments run as one unit without repeating.
+	 * Creation is labelled by unique id, so when the response of creation was
+	 * lost and the repeated creation conflicts, the container of the lost 
+	 * creation is recognized by the label and adopted.
+	 */
+	@Override
+	public Observable<ContainerInfo> createAndStart(Trace trace, Instance image, RxDeployment deployment) {
+		Optional<String> name = deployment.name();
+		if (name.isPresent()) {
+			return Observable.defer(() -> {
+				String creation = UUID.randomUUID().toString();
+				deployment.addLabel(CREATION_LABEL, creation);
+				AtomicInteger attempts = new AtomicInteger();
+				Observable<String> created = call(trace, Lane.DEPLOY, Operation.CREATE, () -> {
+					attempts.incrementAndGet();
+					return deployment.createContainer(trace, image);
+				})
+				.onErrorResumeNext(th -> attempts.get() > 1 && docker.status(th) == CONFLICT
+					? adopt(trace, name.get(), creation, th)
+					: Observable.error(th)
+				);
+				return RxDocker.startCreated(this, trace, created);
+			});
+		}
+		return governor.govern(trace, Lane.DEPLOY, docker.createAndStart(trace, image, deployment), docker::isTransient);
+	}
+
+	@Override
+	public Observable<String> listContainerIds(Trace trace, Map<String, String> labels) {
+		return call(trace, Lane.INSPECT, Operation.READ, () -> docker.listContainerIds(trace, labels));
+	}
+
+	@Override
+	public Observable<String> logs(Trace trace, String containerId) {
+		return call(trace, Lane.INSPECT, Operation.READ, () -> docker.logs(trace, containerId));
+	}
+
+	@Override
+	public Observable<String> logStream(Trace trace, String containerId, boolean follow) {
+		return follow
+			? docker.logStream(trace, containerId, true)
+			: call(trace, Lane.INSPECT, Operation.READ, () -> docker.logStream(trace, containerId, false));
+	}
+
+	@Override
+	public Observable<DockerEvent> events(Trace trace, Map<String, List<String>> filters) {
+		return docker.events(trace, filters);
+	}
+
+	@Override
+	public boolean isTransient(Throwable th) {
+		return docker.isTransient(th);
+	}
+
+	@Override
+	public int status(Throwable th) {
+		return docker.status(th);
+	}
+
+	@Override
+	public int concurrencyLimit() {
+		return governor.getLimit();
+	}
+
+	@Override
+	public void close(Trace trace) {
+		docker.close(trace);
+	}
+
+	public RequestGovernor governor() {
+		return governor;
+	}
+
+	public RetryPolicy retries() {
+		return retries;
+	}
+
+	/**
+	 * Every attempt is a new call of the docker admitted by the governor
+	 */
+	private <T> Observable<T> call(Trace trace, Lane lane, Operation operation, Func0<Observable<T>> call) {
+		return retries.retry(trace, operation, docker::isTransient,
+			Observable.defer(() -> governor.govern(trace, lane, call.call(), docker::isTransient))
+		);
+	}
+
+	/**
+	 * @return id of container created by lost creation, conflict when the
+	 * container of the name was not created by the creation
+	 */
+	private Observable<String> adopt(Trace trace, String name, String creation, Throwable conflict) {
+		return inspectContainer(trace, name)
+			.onErrorResumeNext(th -> {
+				trace.event(Level.ERROR, "RxDocker: conflicting container could not be inspected (name)", name, th);
+				return Observable.error(conflict);
+			})
+			.flatMap(info -> {
+				Map<String, String> labels = info.config() == null ? null : info.config().labels();
+				if (labels != null && creation.equals(labels.get(CREATION_LABEL))) {
+					trace.event("RxDocker: adopting container of lost creation (name, containerId)", name, info.id());
+					return Observable.just(info.id());
+				}
+				return Observable.<String>error(conflict);
+			});
+	}
+
+	/**
+	 * Change whose response was lost may have taken effect, repeated change 
+	 * is then refused by the daemon, f.e. kill of container that does not 
+	 * run anymore. Such answer to a repeated attempt means the change is done.
+	 * @param done statuses of answers that mean the change was already done
+	 */
+	private Observable<String> change(Trace trace, Lane lane, String containerId, Func0<Observable<String>> call, int... done) {
+		return Observable.defer(() -> {
+			AtomicInteger attempts = new AtomicInteger();
+			return call(trace, lane, Operation.CHANGE, () -> {
+				attempts.incrementAndGet();
+				return call.call();
+			})
+			.onErrorResumeNext(th -> {
+				int status = docker.status(th);
+				if (attempts.get() > 1 && IntStream.of(done).anyMatch(s -> s == status)) {
+					trace.event("RxDocker: repeated change was already done (containerId, status)", containerId, status);
+					return Observable.just(containerId);
+				}
+				return Observable.error(th);
+			});
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "GovernedRxDocker(docker=" + docker + ", governor=" + governor + ", retries=" + retries + ')';
+	}
+}
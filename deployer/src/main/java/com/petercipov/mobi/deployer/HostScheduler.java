@@ -0,0 +1,308 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.config.HostSelection;
+import com.petercipov.mobi.config.MobiConfig;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Chooses api host for a test by the configured selection. Load aware
+ * selections score every host by its load divided by its weight and pick
+ * the better of two random hosts, so tests started at the same time do not
+ * all land on the one least loaded host. Hosts running their capacity of
+ * containers and hosts that can not be reached are not chosen. Hosts whose
+ * resource budget makes deployments wait are chosen only when every host
+ * is exhausted.
+ *
+ * @author petercipov
+ */
+public class HostScheduler {
+
+	public static final long DEFAULT_PING_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(5);
+	private static final double LATENCY_ALPHA = 0.3;
+	private static final int PROBE_PARALLELISM = 4;
+	private static final Map<String, String> PING_LABELS = Collections.singletonMap("mobi.ping", "none");
+	private static final Set<RxDocker.InspectSection> LOAD_SECTIONS = Collections.unmodifiableSet(EnumSet.of(
+		RxDocker.InspectSection.STATE, RxDocker.InspectSection.HOST_CONFIG
+	));
+
+	private final HostSelection selection;
+	private final List<Host> hosts;
+	private final Function<ApiHost, RxDocker> dockers;
+	private final Scheduler scheduler;
+	private final long pingPeriodMillis;
+	private Subscription pings;
+
+	/**
+	 * @param apis
+	 * @param selection
+	 * @param dockers creates docker used to measure load of the host,
+	 * dockers are closed together with the scheduler
+	 * @param scheduler scheduler of background pings
+	 * @param pingPeriodMillis
+	 */
+	public HostScheduler(List<ApiHost> apis, HostSelection selection, Function<ApiHost, RxDocker> dockers, Scheduler scheduler, long pingPeriodMillis) {
+		if (apis.isEmpty()) {
+			throw new IllegalStateException("empty apis, expecting at least one");
+		}
+		this.selection = selection;
+		this.hosts = new ArrayList<>(apis.size());
+		for (ApiHost api : apis) {
+			hosts.add(new Host(api));
+		}
+		this.dockers = dockers;
+		this.scheduler = scheduler;
+		this.pingPeriodMillis = pingPeriodMillis;
+	}
+
+	public static HostScheduler forConfig(MobiConfig config, Function<ApiHost, RxDocker> dockers) {
+		return new HostScheduler(config.getApis(), config.getHostSelection(), dockers, Schedulers.computation(), DEFAULT_PING_PERIOD_MILLIS);
+	}
+
+	/**
+	 * @param trace
+	 * @return chosen host, error when no host can be chosen
+	 */
+	public Observable<ApiHost> select(Trace trace) {
+		switch (selection) {
+			case ROUND_ROBIN:
+				return Observable.defer(() -> Observable.just(nextInTurn().api));
+			case LEAST_CONTAINERS:
+			case LEAST_MEMORY:
+				return Observable.from(hosts)
+					.flatMap(host -> probeLoad(trace, host))
+					.toList()
+					.map(loaded -> pick(trace, loaded));
+			case LATENCY:
+				return Observable.defer(() -> {
+					startPings(trace);
+					Observable<Host> measured = hosts.stream().anyMatch(host -> ! Double.isNaN(host.latencyMillis))
+						? Observable.from(hosts)
+						: pingAll(trace);
+					return measured
+						.filter(host -> ! Double.isInfinite(host.latencyMillis) && ! Double.isNaN(host.latencyMillis))
+						.map(host -> new Scored(host, host.latencyMillis / host.weight()))
+						.toList()
+						.map(measuredHosts -> pick(trace, measuredHosts));
+				});
+			default:
+				return Observable.error(new IllegalStateException("Unknown host selection " + selection));
+		}
+	}
+
+	/**
+	 * Stops background pings and closes dockers of hosts
+	 * @param trace
+	 */
+	public synchronized void close(Trace trace) {
+		if (pings != null) {
+			pings.unsubscribe();
+			pings = null;
+		}
+		for (Host host : hosts) {
+			if (host.docker != null) {
+				host.docker.close(trace);
+				host.docker = null;
+			}
+		}
+	}
+
+	/**
+	 * Hosts with exhausted budget are skipped while any host has resources
+	 */
+	private synchronized Host nextInTurn() {
+		for (int i = 0; i < hosts.size(); i++) {
+			Host next = turn();
+			if (! next.isBudgetExhausted()) {
+				return next;
+			}
+		}
+		return turn();
+	}
+
+	/**
+	 * Smooth weighted round robin, every host is credited its weight and the
+	 * host with most credit pays total weight for its turn.
+	 */
+	private Host turn() {
+		int total = 0;
+		Host next = null;
+		for (Host host : hosts) {
+			host.credit += host.weight();
+			total += host.weight();
+			if (next == null || host.credit > next.credit) {
+				next = host;
+			}
+		}
+		next.credit -= total;
+		return next;
+	}
+
+	private Observable<Scored> probeLoad(Trace trace, Host host) {
+		RxDocker docker = docker(host);
+		return docker.listContainerIds(trace, Collections.emptyMap())
+			.flatMap(id -> docker.inspectContainer(trace, id, LOAD_SECTIONS)
+				.onErrorResumeNext(Observable.empty()),
+				PROBE_PARALLELISM
+			)
+			.filter(info -> info.state() != null && Boolean.TRUE.equals(info.state().running()))
+			.reduce(new Load(), Load::add)
+			.filter(load -> host.hasCapacity(load.containers))
+			.map(load -> new Scored(host, selection == HostSelection.LEAST_MEMORY
+				? (double) load.memory / host.weight()
+				: (double) load.containers / host.weight()
+			))
+			.onErrorResumeNext(th -> {
+				trace.event(Level.WARN, "HostScheduler: load of host could not be measured (host)", host.api, th);
+				return Observable.empty();
+			});
+	}
+
+	private synchronized void startPings(Trace trace) {
+		if (pings == null) {
+			pings = Observable.interval(pingPeriodMillis, pingPeriodMillis, TimeUnit.MILLISECONDS, scheduler)
+				.onBackpressureDrop()
+				.concatMap(tick -> pingAll(trace))
+				.subscribe(
+					host -> {},
+					th -> trace.event(Level.ERROR, "HostScheduler: pings failed", th)
+				);
+		}
+	}
+
+	private Observable<Host> pingAll(Trace trace) {
+		return Observable.from(hosts).flatMap(host -> ping(trace, host));
+	}
+
+	/**
+	 * Measures round trip of label filtered listing that matches no
+	 * container and folds it into moving average of the host.
+	 */
+	private Observable<Host> ping(Trace trace, Host host) {
+		return Observable.defer(() -> {
+			long started = System.nanoTime();
+			return docker(host).listContainerIds(trace, PING_LABELS)
+				.count()
+				.map(count -> {
+					double latency = (System.nanoTime() - started) / 1e6;
+					double average = host.latencyMillis;
+					host.latencyMillis = Double.isNaN(average) || Double.isInfinite(average)
+						? latency
+						: LATENCY_ALPHA * latency + (1 - LATENCY_ALPHA) * average;
+					return host;
+				})
+				.onErrorResumeNext(th -> {
+					trace.event(Level.WARN, "HostScheduler: ping of host failed (host)", host.api, th);
+					host.latencyMillis = Double.POSITIVE_INFINITY;
+					return Observable.just(host);
+				});
+		});
+	}
+
+	/**
+	 * Better of two random hosts
+	 */
+	private ApiHost pick(Trace trace, List<Scored> candidates) {
+		if (candidates.isEmpty()) {
+			throw new IllegalStateException("No api host can be scheduled, hosts are unreachable or at capacity");
+		}
+		List<Scored> admitted = new ArrayList<>(candidates.size());
+		for (Scored candidate : candidates) {
+			if (! candidate.host.isBudgetExhausted()) {
+				admitted.add(candidate);
+			}
+		}
+		if (! admitted.isEmpty()) {
+			candidates = admitted;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Scored first = candidates.get(random.nextInt(candidates.size()));
+		Scored second = candidates.get(random.nextInt(candidates.size()));
+		Scored picked = first.score <= second.score ? first : second;
+		trace.event("HostScheduler: host was chosen (selection, host, score)", selection, picked.host.api, picked.score);
+		return picked.host.api;
+	}
+
+	private synchronized RxDocker docker(Host host) {
+		if (host.docker == null) {
+			host.docker = dockers.apply(host.api);
+		}
+		return host.docker;
+	}
+
+	@Override
+	public String toString() {
+		return "HostScheduler(selection=" + selection + ", hosts=" + hosts + ')';
+	}
+
+	private static class Host {
+		private final ApiHost api;
+		private RxDocker docker;
+		private int credit;
+		private volatile double latencyMillis;
+
+		Host(ApiHost api) {
+			this.api = api;
+			this.credit = 0;
+			this.latencyMillis = Double.NaN;
+		}
+
+		int weight() {
+			return api.getSettings().getWeight();
+		}
+
+		/**
+		 * Deployments wait for resources of the host
+		 */
+		boolean isBudgetExhausted() {
+			return ResourceBudget.forHost(api).getWaiting() > 0;
+		}
+
+		boolean hasCapacity(int containers) {
+			int capacity = api.getSettings().getCapacity();
+			return capacity == 0 || containers < capacity;
+		}
+
+		@Override
+		public String toString() {
+			return "Host(api=" + api.getUri() + ", latencyMillis=" + latencyMillis + ')';
+		}
+	}
+
+	private static class Load {
+		private int containers;
+		private long memory;
+
+		Load add(RxDocker.ContainerInfo info) {
+			containers++;
+			if (info.hostConfig() != null && info.hostConfig().memory() != null) {
+				memory += info.hostConfig().memory();
+			}
+			return this;
+		}
+	}
+
+	private static class Scored {
+		private final Host host;
+		private final double score;
+
+		Scored(Host host, double score) {
+			this.host = host;
+			this.score = score;
+		}
+	}
+}
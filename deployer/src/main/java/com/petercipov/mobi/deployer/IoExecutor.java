@@ -0,0 +1,113 @@
+package com.petercipov.mobi.deployer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Bounded pool of named threads for blocking calls to a docker host. Calls
+ * that block on sockets run here, so computation threads of callers are
+ * never blocked. Size of the pool is independent of the number of cores.
+ *
+ * @author petercipov
+ */
+public class IoExecutor {
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final Scheduler scheduler;
+	private final AtomicLong executed;
+	private final AtomicLong waitNanos;
+	private final AtomicLong maxWaitNanos;
+
+	public IoExecutor(String name, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("number of io threads has to be positive, was " + threads);
+		}
+		AtomicInteger counter = new AtomicInteger();
+		this.name = name;
+		this.executor = new ThreadPoolExecutor(
+			threads, threads, 
+			60, TimeUnit.SECONDS, 
+			new LinkedBlockingQueue<>(), 
+			runnable -> {
+				Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		);
+		this.executor.allowCoreThreadTimeOut(true);
+		this.executed = new AtomicLong();
+		this.waitNanos = new AtomicLong();
+		this.maxWaitNanos = new AtomicLong();
+		this.scheduler = Schedulers.from(this::execute);
+	}
+
+	/**
+	 * @return scheduler running on the io threads
+	 */
+	public Scheduler scheduler() {
+		return scheduler;
+	}
+
+	public void execute(Runnable task) {
+		final long queued = System.nanoTime();
+		executor.execute(() -> {
+			recordWait(System.nanoTime() - queued);
+			task.run();
+		});
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private void recordWait(long nanos) {
+		executed.incrementAndGet();
+		waitNanos.addAndGet(nanos);
+		long max;
+		do {
+			max = maxWaitNanos.get();
+		} while (nanos > max && ! maxWaitNanos.compareAndSet(max, nanos));
+	}
+
+	public int getThreads() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return number of calls waiting for a free thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return number of threads running a call
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public long getExecuted() {
+		return executed.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long count = executed.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get()) / 1000.0 / count;
+	}
+
+	public double getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()) / 1000.0;
+	}
+
+	@Override
+	public String toString() {
+		return "IoExecutor(name=" + name + ", threads=" + getThreads() + ", active=" + getActiveCount() + ", queued=" + getQueueDepth() + ", avgWaitMillis=" + getAverageWaitMillis() + ')';
+	}
+}
@@ -0,0 +1,80 @@
+package com.petercipov.mobi.deployer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Event of the daemon in format of both legacy (status, id, from) and 
+ * current (Type, Action, Actor) api.
+ *
+ * @author petercipov
+ */
+public class JsonDockerEvent implements RxDocker.DockerEvent {
+
+	private final JsonNode node;
+
+	public JsonDockerEvent(JsonNode node) {
+		this.node = node;
+	}
+
+	@Override
+	public String type() {
+		if (node.hasNonNull("Type")) {
+			return node.get("Type").asText();
+		}
+		return node.hasNonNull("from") ? "container" : "image";
+	}
+
+	@Override
+	public String action() {
+		return node.hasNonNull("Action")
+			? node.get("Action").asText()
+			: node.path("status").asText(null);
+	}
+
+	@Override
+	public String id() {
+		JsonNode actor = node.path("Actor");
+		return actor.hasNonNull("ID")
+			? actor.get("ID").asText()
+			: node.path("id").asText(null);
+	}
+
+	@Override
+	public String from() {
+		return node.hasNonNull("from")
+			? node.get("from").asText()
+			: attributes().get("image");
+	}
+
+	@Override
+	public long timeMillis() {
+		if (node.hasNonNull("timeNano")) {
+			return node.get("timeNano").asLong() / 1000000;
+		}
+		return node.path("time").asLong() * 1000;
+	}
+
+	@Override
+	public Map<String, String> attributes() {
+		JsonNode attributes = node.path("Actor").path("Attributes");
+		if (! attributes.isObject()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> map = new HashMap<>();
+		Iterator<Map.Entry<String, JsonNode>> it = attributes.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> attribute = it.next();
+			map.put(attribute.getKey(), attribute.getValue().asText());
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return "DockerEvent(" + node + ')';
+	}
+}
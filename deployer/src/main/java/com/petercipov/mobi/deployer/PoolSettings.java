@@ -0,0 +1,99 @@
+package com.petercipov.mobi.deployer;
+
+import java.util.concurrent.TimeUnit;
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ *
+ * @author petercipov
+ */
+public class PoolSettings {
+
+	private int minIdle;
+	private int maxSize;
+	private long idleTimeoutMillis;
+	private long evictionPeriodMillis;
+	private Func1<Container, Observable<Container>> recycler;
+
+	public PoolSettings() {
+		this.minIdle = 1;
+		this.maxSize = 4;
+		this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis(5);
+		this.evictionPeriodMillis = TimeUnit.SECONDS.toMillis(30);
+		this.recycler = null;
+	}
+
+	/**
+	 * Sets number of idle containers the pool keeps started in the background
+	 * @param minIdle
+	 * @return
+	 */
+	public PoolSettings setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+		return this;
+	}
+
+	/**
+	 * Sets maximal number of containers (idle and leased) owned by the pool
+	 * @param maxSize
+	 * @return
+	 */
+	public PoolSettings setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * Containers idle longer than timeout are killed, unless pool would go
+	 * below minimal number of idle containers
+	 * @param timeout
+	 * @param unit
+	 * @return
+	 */
+	public PoolSettings setIdleTimeout(long timeout, TimeUnit unit) {
+		this.idleTimeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+
+	public PoolSettings setEvictionPeriod(long period, TimeUnit unit) {
+		this.evictionPeriodMillis = unit.toMillis(period);
+		return this;
+	}
+
+	/**
+	 * Sets function that resets returned container to clean state. If it is
+	 * not set or it fails, returned containers are killed and replaced by new ones.
+	 * @param recycler
+	 * @return
+	 */
+	public PoolSettings setRecycler(Func1<Container, Observable<Container>> recycler) {
+		this.recycler = recycler;
+		return this;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public long getEvictionPeriodMillis() {
+		return evictionPeriodMillis;
+	}
+
+	public Func1<Container, Observable<Container>> getRecycler() {
+		return recycler;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolSettings(minIdle=" + minIdle + ", maxSize=" + maxSize + ", idleTimeoutMillis=" + idleTimeoutMillis + ", recycler=" + (recycler != null) + ')';
+	}
+}
@@ -0,0 +1,84 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Trace;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Registry of image pulls in flight on a docker host. Concurrent pulls of the
+ * same image are coalesced, late subscribers attach to the pull that is
+ * already running and all of them complete together.
+ *
+ * @author petercipov
+ */
+public class PullRegistry {
+
+	private static final Map<String, PullRegistry> HOSTS = new ConcurrentHashMap<>();
+
+	private final Map<String, Observable<Instance>> inFlight;
+	private final AtomicLong started;
+	private final AtomicLong coalesced;
+
+	public PullRegistry() {
+		this.inFlight = new ConcurrentHashMap<>();
+		this.started = new AtomicLong();
+		this.coalesced = new AtomicLong();
+	}
+
+	public static PullRegistry forHost(ApiHost api) {
+		return HOSTS.computeIfAbsent(api.getUri(), uri -> new PullRegistry());
+	}
+
+	public Observable<Instance> pull(Trace trace, Instance image, Func0<Observable<Instance>> pull) {
+		return Observable.defer(() -> {
+			final String key = image.toString();
+			final Observable<Instance> running = inFlight.get(key);
+			if (running != null) {
+				coalesced.incrementAndGet();
+				trace.event("PullRegistry: attaching to pull in flight", image);
+				return running;
+			}
+
+			final PendingPull pending = new PendingPull();
+			pending.shared = pull.call()
+				.doOnTerminate(() -> inFlight.remove(key, pending.shared))
+				.cache();
+
+			Observable<Instance> existing = inFlight.putIfAbsent(key, pending.shared);
+			if (existing != null) {
+				coalesced.incrementAndGet();
+				trace.event("PullRegistry: attaching to pull in flight", image);
+				return existing;
+			}
+
+			started.incrementAndGet();
+			return pending.shared;
+		});
+	}
+
+	public long getStartedPulls() {
+		return started.get();
+	}
+
+	public long getCoalescedPulls() {
+		return coalesced.get();
+	}
+
+	public int getPullsInFlight() {
+		return inFlight.size();
+	}
+
+	@Override
+	public String toString() {
+		return "PullRegistry(started=" + started + ", coalesced=" + coalesced + ", inFlight=" + inFlight.size() + ')';
+	}
+
+	private static class PendingPull {
+		private Observable<Instance> shared;
+	}
+}
@@ -0,0 +1,352 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Trace;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import rx.Observable;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Limits calls in flight to one docker host. Every lane of calls has its
+ * own limit and all lanes share the limit of the host. Freed permit is
+ * given to waiting calls of critical lanes first, so teardown does not
+ * delay deployments of other tests. Time calls wait for permit is measured
+ * apart from the time the daemon serves them, service time drives the limit
+ * of the host when it is adaptive.
+ *
+ * @author petercipov
+ */
+public class RequestGovernor {
+
+	private static final Map<String, RequestGovernor> GOVERNORS = new ConcurrentHashMap<>();
+	private static final long REPORTED_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	public enum Lane {
+		DEPLOY(true),
+		PULL(true),
+		INSPECT(true),
+		TEARDOWN(false);
+
+		private final boolean critical;
+
+		private Lane(boolean critical) {
+			this.critical = critical;
+		}
+
+		public boolean isCritical() {
+			return critical;
+		}
+	}
+
+	private final ConcurrencyLimit limit;
+	private final Map<Lane, LaneState> lanes;
+	private final Deque<Waiter> critical;
+	private final Deque<Waiter> background;
+	private final AtomicInteger draining;
+	private int inFlight;
+
+	/**
+	 * @param maxInFlight maximal number of calls in flight of all lanes
+	 * @param limits maximal number of calls in flight of every lane
+	 */
+	public RequestGovernor(int maxInFlight, Map<Lane, Integer> limits) {
+		this(ConcurrencyLimit.fixed(maxInFlight), limits);
+	}
+
+	/**
+	 * @param limit number of calls in flight of all lanes
+	 * @param limits maximal number of calls in flight of every lane
+	 */
+	public RequestGovernor(ConcurrencyLimit limit, Map<Lane, Integer> limits) {
+		this.limit = limit;
+		this.lanes = new EnumMap<>(Lane.class);
+		for (Lane lane : Lane.values()) {
+			Integer laneLimit = limits.get(lane);
+			if (laneLimit == null || laneLimit < 1) {
+				throw new IllegalArgumentException("limit of lane has to be positive (lane, limit) " + lane + ", " + laneLimit);
+			}
+			lanes.put(lane, new LaneState(laneLimit));
+		}
+		this.critical = new ArrayDeque<>();
+		this.background = new ArrayDeque<>();
+		this.draining = new AtomicInteger();
+		this.inFlight = 0;
+	}
+
+	/**
+	 * @param maxInFlight
+	 * @return governor with fixed limit and default limits of lanes
+	 */
+	public static RequestGovernor withDefaults(int maxInFlight) {
+		return new RequestGovernor(maxInFlight, defaultLimits(maxInFlight));
+	}
+
+	/**
+	 * Deployments may take half of the calls of the host, pulls and teardown
+	 * a quarter, inspections all of them.
+	 */
+	private static Map<Lane, Integer> defaultLimits(int maxInFlight) {
+		Map<Lane, Integer> limits = new EnumMap<>(Lane.class);
+		limits.put(Lane.DEPLOY, Math.max(1, maxInFlight / 2));
+		limits.put(Lane.PULL, Math.max(1, maxInFlight / 4));
+		limits.put(Lane.INSPECT, maxInFlight);
+		limits.put(Lane.TEARDOWN, Math.max(1, maxInFlight / 4));
+		return limits;
+	}
+
+	/**
+	 * @param api
+	 * @return governor shared by all dockers of the host, its limit adapts 
+	 * to latency of the host up to the number of connections to the host
+	 */
+	public static RequestGovernor forHost(ApiHost api) {
+		return GOVERNORS.computeIfAbsent(api.getUri(), uri -> {
+			int connections = api.getSettings().getMaxConnections();
+			return new RequestGovernor(
+				ConcurrencyLimit.adaptive(Math.max(1, connections / 2), 1, connections), 
+				defaultLimits(connections)
+			);
+		});
+	}
+
+	/**
+	 * Subscribes to the call once it gets permit of the lane. Permit is
+	 * returned when the call terminates or it is unsubscribed. Timeouts and
+	 * io errors count as overload of the daemon.
+	 * @param <T>
+	 * @param trace
+	 * @param lane
+	 * @param call
+	 * @return governed call
+	 */
+	public <T> Observable<T> govern(Trace trace, Lane lane, Observable<T> call) {
+		return govern(trace, lane, call, RequestGovernor::isOverload);
+	}
+
+	/**
+	 * @param <T>
+	 * @param trace
+	 * @param lane
+	 * @param call
+	 * @param isOverload failures of the call caused by overload of the daemon
+	 * @return governed call
+	 */
+	public <T> Observable<T> govern(Trace trace, Lane lane, Observable<T> call, Predicate<Throwable> isOverload) {
+		return Observable.create(subscriber -> {
+			LaneState state = lanes.get(lane);
+			long queued = System.nanoTime();
+			AtomicBoolean released = new AtomicBoolean();
+			Runnable release = () -> {
+				if (released.compareAndSet(false, true)) {
+					release(lane);
+				}
+			};
+			Waiter waiter = new Waiter(lane, () -> {
+				long started = System.nanoTime();
+				long waited = started - queued;
+				state.calls.incrementAndGet();
+				state.queueNanos.addAndGet(waited);
+				if (waited >= REPORTED_WAIT_NANOS) {
+					trace.event("RequestGovernor: call waited for permit (lane, waitMillis)", lane, TimeUnit.NANOSECONDS.toMillis(waited));
+				}
+				if (subscriber.isUnsubscribed()) {
+					release.run();
+					return;
+				}
+				call
+					.doOnCompleted(() -> served(lane, started, false))
+					.doOnError(th -> served(lane, started, isOverload.test(th)))
+					.doOnTerminate(release::run)
+					.unsafeSubscribe(subscriber);
+			});
+			if (subscriber.isUnsubscribed()) {
+				return;
+			}
+			enqueue(waiter);
+			subscriber.add(Subscriptions.create(() -> {
+				if (! cancel(waiter)) {
+					release.run();
+				}
+			}));
+			drain();
+		});
+	}
+
+	private void served(Lane lane, long started, boolean overload) {
+		long latency = System.nanoTime() - started;
+		lanes.get(lane).serviceNanos.addAndGet(latency);
+		limit.onSample(lane, latency, overload, getInFlight());
+	}
+
+	/**
+	 * Timeouts and io errors signal overloaded daemon, other errors are
+	 * answers of the daemon, f.e. missing container.
+	 */
+	private static boolean isOverload(Throwable th) {
+		for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException || cause instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized void enqueue(Waiter waiter) {
+		(waiter.lane.critical ? critical : background).add(waiter);
+	}
+
+	private synchronized boolean cancel(Waiter waiter) {
+		return (waiter.lane.critical ? critical : background).remove(waiter);
+	}
+
+	private void release(Lane lane) {
+		synchronized (this) {
+			inFlight--;
+			lanes.get(lane).inFlight--;
+		}
+		drain();
+	}
+
+	/**
+	 * Starts waiters outside of the lock. Waiter started by a call that
+	 * completes synchronously only marks another round of draining, so the
+	 * stack does not grow with the queue.
+	 */
+	private void drain() {
+		if (draining.getAndIncrement() != 0) {
+			return;
+		}
+		do {
+			Waiter next;
+			while ((next = nextPermitted()) != null) {
+				next.start.run();
+			}
+		} while (draining.decrementAndGet() != 0);
+	}
+
+	private synchronized Waiter nextPermitted() {
+		if (inFlight >= limit.get()) {
+			return null;
+		}
+		Waiter next = poll(critical);
+		if (next == null) {
+			next = poll(background);
+		}
+		if (next != null) {
+			inFlight++;
+			lanes.get(next.lane).inFlight++;
+		}
+		return next;
+	}
+
+	private Waiter poll(Deque<Waiter> waiters) {
+		Iterator<Waiter> iterator = waiters.iterator();
+		while (iterator.hasNext()) {
+			Waiter waiter = iterator.next();
+			if (lanes.get(waiter.lane).hasPermit()) {
+				iterator.remove();
+				return waiter;
+			}
+		}
+		return null;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized int getWaiting() {
+		return critical.size() + background.size();
+	}
+
+	/**
+	 * @return calls of all lanes admitted in flight now
+	 */
+	public int getLimit() {
+		return limit.get();
+	}
+
+	public ConcurrencyLimit limit() {
+		return limit;
+	}
+
+	public int getLimit(Lane lane) {
+		return lanes.get(lane).limit;
+	}
+
+	/**
+	 * @param lane
+	 * @return number of calls of the lane that got permit
+	 */
+	public long getCalls(Lane lane) {
+		return lanes.get(lane).calls.get();
+	}
+
+	/**
+	 * @param lane
+	 * @return total time calls of the lane waited for permit
+	 */
+	public long getQueueMillis(Lane lane) {
+		return TimeUnit.NANOSECONDS.toMillis(lanes.get(lane).queueNanos.get());
+	}
+
+	/**
+	 * @param lane
+	 * @return total time calls of the lane were served by the daemon
+	 */
+	public long getServiceMillis(Lane lane) {
+		return TimeUnit.NANOSECONDS.toMillis(lanes.get(lane).serviceNanos.get());
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RequestGovernor(limit=" + limit + ", inFlight=" + inFlight + ", waiting=" + getWaiting() + ", lanes=" + lanes + ')';
+	}
+
+	private static class LaneState {
+		private final int limit;
+		private final AtomicLong calls;
+		private final AtomicLong queueNanos;
+		private final AtomicLong serviceNanos;
+		private int inFlight;
+
+		LaneState(int limit) {
+			this.limit = limit;
+			this.calls = new AtomicLong();
+			this.queueNanos = new AtomicLong();
+			this.serviceNanos = new AtomicLong();
+			this.inFlight = 0;
+		}
+
+		boolean hasPermit() {
+			return inFlight < limit;
+		}
+
+		@Override
+		public String toString() {
+			return "Lane(limit=" + limit + ", inFlight=" + inFlight + ", calls=" + calls + ", queueNanos=" + queueNanos + ", serviceNanos=" + serviceNanos + ')';
+		}
+	}
+
+	private static class Waiter {
+		private final Lane lane;
+		private final Runnable start;
+
+		Waiter(Lane lane, Runnable start) {
+			this.lane = lane;
+			this.start = start;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Trace;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Memory and cpu shares of a docker host that containers of this JVM may
+ * reserve. Reservations that do not fit wait in order of arrival until
+ * enough is released, reservations of nothing are never delayed. Limit of
+ * 0 means the resource is not budgeted.
+ *
+ * @author petercipov
+ */
+public class ResourceBudget {
+
+	private static final Map<String, ResourceBudget> HOSTS = new ConcurrentHashMap<>();
+
+	private final long memory;
+	private final long cpuShares;
+	private final Deque<Pending> pending;
+	private long reservedMemory;
+	private long reservedCpuShares;
+
+	/**
+	 * @param memory bytes of memory, 0 for unlimited
+	 * @param cpuShares cpu shares, 0 for unlimited
+	 */
+	public ResourceBudget(long memory, long cpuShares) {
+		if (memory < 0 || cpuShares < 0) {
+			throw new IllegalArgumentException("budget can not be negative, was (memory, cpu shares) " + memory + ", " + cpuShares);
+		}
+		this.memory = memory;
+		this.cpuShares = cpuShares;
+		this.pending = new ArrayDeque<>();
+	}
+
+	public static ResourceBudget forHost(ApiHost api) {
+		return HOSTS.computeIfAbsent(api.getUri(), uri -> new ResourceBudget(
+			api.getSettings().getMemoryBudget(),
+			api.getSettings().getCpuBudget()
+		));
+	}
+
+	/**
+	 * Reserves resources once they are available. Unsubscribing from waiting
+	 * reservation withdraws it.
+	 * @param trace
+	 * @param memory bytes of memory
+	 * @param cpuShares
+	 * @return reservation, error when the request exceeds the whole budget
+	 */
+	public Observable<Reservation> reserve(Trace trace, long memory, long cpuShares) {
+		return Observable.create(subscriber -> {
+			if (exceedsBudget(memory, cpuShares)) {
+				subscriber.onError(new IllegalStateException(
+					"Deployment exceeds resource budget of the host (memory, cpu shares, budget) " + memory + ", " + cpuShares + ", " + this
+				));
+				return;
+			}
+			Pending request = new Pending(subscriber, new Reservation(memory, cpuShares));
+			subscriber.add(Subscriptions.create(() -> withdraw(request)));
+			if (tryReserve(request)) {
+				request.emit();
+			} else {
+				trace.event("ResourceBudget: waiting for resources (memory, cpu shares, budget)", memory, cpuShares, this);
+			}
+		});
+	}
+
+	private boolean exceedsBudget(long requestedMemory, long requestedCpuShares) {
+		return (memory > 0 && requestedMemory > memory) || (cpuShares > 0 && requestedCpuShares > cpuShares);
+	}
+
+	/**
+	 * @return true if the request was granted at once, otherwise it waits
+	 */
+	private synchronized boolean tryReserve(Pending request) {
+		Reservation reservation = request.reservation;
+		boolean empty = reservation.memory == 0 && reservation.cpuShares == 0;
+		if (empty || (pending.isEmpty() && fits(reservation))) {
+			take(reservation);
+			return true;
+		}
+		pending.add(request);
+		return false;
+	}
+
+	private void withdraw(Pending request) {
+		boolean head;
+		synchronized (this) {
+			head = request == pending.peek();
+			pending.remove(request);
+		}
+		if (head) {
+			grant();
+		}
+	}
+
+	private boolean fits(Reservation reservation) {
+		return (memory == 0 || reservedMemory + reservation.memory <= memory)
+			&& (cpuShares == 0 || reservedCpuShares + reservation.cpuShares <= cpuShares);
+	}
+
+	private void take(Reservation reservation) {
+		reservedMemory += reservation.memory;
+		reservedCpuShares += reservation.cpuShares;
+	}
+
+	/**
+	 * Emits granted reservations outside of the lock. Head of the queue is
+	 * granted first, so large reservations are not starved by small ones.
+	 */
+	private void grant() {
+		while (true) {
+			Pending next;
+			synchronized (this) {
+				next = pending.peek();
+				if (next == null || ! fits(next.reservation)) {
+					return;
+				}
+				pending.poll();
+				take(next.reservation);
+			}
+			next.emit();
+		}
+	}
+
+	private void release(Reservation reservation) {
+		synchronized (this) {
+			reservedMemory -= reservation.memory;
+			reservedCpuShares -= reservation.cpuShares;
+		}
+		grant();
+	}
+
+	public synchronized long getReservedMemory() {
+		return reservedMemory;
+	}
+
+	public synchronized long getReservedCpuShares() {
+		return reservedCpuShares;
+	}
+
+	public synchronized int getWaiting() {
+		return pending.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResourceBudget(memory=" + memory + ", cpuShares=" + cpuShares + ", reservedMemory=" + reservedMemory + ", reservedCpuShares=" + reservedCpuShares + ", waiting=" + pending.size() + ')';
+	}
+
+	/**
+	 * Resources held by one container, released exactly once
+	 */
+	public class Reservation {
+		private final long memory;
+		private final long cpuShares;
+		private final AtomicBoolean released;
+
+		private Reservation(long memory, long cpuShares) {
+			this.memory = Math.max(0, memory);
+			this.cpuShares = Math.max(0, cpuShares);
+			this.released = new AtomicBoolean();
+		}
+
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				ResourceBudget.this.release(this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Reservation(memory=" + memory + ", cpuShares=" + cpuShares + ", released=" + released + ')';
+		}
+	}
+
+	private static class Pending {
+		private final Subscriber<? super Reservation> subscriber;
+		private final Reservation reservation;
+
+		Pending(Subscriber<? super Reservation> subscriber, Reservation reservation) {
+			this.subscriber = subscriber;
+			this.reservation = reservation;
+		}
+
+		void emit() {
+			if (subscriber.isUnsubscribed()) {
+				reservation.release();
+				return;
+			}
+			subscriber.onNext(reservation);
+			subscriber.onCompleted();
+		}
+	}
+}
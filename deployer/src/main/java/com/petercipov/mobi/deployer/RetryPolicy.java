@@ -0,0 +1,176 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Repeats docker calls that failed transiently, after exponential backoff
+ * with full jitter. Every retry is paid from budget of the host, which is
+ * refilled by a tenth of a retry for every successful call. When the daemon
+ * is down, retries soon run out and calls fail as fast as without retries,
+ * so retries do not amplify the outage. Streams are not repeated once they
+ * emitted a value.
+ *
+ * @author petercipov
+ */
+public class RetryPolicy {
+
+	private static final Map<String, RetryPolicy> HOSTS = new ConcurrentHashMap<>();
+	private static final double MAX_BUDGET = 10;
+	private static final double DEPOSIT = 0.1;
+
+	/**
+	 * Kinds of calls, every kind has its own number of attempts and backoff
+	 */
+	public enum Operation {
+		/**
+		 * Inspections and listings, safe to repeat
+		 */
+		READ(4, 50, 1000),
+		/**
+		 * Pull of image, safe to repeat, slow
+		 */
+		PULL(3, 1000, 10000),
+		/**
+		 * Start, stop, kill and remove, repeated call that follows a call
+		 * which went through is refused by the daemon with non transient
+		 * error, such answer to the repeated call means the change is done
+		 */
+		CHANGE(3, 100, 2000),
+		/**
+		 * Creation of container, safe to repeat only for deployment with a
+		 * name, the daemon refuses second container of the same name
+		 */
+		CREATE(2, 200, 2000);
+
+		private final int attempts;
+		private final long baseDelayMillis;
+		private final long maxDelayMillis;
+
+		private Operation(int attempts, long baseDelayMillis, long maxDelayMillis) {
+			this.attempts = attempts;
+			this.baseDelayMillis = baseDelayMillis;
+			this.maxDelayMillis = maxDelayMillis;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+	}
+
+	private final Scheduler scheduler;
+	private final Map<Operation, AtomicLong> retries;
+	private final Map<Operation, AtomicLong> exhausted;
+	private double budget;
+
+	public RetryPolicy(Scheduler scheduler) {
+		this.scheduler = scheduler;
+		this.retries = new EnumMap<>(Operation.class);
+		this.exhausted = new EnumMap<>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			retries.put(operation, new AtomicLong());
+			exhausted.put(operation, new AtomicLong());
+		}
+		this.budget = MAX_BUDGET;
+	}
+
+	/**
+	 * @param api
+	 * @return policy shared by dockers of the host
+	 */
+	public static RetryPolicy forHost(ApiHost api) {
+		return HOSTS.computeIfAbsent(api.getUri(), uri -> new RetryPolicy(Schedulers.computation()));
+	}
+
+	/**
+	 * @param <T>
+	 * @param trace
+	 * @param operation
+	 * @param isTransient failures worth another attempt
+	 * @param call
+	 * @return call repeated while it fails transiently
+	 */
+	public <T> Observable<T> retry(Trace trace, Operation operation, Predicate<Throwable> isTransient, Observable<T> call) {
+		return Observable.defer(() -> {
+			AtomicBoolean emitted = new AtomicBoolean();
+			return call
+				.doOnNext(value -> emitted.set(true))
+				.doOnCompleted(this::deposit)
+				.retryWhen(failures -> failures
+					.zipWith(Observable.range(1, Integer.MAX_VALUE), (th, attempt) -> {
+						if (attempt >= operation.attempts || emitted.get() || ! isTransient.test(th)) {
+							return Observable.<Long>error(th);
+						}
+						if (! withdraw()) {
+							exhausted.get(operation).incrementAndGet();
+							trace.event(Level.WARN, "RetryPolicy: retry budget is exhausted (operation, attempt)", operation, attempt, th);
+							return Observable.<Long>error(th);
+						}
+						long delay = delayMillis(operation, attempt);
+						retries.get(operation).incrementAndGet();
+						trace.event(Level.WARN, "RetryPolicy: retrying call (operation, attempt, delayMillis)", operation, attempt, delay, th);
+						return Observable.timer(delay, TimeUnit.MILLISECONDS, scheduler);
+					})
+					.flatMap(retry -> retry)
+				);
+		});
+	}
+
+	/**
+	 * Full jitter, random delay up to exponentially growing ceiling
+	 */
+	private static long delayMillis(Operation operation, int attempt) {
+		long ceiling = Math.min(operation.maxDelayMillis, operation.baseDelayMillis << Math.min(attempt - 1, 20));
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	private synchronized void deposit() {
+		budget = Math.min(MAX_BUDGET, budget + DEPOSIT);
+	}
+
+	private synchronized boolean withdraw() {
+		if (budget < 1) {
+			return false;
+		}
+		budget -= 1;
+		return true;
+	}
+
+	/**
+	 * @param operation
+	 * @return number of repeated calls
+	 */
+	public long getRetries(Operation operation) {
+		return retries.get(operation).get();
+	}
+
+	/**
+	 * @param operation
+	 * @return number of calls that failed transiently and were not repeated
+	 * because the budget was exhausted
+	 */
+	public long getExhausted(Operation operation) {
+		return exhausted.get(operation).get();
+	}
+
+	public synchronized double getBudget() {
+		return budget;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RetryPolicy(budget=" + budget + ", retries=" + retries + ", exhausted=" + exhausted + ')';
+	}
+}
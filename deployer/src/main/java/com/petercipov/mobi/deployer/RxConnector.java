@@ -1,7 +1,9 @@
 package com.petercipov.mobi.deployer;
 
 import com.petercipov.mobi.config.ApiHost;
+import rx.Observable;
 import rx.Scheduler;
+import rx.schedulers.Schedulers;
 
 /**
  *
@@ -11,4 +13,25 @@ public interface RxConnector {
 
 	RxDocker createRxDocker(ApiHost api, Scheduler scheduler);
 	
+	/**
+	 * Creates docker that runs blocking calls on io threads owned by the 
+	 * connector for the host.
+	 * @param api
+	 * @return 
+	 */
+	default RxDocker createRxDocker(ApiHost api) {
+		return createRxDocker(api, Schedulers.io());
+	}
+	
+	/**
+	 * Opens connections to the host in parallel before they are needed.
+	 * Connectors without pooled connections open none.
+	 * @param api
+	 * @param connections
+	 * @return number of opened connections
+	 */
+	default Observable<Integer> prewarm(ApiHost api, int connections) {
+		return Observable.just(0);
+	}
+	
 }
@@ -1,8 +1,13 @@
 package com.petercipov.mobi.deployer;
 
 import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.deployer.readiness.ReadinessProbe;
 import com.petercipov.traces.api.Trace;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import rx.Observable;
 
 /**
@@ -11,10 +16,23 @@ import rx.Observable;
  */
 public abstract class RxDeployment {
 	protected Optional<String> name;
+	protected final List<ReadinessProbe> readiness;
+	protected long readinessTimeoutMillis;
+	protected long readinessIntervalMillis;
 
     public RxDeployment() {
 		this.name = Optional.empty();
+		this.readiness = new LinkedList<>();
+		this.readinessTimeoutMillis = TimeUnit.MINUTES.toMillis(1);
+		this.readinessIntervalMillis = 250;
     }
+	
+	protected RxDeployment(RxDeployment other) {
+		this.name = other.name;
+		this.readiness = new LinkedList<>(other.readiness);
+		this.readinessTimeoutMillis = other.readinessTimeoutMillis;
+		this.readinessIntervalMillis = other.readinessIntervalMillis;
+	}
     
 	public Optional<String> name() {
 		return name;
@@ -30,6 +48,52 @@ public abstract class RxDeployment {
         this.name = Optional.of(name);
         return this;
     }
+	
+	/**
+	 * Container is considered deployed only after the probe passes. All added
+	 * probes have to pass.
+	 * @param probe f.e. ReadinessProbe.tcpPort("8080/tcp")
+	 * @return 
+	 */
+	public RxDeployment waitFor(ReadinessProbe probe) {
+		this.readiness.add(probe);
+		return this;
+	}
+	
+	/**
+	 * Sets maximal time of waiting for readiness, container is killed when
+	 * it is not ready in time. Default is one minute.
+	 * @param timeout
+	 * @param unit
+	 * @return 
+	 */
+	public RxDeployment setReadinessTimeout(long timeout, TimeUnit unit) {
+		this.readinessTimeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+	
+	/**
+	 * Sets delay between failed readiness attempt and the next one
+	 * @param interval
+	 * @param unit
+	 * @return 
+	 */
+	public RxDeployment setReadinessInterval(long interval, TimeUnit unit) {
+		this.readinessIntervalMillis = unit.toMillis(interval);
+		return this;
+	}
+	
+	public List<ReadinessProbe> readiness() {
+		return Collections.unmodifiableList(readiness);
+	}
+	
+	public long readinessTimeoutMillis() {
+		return readinessTimeoutMillis;
+	}
+	
+	public long readinessIntervalMillis() {
+		return readinessIntervalMillis;
+	}
 	/**
 	 * Adds volume bindings to container as string in format /host/path:/container/path
 	 * @since 1.14
@@ -290,6 +354,31 @@ public abstract class RxDeployment {
 	public abstract RxDeployment addVolumeFrom(String ... volumes);
 	
 	
+	/**
+	 * Copies all options of the deployment. Changes of the copy do not affect
+	 * this deployment.
+	 * @return 
+	 */
+	public abstract RxDeployment copy();
+	
+	/**
+	 * Computes stable structural hash of the image and all options of the 
+	 * deployment. Labels with prefix mobi. are not part of the hash.
+	 * @param image
+	 * @return hex encoded hash
+	 */
+	public abstract String specHash(Instance image);
+	
+	/**
+	 * @return memory limit in bytes, 0 when not set
+	 */
+	public abstract long memory();
+	
+	/**
+	 * @return cpu shares, 0 when not set
+	 */
+	public abstract long cpuShares();
+	
 	protected abstract Observable<String> createContainer(Trace trace, Instance image);
 	
 }
@@ -1,11 +1,15 @@
 package com.petercipov.mobi.deployer;
 
 import com.petercipov.mobi.Instance;
+import com.petercipov.traces.api.Level;
 import com.petercipov.traces.api.Trace;
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import rx.Observable;
 
 /**
@@ -25,9 +29,199 @@ public interface RxDocker {
     Observable<String> removeContainer(Trace trace, String containerId);
 	
 	Observable<ContainerInfo> inspectContainer(Trace trace, String containerId);
+	
+	/**
+	 * Inspects container decoding only the requested sections, values of 
+	 * other sections are null. Top level values are always decoded. By
+	 * default the whole inspection is decoded.
+	 * @param trace
+	 * @param containerId
+	 * @param sections
+	 * @return projection of inspection
+	 */
+	default Observable<ContainerInfo> inspectContainer(Trace trace, String containerId, Set<InspectSection> sections) {
+		return inspectContainer(trace, containerId);
+	}
+	
+	/**
+	 * Creates, starts and inspects container as one unit. Container that 
+	 * could not be started, inspected or does not run is killed and removed 
+	 * before the error is emitted, so is container created before the unit
+	 * was unsubscribed. Implementations may run the whole sequence as one 
+	 * scheduled task, by default it is chained from the single calls.
+	 * @param trace
+	 * @param image
+	 * @param deployment
+	 * @return inspection of the running container, at least its state and
+	 * network settings
+	 */
+	default Observable<ContainerInfo> createAndStart(Trace trace, Instance image, RxDeployment deployment) {
+		return createAndStartStepwise(this, trace, image, deployment);
+	}
+	
+	/**
+	 * Chains create, start and inspect calls of the docker, every call is
+	 * scheduled on its own.
+	 */
+	static Observable<ContainerInfo> createAndStartStepwise(RxDocker docker, Trace trace, Instance image, RxDeployment deployment) {
+		return startCreated(docker, trace, deployment.createContainer(trace, image));
+	}
+	
+	/**
+	 * Starts and inspects container once it is created. Container that could
+	 * not be started is killed and removed before the error is emitted.
+	 * @param docker
+	 * @param trace
+	 * @param creation emits id of created container
+	 * @return inspection of the running container
+	 */
+	static Observable<ContainerInfo> startCreated(RxDocker docker, Trace trace, Observable<String> creation) {
+		return creation
+			.flatMap(containerId -> {
+				AtomicBoolean settled = new AtomicBoolean();
+				return docker.startContainer(trace, containerId)
+					.flatMap(id -> docker.inspectContainer(trace, id))
+					.flatMap(inspection -> {
+						if (inspection.state().running()) {
+							return Observable.just(inspection);
+						} else {
+							return Observable.error(new IllegalStateException("Expecting container to run. containerId="+containerId));
+						}
+					})
+					.doOnNext(inspection -> settled.set(true))
+					.onErrorResumeNext(ex -> {
+						settled.set(true);
+						return discard(docker, trace, containerId)
+							.flatMap(id -> Observable.<ContainerInfo>error(ex));
+					})
+					.doOnUnsubscribe(() -> {
+						if (settled.compareAndSet(false, true)) {
+							trace.event("RxDocker: deployment was unsubscribed, removing created container (containerId)", containerId);
+							discard(docker, trace, containerId).subscribe(id -> {}, th -> 
+								trace.event(Level.ERROR, "RxDocker: created container could not be removed (containerId)", containerId, th)
+							);
+						}
+					});
+			});
+	}
+	
+	/**
+	 * Kills the container if it runs and removes it
+	 * @param docker
+	 * @param trace
+	 * @param containerId
+	 * @return id of removed container
+	 */
+	static Observable<String> discard(RxDocker docker, Trace trace, String containerId) {
+		return docker.killContainer(trace, containerId)
+			.onErrorReturn(th -> containerId)
+			.flatMap(id -> docker.removeContainer(trace, containerId));
+	}
+	
+	/**
+	 * Lists all containers, running or not, that have all the labels. Ids 
+	 * are emitted as subscriber requests them.
+	 * @param trace
+	 * @param labels label with null value matches any value
+	 * @return ids of containers
+	 */
+	Observable<String> listContainerIds(Trace trace, Map<String, String> labels);
+	
+	/**
+	 * @param trace
+	 * @param containerId
+	 * @return stdout and stderr of the container written so far
+	 */
+	Observable<String> logs(Trace trace, String containerId);
+	
+	/**
+	 * Output of the container in chunks as the daemon writes it. Chunks are
+	 * read from the connection as subscriber requests them, so long streams
+	 * are not buffered in the heap.
+	 * @param trace
+	 * @param containerId
+	 * @param follow stream does not complete until container stops
+	 * @return chunks of stdout and stderr
+	 */
+	Observable<String> logStream(Trace trace, String containerId, boolean follow);
+	
+	/**
+	 * Stream of events pushed by the daemon. Stream does not complete until
+	 * it is unsubscribed or the connection is closed. Events are read from 
+	 * the connection as they are requested by subscriber.
+	 * @param trace
+	 * @param filters f.e. type=[container], event=[die, oom]
+	 * @return 
+	 */
+	Observable<DockerEvent> events(Trace trace, Map<String, List<String>> filters);
+
+	/**
+	 * Failure that may pass when the call is repeated, f.e. reset connection,
+	 * timeout or internal error of the daemon. Answers of the daemon like 
+	 * missing container are not transient.
+	 * @param th
+	 * @return 
+	 */
+	default boolean isTransient(Throwable th) {
+		for (Throwable cause = th; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException || cause instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param th
+	 * @return status of the daemon's answer that failed the call, f.e. 404 
+	 * for missing container or 409 for conflict, 0 when the call was not 
+	 * answered by the daemon
+	 */
+	default int status(Throwable th) {
+		return 0;
+	}
+
+	/**
+	 * @return number of calls the host admits in flight now, batch
+	 * operations do not run more calls at once
+	 */
+	default int concurrencyLimit() {
+		return Integer.MAX_VALUE;
+	}
 
 	void close(Trace trace);
 	
+	/**
+	 * Sections of container inspection that can be decoded on their own
+	 */
+	enum InspectSection {
+		CONFIG,
+		HOST_CONFIG,
+		STATE,
+		NETWORK_SETTINGS
+	}
+	
+	interface DockerEvent {
+		/**
+		 * @return container or image
+		 */
+		String type();
+		/**
+		 * @return f.e. create, start, die, pull, delete
+		 */
+		String action();
+		/**
+		 * @return id of container or image
+		 */
+		String id();
+		/**
+		 * @return image of the container, null for image events
+		 */
+		String from();
+		long timeMillis();
+		Map<String, String> attributes();
+	}
+	
 	interface ContainerInfo {
 		String id();
 		Date created();
@@ -0,0 +1,145 @@
+package com.petercipov.mobi.deployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Identifies the JVM that created containers. Every deployed container is
+ * labeled by the session, so containers of a JVM that died without cleanup 
+ * can be found and removed later.
+ *
+ * @author petercipov
+ */
+public class Session {
+
+	public static final String SESSION_LABEL = "mobi.session";
+	public static final String STARTED_LABEL = "mobi.session.started";
+	public static final String HOST_LABEL = "mobi.session.host";
+	public static final String PID_LABEL = "mobi.session.pid";
+	
+	private static final List<String> MACHINE_ID_FILES = Arrays.asList("/etc/machine-id", "/var/lib/dbus/machine-id");
+
+	private static final Session CURRENT = new Session(
+		UUID.randomUUID().toString(),
+		System.currentTimeMillis(),
+		localHostId(),
+		localPid()
+	);
+
+	private final String id;
+	private final long started;
+	private final String host;
+	private final String pid;
+
+	/**
+	 * @param id
+	 * @param started
+	 * @param host identity of the machine, null when it is not known
+	 * @param pid 
+	 */
+	public Session(String id, long started, String host, String pid) {
+		this.id = id;
+		this.started = started;
+		this.host = host;
+		this.pid = pid;
+	}
+
+	public static Session current() {
+		return CURRENT;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Map<String, String> labels() {
+		Map<String, String> labels = new HashMap<>();
+		labels.put(SESSION_LABEL, id);
+		labels.put(STARTED_LABEL, Long.toString(started));
+		if (host != null) {
+			labels.put(HOST_LABEL, host);
+		}
+		labels.put(PID_LABEL, pid);
+		return Collections.unmodifiableMap(labels);
+	}
+
+	/**
+	 * Session of other JVM is stale when the JVM ran on this machine and its
+	 * process does not exist anymore, or when it is older than max age. When 
+	 * identity of this machine is not known, only the age is checked.
+	 * @param labels labels of a container
+	 * @param maxAgeMillis
+	 * @param now
+	 * @return true if container belongs to stale session
+	 */
+	public boolean isStale(Map<String, String> labels, long maxAgeMillis, long now) {
+		String session = labels.get(SESSION_LABEL);
+		if (session == null || session.equals(id)) {
+			return false;
+		}
+
+		String otherPid = labels.get(PID_LABEL);
+		if (host != null && host.equals(labels.get(HOST_LABEL)) && otherPid != null && new File("/proc/self").exists()) {
+			return ! new File("/proc/" + otherPid).exists();
+		}
+
+		try {
+			return Long.parseLong(labels.get(STARTED_LABEL)) + maxAgeMillis < now;
+		} catch (NumberFormatException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Name of the machine is combined with its machine id, so machines that
+	 * share a name are told apart.
+	 * @return identity of this machine, null if its name can not be resolved
+	 */
+	private static String localHostId() {
+		String name;
+		try {
+			name = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException ex) {
+			return null;
+		}
+		return machineId().map(machine -> name + "/" + machine).orElse(name);
+	}
+
+	private static Optional<String> machineId() {
+		for (String file : MACHINE_ID_FILES) {
+			try {
+				String machine = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.US_ASCII).trim();
+				if (! machine.isEmpty()) {
+					return Optional.of(machine);
+				}
+			} catch (IOException ex) {
+				// try next file
+			}
+		}
+		return Optional.empty();
+	}
+
+	private static String localPid() {
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		int at = name.indexOf('@');
+		return at > 0 ? name.substring(0, at) : name;
+	}
+
+	@Override
+	public String toString() {
+		return "Session(id=" + id + ", host=" + host + ", pid=" + pid + ')';
+	}
+}
@@ -0,0 +1,91 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Removes containers of stale sessions, f.e. of test JVMs killed by timeout.
+ * Containers are found by label filtered listing, their labels are inspected
+ * and stale ones are killed and removed in parallel.
+ *
+ * @author petercipov
+ */
+public class SessionSweeper {
+
+	public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(12);
+	private static final int DEFAULT_PARALLELISM = 8;
+	private static final Set<String> SWEPT_HOSTS = ConcurrentHashMap.newKeySet();
+
+	private final RxDocker docker;
+	private final Session session;
+	private final long maxAgeMillis;
+	private final int parallelism;
+
+	public SessionSweeper(RxDocker docker, Session session, long maxAgeMillis, int parallelism) {
+		this.docker = docker;
+		this.session = session;
+		this.maxAgeMillis = maxAgeMillis;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sweeps the host in the background, only first call for the host in 
+	 * the JVM sweeps.
+	 * @param trace
+	 * @param api
+	 * @param docker creates docker of the sweep, it is closed after the sweep
+	 */
+	public static void sweepOnce(Trace trace, ApiHost api, Func0<RxDocker> docker) {
+		if (SWEPT_HOSTS.add(api.getUri())) {
+			RxDocker sweeping = docker.call();
+			new SessionSweeper(sweeping, Session.current(), DEFAULT_MAX_AGE_MILLIS, DEFAULT_PARALLELISM)
+				.sweep(trace)
+				.finallyDo(() -> sweeping.close(trace))
+				.subscribe(
+					id -> {},
+					th -> trace.event(Level.ERROR, "SessionSweeper: sweep failed (host)", api, th)
+				);
+		}
+	}
+
+	/**
+	 * @param trace
+	 * @return ids of removed containers
+	 */
+	public Observable<String> sweep(Trace trace) {
+		return Observable.defer(() -> {
+			long now = System.currentTimeMillis();
+			trace.event("SessionSweeper: looking for containers of stale sessions (session)", session);
+			return docker.listContainerIds(trace, Collections.singletonMap(Session.SESSION_LABEL, null))
+				.flatMap(id -> docker.inspectContainer(trace, id, EnumSet.of(RxDocker.InspectSection.CONFIG))
+					.filter(info -> isStale(info, now))
+					.flatMap(info -> remove(trace, id, info.config().labels())), 
+					parallelism
+				);
+		});
+	}
+
+	private boolean isStale(RxDocker.ContainerInfo info, long now) {
+		Map<String, String> labels = info.config().labels();
+		return labels != null && session.isStale(labels, maxAgeMillis, now);
+	}
+
+	private Observable<String> remove(Trace trace, String containerId, Map<String, String> labels) {
+		trace.event("SessionSweeper: removing container of stale session (container id, session)", containerId, labels.get(Session.SESSION_LABEL));
+		return ContainerReaper.stopOrKill(trace, docker, containerId, ContainerReaper.KILL)
+			.flatMap(id -> docker.removeContainer(trace, id))
+			.onErrorResumeNext(th -> {
+				trace.event(Level.ERROR, "SessionSweeper: container could not be removed (container id)", containerId, th);
+				return Observable.empty();
+			});
+	}
+}
@@ -0,0 +1,91 @@
+package com.petercipov.mobi.deployer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how deployer removes its containers when it is closed.
+ *
+ * @author petercipov
+ */
+public class TeardownPolicy {
+
+	private int parallelism;
+	private long deadlineMillis;
+	private int stopGraceSeconds;
+	private boolean removeByLabel;
+
+	public TeardownPolicy() {
+		this.parallelism = 8;
+		this.deadlineMillis = TimeUnit.MINUTES.toMillis(1);
+		this.stopGraceSeconds = 0;
+		this.removeByLabel = false;
+	}
+
+	/**
+	 * Sets maximal number of containers being stopped or removed at once
+	 * @param parallelism
+	 * @return 
+	 */
+	public TeardownPolicy setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sets time limit of the whole teardown. Containers not removed until the
+	 * deadline are left behind and reported.
+	 * @param deadline
+	 * @param unit
+	 * @return 
+	 */
+	public TeardownPolicy setDeadline(long deadline, TimeUnit unit) {
+		this.deadlineMillis = unit.toMillis(deadline);
+		return this;
+	}
+
+	/**
+	 * Containers get SIGTERM first and are killed when they do not exit 
+	 * within the grace period. Zero, the default, kills containers right 
+	 * away, so containers ignoring SIGTERM do not slow the teardown down.
+	 * @param seconds
+	 * @return 
+	 */
+	public TeardownPolicy setStopGraceSeconds(int seconds) {
+		this.stopGraceSeconds = seconds;
+		return this;
+	}
+
+	/**
+	 * Stopped containers are removed by listing all containers labeled by the
+	 * deployer, instead of removing tracked containers one by one. It also
+	 * removes containers the deployer lost track of, f.e. created but never
+	 * started.
+	 * @param removeByLabel
+	 * @return 
+	 */
+	public TeardownPolicy setRemoveByLabel(boolean removeByLabel) {
+		this.removeByLabel = removeByLabel;
+		return this;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+
+	public int getStopGraceSeconds() {
+		return stopGraceSeconds;
+	}
+
+	public boolean isRemoveByLabel() {
+		return removeByLabel;
+	}
+
+	@Override
+	public String toString() {
+		return "TeardownPolicy(parallelism=" + parallelism + ", deadlineMillis=" + deadlineMillis + ", stopGraceSeconds=" + stopGraceSeconds + ", removeByLabel=" + removeByLabel + ')';
+	}
+}
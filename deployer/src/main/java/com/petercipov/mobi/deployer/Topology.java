@@ -0,0 +1,274 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import com.petercipov.traces.api.Trace.Event;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import rx.Observable;
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Set of services with dependencies between them. Services are deployed as
+ * soon as all their dependencies are running, so independent services of the
+ * same level are deployed in parallel and the cold start is bounded by the
+ * longest chain of dependencies. Services on the critical path are started
+ * first. Values taken from dependencies (ip address, ports) are resolved
+ * lazily, just before the dependent service is deployed, into a copy of its
+ * options, so the topology can be deployed repeatedly.
+ *
+ * <pre>
+ * topology.service("seed", cassandra, docker.deployment());
+ * topology.service("node", cassandra, docker.deployment())
+ *     .dependsOn("seed", "CASSANDRA_SEEDS", Container::getIpAddress);
+ * topology.deploy(trace);
+ * </pre>
+ *
+ * @author petercipov
+ */
+public class Topology {
+
+	private final Deployer deployer;
+	private final Map<String, Service> services;
+
+	public Topology(Deployer deployer) {
+		this.deployer = deployer;
+		this.services = new LinkedHashMap<>();
+	}
+
+	public Service service(String name, Instance image, RxDeployment options) {
+		if (services.containsKey(name)) {
+			throw new IllegalArgumentException("Service already declared " + name);
+		}
+		Service service = new Service(name, image, options);
+		services.put(name, service);
+		return service;
+	}
+
+	/**
+	 * Deploys all services of the topology. If any of services fails, 
+	 * services still being deployed are awaited and all deployed services 
+	 * are killed.
+	 * @param trace
+	 * @return map of service name to deployed container
+	 */
+	public Observable<Map<String, Container>> deploy(Trace trace) {
+		return deploy(trace, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Deploys all services of the topology, at most maxConcurrency services
+	 * at once. Services on the critical path take the slots first. 
+	 * @param trace
+	 * @param maxConcurrency maximal number of services being deployed at once,
+	 * concurrency limit of the docker applies when it is lower
+	 * @return map of service name to deployed container
+	 */
+	public Observable<Map<String, Container>> deploy(Trace trace, int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("max concurrency has to be positive, was " + maxConcurrency);
+		}
+		return Observable.defer(() -> {
+			List<List<String>> levels = levels();
+			Map<String, Integer> chains = chainLengths();
+			int concurrency = Math.min(maxConcurrency, deployer.concurrencyLimit());
+			Event deployEvent = trace.start("Topology: deploying (levels, max concurrency)", levels, concurrency);
+
+			Map<String, Container> deployed = new ConcurrentHashMap<>();
+			Map<String, Observable<Container>> nodes = new HashMap<>();
+			for (List<String> level : levels) {
+				for (String name : level) {
+					nodes.put(name, node(trace, services.get(name), nodes, deployed));
+				}
+			}
+
+			// chain of a dependency is always longer than chain of its dependant,
+			// so dependencies take the slots before services waiting for them
+			List<String> order = new ArrayList<>(services.keySet());
+			Collections.sort(order, Comparator.comparing((String name) -> chains.get(name)).reversed());
+
+			return Observable.from(order)
+				.flatMap(nodes::get, concurrency)
+				.toList()
+				.map(xxx -> {
+					Map<String, Container> result = new LinkedHashMap<>();
+					for (String name : services.keySet()) {
+						result.put(name, deployed.get(name));
+					}
+					return result;
+				})
+				.onErrorResumeNext(ex -> {
+					trace.event(Level.ERROR, "Topology: deployment failed, waiting for services in flight (deployed services)", deployed.keySet(), ex);
+					return settled(nodes.values())
+						.flatMap(xxx -> {
+							trace.event("Topology: killing deployed services (services)", deployed.keySet());
+							return Observable.from(new ArrayList<>(deployed.values()));
+						})
+						.flatMap(c -> deployer.killContainer(trace, c).onErrorResumeNext(Observable.empty()))
+						.toList()
+						.flatMap(xxx -> Observable.<Map<String, Container>>error(ex));
+				})
+				.doOnTerminate(() -> deployEvent.end());
+		});
+	}
+
+	/**
+	 * Nodes are cached, so their deployments go on when the topology fails.
+	 * Rollback waits for them to complete or fail, otherwise services in
+	 * flight would be deployed after the rollback.
+	 */
+	private static Observable<List<Container>> settled(Collection<Observable<Container>> nodes) {
+		return Observable.from(new ArrayList<>(nodes))
+			.flatMap(node -> node.onErrorResumeNext(Observable.empty()))
+			.toList();
+	}
+
+	private Observable<Container> node(Trace trace, Service service, Map<String, Observable<Container>> nodes, Map<String, Container> deployed) {
+		List<Observable<Container>> dependencies = new ArrayList<>(service.dependencies.size());
+		for (String dependency : service.dependencies.keySet()) {
+			dependencies.add(nodes.get(dependency));
+		}
+
+		return Observable.merge(dependencies)
+			.toList()
+			.flatMap(xxx -> {
+				RxDeployment options = service.options.copy();
+				for (Map.Entry<String, Action2<Container, RxDeployment>> e : service.dependencies.entrySet()) {
+					e.getValue().call(deployed.get(e.getKey()), options);
+				}
+				trace.event("Topology: dependencies resolved, deploying (service)", service.name);
+				return deployer.deploy(trace, service.image, options);
+			})
+			.doOnNext(container -> deployed.put(service.name, container))
+			.cache();
+	}
+
+	/**
+	 * Groups services into levels. Services of a level depend only on services
+	 * of previous levels.
+	 * @return levels in order of deployment
+	 */
+	public List<List<String>> levels() {
+		Map<String, Integer> pending = new HashMap<>();
+		Map<String, List<String>> dependants = new HashMap<>();
+		for (Service service : services.values()) {
+			pending.put(service.name, service.dependencies.size());
+			for (String dependency : service.dependencies.keySet()) {
+				if (! services.containsKey(dependency)) {
+					throw new IllegalStateException("Service " + service.name + " depends on unknown service " + dependency);
+				}
+				dependants.computeIfAbsent(dependency, name -> new LinkedList<>()).add(service.name);
+			}
+		}
+
+		List<List<String>> levels = new LinkedList<>();
+		List<String> level = new ArrayList<>();
+		for (Service service : services.values()) {
+			if (service.dependencies.isEmpty()) {
+				level.add(service.name);
+			}
+		}
+
+		int resolved = 0;
+		while (! level.isEmpty()) {
+			levels.add(level);
+			resolved += level.size();
+			List<String> next = new ArrayList<>();
+			for (String name : level) {
+				for (String dependant : dependants.getOrDefault(name, Collections.emptyList())) {
+					if (pending.merge(dependant, -1, Integer::sum) == 0) {
+						next.add(dependant);
+					}
+				}
+			}
+			level = next;
+		}
+
+		if (resolved != services.size()) {
+			throw new IllegalStateException("Cyclic dependency between services of the topology");
+		}
+		return levels;
+	}
+
+	/**
+	 * @return for every service the number of services in the longest chain
+	 * that starts by the service
+	 */
+	public Map<String, Integer> chainLengths() {
+		List<List<String>> levels = levels();
+		Map<String, Integer> chains = new HashMap<>();
+		for (int i = levels.size() - 1; i >= 0; i--) {
+			for (String name : levels.get(i)) {
+				chains.putIfAbsent(name, 1);
+				for (String dependency : services.get(name).dependencies.keySet()) {
+					chains.merge(dependency, chains.get(name) + 1, Math::max);
+				}
+			}
+		}
+		return chains;
+	}
+
+	public static class Service {
+		private final String name;
+		private final Instance image;
+		private final RxDeployment options;
+		private final Map<String, Action2<Container, RxDeployment>> dependencies;
+
+		private Service(String name, Instance image, RxDeployment options) {
+			this.name = name;
+			this.image = image;
+			this.options = options;
+			this.dependencies = new LinkedHashMap<>();
+		}
+
+		public Service dependsOn(String service) {
+			return dependsOn(service, (container, options) -> {});
+		}
+
+		/**
+		 * Declares dependency on a service. Resolver is called with the running
+		 * container of the dependency before this service is deployed.
+		 * @param service name of the service
+		 * @param resolver configures options of this service from the dependency
+		 * @return
+		 */
+		public Service dependsOn(String service, Action2<Container, RxDeployment> resolver) {
+			Action2<Container, RxDeployment> previous = dependencies.get(service);
+			if (previous == null) {
+				dependencies.put(service, resolver);
+			} else {
+				dependencies.put(service, (container, options) -> {
+					previous.call(container, options);
+					resolver.call(container, options);
+				});
+			}
+			return this;
+		}
+
+		/**
+		 * Declares dependency on a service, value of the variable is resolved
+		 * from the running container of the dependency.
+		 * @param service name of the service
+		 * @param variable name of environment variable
+		 * @param value f.e. Container::getIpAddress
+		 * @return
+		 */
+		public Service dependsOn(String service, String variable, Func1<Container, String> value) {
+			return dependsOn(service, (container, options) -> options.addEnv(variable, value.call(container)));
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
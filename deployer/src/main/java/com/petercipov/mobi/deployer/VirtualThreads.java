@@ -0,0 +1,84 @@
+package com.petercipov.mobi.deployer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Threads for blocking docker calls. On runtimes with virtual threads every
+ * task gets its own virtual thread, so thousands of concurrent calls cost
+ * almost nothing. Virtual threads are looked up by reflection, mobi is built
+ * for java 8 where tasks run on cached daemon threads instead.
+ *
+ * @author petercipov
+ */
+public final class VirtualThreads {
+
+	private static final String NAME = "mobi-virtual-";
+	private static final boolean SUPPORTED = virtualFactory(NAME) != null;
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return true if the runtime supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	/**
+	 * Creates executor that starts a new virtual thread for every task.
+	 * Without virtual threads the executor is a cached pool of daemon threads.
+	 * @param name prefix of names of the threads
+	 * @return executor that has to be shut down by the caller
+	 */
+	public static ExecutorService executor(String name) {
+		ThreadFactory factory = virtualFactory(name);
+		if (factory == null) {
+			return Executors.newCachedThreadPool(daemonFactory(name));
+		}
+		try {
+			Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) perTask.invoke(null, factory);
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException("Virtual thread executor could not be created", ex);
+		}
+	}
+
+	/**
+	 * @return scheduler that runs every subscription on its own virtual
+	 * thread, shared by the whole JVM
+	 */
+	public static Scheduler scheduler() {
+		return Shared.SCHEDULER;
+	}
+
+	private static ThreadFactory virtualFactory(String name) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			return null;
+		}
+	}
+
+	private static ThreadFactory daemonFactory(String name) {
+		AtomicLong counter = new AtomicLong();
+		return task -> {
+			Thread thread = new Thread(task, name + counter.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static class Shared {
+		private static final Scheduler SCHEDULER = Schedulers.from(executor(NAME));
+	}
+}
@@ -0,0 +1,127 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.deployer.readiness.ProbeLoop;
+import com.petercipov.mobi.deployer.readiness.ProbeTarget;
+import com.petercipov.mobi.deployer.readiness.ReadinessProbe;
+import com.petercipov.traces.api.Level;
+import com.petercipov.traces.api.Trace;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Sidecar container that removes containers of the session when the JVM
+ * stops sending heartbeats, f.e. when it was killed. Heartbeat is a tcp
+ * connection to the published port of the sidecar, sent from the shared 
+ * probe loop. Sidecar talks to the daemon through its mounted socket and 
+ * removes itself as well.
+ *
+ * @author petercipov
+ */
+public class Watchdog {
+
+	public static final Instance DEFAULT_IMAGE = new Instance(new DefaultRegistry(), new Name("docker"), "1.9");
+	private static final String HEARTBEAT_PORT = "7777/tcp";
+	private static final String DOCKER_SOCKET = "/var/run/docker.sock";
+	private static final long DEFAULT_HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+	private static final int DEFAULT_TIMEOUT_SECONDS = 60;
+	private static final byte[] HEARTBEAT = new byte[0];
+	private static final Map<String, Watchdog> HOSTS = new ConcurrentHashMap<>();
+
+	private final ApiHost api;
+	private final RxDocker docker;
+	private final Session session;
+	private final Instance image;
+	private final long heartbeatMillis;
+	private final int timeoutSeconds;
+	private final ProbeLoop loop;
+	private volatile boolean stopped;
+
+	public Watchdog(ApiHost api, RxDocker docker, Session session, Instance image, long heartbeatMillis, int timeoutSeconds) {
+		this.api = api;
+		this.docker = docker;
+		this.session = session;
+		this.image = image;
+		this.heartbeatMillis = heartbeatMillis;
+		this.timeoutSeconds = timeoutSeconds;
+		this.loop = ProbeLoop.shared();
+		this.stopped = false;
+	}
+
+	/**
+	 * Starts watchdog of current session in the background, only first call 
+	 * for the host in the JVM starts it.
+	 * @param trace
+	 * @param api
+	 * @param docker creates docker used to deploy the sidecar
+	 * @return watchdog of the host
+	 */
+	public static Watchdog forHost(Trace trace, ApiHost api, Func0<RxDocker> docker) {
+		return HOSTS.computeIfAbsent(api.getUri(), uri -> {
+			Watchdog watchdog = new Watchdog(api, docker.call(), Session.current(), DEFAULT_IMAGE, DEFAULT_HEARTBEAT_MILLIS, DEFAULT_TIMEOUT_SECONDS);
+			watchdog.start(trace).subscribe(
+				container -> {},
+				th -> trace.event(Level.ERROR, "Watchdog: sidecar could not be started (host)", api, th)
+			);
+			return watchdog;
+		});
+	}
+
+	public Observable<Container> start(Trace trace) {
+		RxDeployment options = docker.deployment()
+			.addVolume(DOCKER_SOCKET, DOCKER_SOCKET)
+			.addExposedPort(HEARTBEAT_PORT)
+			.publishAllPorts()
+			.setEntryPoint("sh", "-c")
+			.setCmd(script())
+			.waitFor(ReadinessProbe.tcpPort(HEARTBEAT_PORT));
+
+		return new Deployer(api, docker)
+			.deploy(trace, image, options)
+			.doOnNext(container -> {
+				trace.event("Watchdog: sidecar started (container, session)", container, session);
+				InetSocketAddress address = new ProbeTarget(container, api.getPublishedHost(), docker, loop, heartbeatMillis)
+					.address(HEARTBEAT_PORT);
+				beat(trace, address);
+			});
+	}
+
+	/**
+	 * Stops heartbeats, sidecar removes session containers after timeout
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	private void beat(Trace trace, InetSocketAddress address) {
+		if (stopped) {
+			return;
+		}
+		loop.exchange(address, HEARTBEAT, heartbeatMillis).subscribe(
+			response -> {},
+			th -> trace.event(Level.ERROR, "Watchdog: heartbeat failed (address)", address, th)
+		);
+		loop.schedule(heartbeatMillis, () -> beat(trace, address));
+	}
+
+	String script() {
+		String port = HEARTBEAT_PORT.substring(0, HEARTBEAT_PORT.indexOf('/'));
+		return "touch /tmp/beat; "
+			+ "(while true; do nc -l -p " + port + " > /dev/null 2>&1; touch /tmp/beat; done) & "
+			+ "while [ $(( $(date +%s) - $(stat -c %Y /tmp/beat) )) -lt " + timeoutSeconds + " ]; do sleep 1; done; "
+			+ "docker ps -aq --filter label=" + Session.SESSION_LABEL + "=" + session.getId() + " | grep -v $(hostname) | xargs -r docker rm -f; "
+			+ "docker rm -f $(hostname)";
+	}
+
+	@Override
+	public String toString() {
+		return "Watchdog(session=" + session + ", image=" + image + ", timeoutSeconds=" + timeoutSeconds + ')';
+	}
+}
@@ -0,0 +1,48 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.traces.api.Trace;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import rx.Observable;
+
+/**
+ * Sends plain HTTP/1.0 GET request and checks the status line of response.
+ *
+ * @author petercipov
+ */
+public class HttpProbe implements ReadinessProbe {
+
+	private final String portDef;
+	private final String path;
+
+	public HttpProbe(String portDef, String path) {
+		this.portDef = portDef;
+		this.path = path.startsWith("/") ? path : "/" + path;
+	}
+
+	@Override
+	public Observable<Boolean> check(Trace trace, ProbeTarget target) {
+		return Observable.defer(() -> {
+			InetSocketAddress address = target.address(portDef);
+			byte[] request = ("GET " + path + " HTTP/1.0\r\n"
+				+ "Host: " + address.getHostString() + ":" + address.getPort() + "\r\n"
+				+ "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+			return target.loop()
+				.exchange(address, request, target.attemptTimeoutMillis())
+				.map(response -> isOk(new String(response, StandardCharsets.ISO_8859_1)));
+		});
+	}
+
+	static boolean isOk(String response) {
+		int end = response.indexOf('\n');
+		String statusLine = end < 0 ? response : response.substring(0, end);
+		String[] parts = statusLine.trim().split(" ");
+		return parts.length >= 2 && parts[0].startsWith("HTTP/") && "200".equals(parts[1]);
+	}
+
+	@Override
+	public String toString() {
+		return "HttpProbe(port=" + portDef + ", path=" + path + ')';
+	}
+}
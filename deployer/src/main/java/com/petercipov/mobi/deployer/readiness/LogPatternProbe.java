@@ -0,0 +1,30 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.traces.api.Trace;
+import java.util.regex.Pattern;
+import rx.Observable;
+
+/**
+ *
+ * @author petercipov
+ */
+public class LogPatternProbe implements ReadinessProbe {
+
+	private final Pattern pattern;
+
+	public LogPatternProbe(Pattern pattern) {
+		this.pattern = pattern;
+	}
+
+	@Override
+	public Observable<Boolean> check(Trace trace, ProbeTarget target) {
+		return target.docker()
+			.logs(trace, target.container().getContainerId())
+			.map(log -> pattern.matcher(log).find());
+	}
+
+	@Override
+	public String toString() {
+		return "LogPatternProbe(pattern=" + pattern + ')';
+	}
+}
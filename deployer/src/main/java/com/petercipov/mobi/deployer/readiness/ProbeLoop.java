@@ -0,0 +1,271 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * Single thread that drives all readiness probes. Connections are probed by
+ * non-blocking channels registered in one selector and delays between
+ * attempts are kept in a timer wheel, so waiting for any number of containers
+ * costs one thread. Failure of a task or of a probe never stops the loop,
+ * it fails only the probe.
+ *
+ * @author petercipov
+ */
+public class ProbeLoop {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProbeLoop.class);
+	private static final long TICK_MILLIS = 10;
+	private static final int WHEEL_SIZE = 512;
+	private static final int MAX_RESPONSE_BYTES = 1024;
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+	private final TimerWheel wheel;
+	private final AtomicInteger pendingExchanges;
+	private final Thread thread;
+	private volatile boolean running;
+
+	public ProbeLoop(String name) {
+		try {
+			this.selector = Selector.open();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		this.tasks = new ConcurrentLinkedQueue<>();
+		this.wheel = new TimerWheel(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis());
+		this.pendingExchanges = new AtomicInteger();
+		this.running = true;
+		this.thread = new Thread(this::loop, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public static ProbeLoop shared() {
+		return Shared.INSTANCE;
+	}
+
+	/**
+	 * Runs the task on the loop thread.
+	 * @param task
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs the task on the loop thread after the delay.
+	 * @param delayMillis
+	 * @param task
+	 */
+	public void schedule(long delayMillis, Runnable task) {
+		execute(() -> wheel.add(delayMillis, () -> safely(task)));
+	}
+
+	/**
+	 * Connects to the address, writes the request and reads the first bytes
+	 * of the response. Connection is closed afterwards.
+	 * @param address
+	 * @param request bytes to send, if empty only the connection is checked
+	 * @param timeoutMillis
+	 * @return bytes of response read until end of first line, end of stream
+	 * or limit of the buffer
+	 */
+	public Observable<byte[]> exchange(InetSocketAddress address, byte[] request, long timeoutMillis) {
+		return Observable.create(subscriber -> execute(() -> open(new Exchange(subscriber, address, request), timeoutMillis)));
+	}
+
+	public int getPendingExchanges() {
+		return pendingExchanges.get();
+	}
+
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	private void loop() {
+		try {
+			while (running) {
+				selector.select(wheel.millisToNextTick(System.currentTimeMillis()));
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					safely(task);
+				}
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					Exchange exchange = (Exchange) key.attachment();
+					safely(() -> exchange.handle(key));
+				}
+				wheel.advance(System.currentTimeMillis());
+			}
+		} catch (IOException | ClosedSelectorException ex) {
+			running = false;
+		} finally {
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				// nothing more to do
+			}
+		}
+	}
+
+	/**
+	 * Runtime exceptions that escape a task, f.e. thrown by subscriber of
+	 * finished probe, are reported and the loop goes on.
+	 */
+	private static void safely(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Task of readiness loop failed", ex);
+		}
+	}
+
+	private void open(Exchange exchange, long timeoutMillis) {
+		if (exchange.subscriber.isUnsubscribed()) {
+			return;
+		}
+		pendingExchanges.incrementAndGet();
+		try {
+			SocketChannel channel = SocketChannel.open();
+			exchange.channel = channel;
+			channel.configureBlocking(false);
+			if (channel.connect(exchange.address)) {
+				exchange.connected(channel.register(selector, 0, exchange));
+			} else {
+				channel.register(selector, SelectionKey.OP_CONNECT, exchange);
+			}
+			wheel.add(timeoutMillis, () -> safely(() -> exchange.fail(
+				new TimeoutException("Probe of " + exchange.address + " timed out after " + timeoutMillis + "ms")
+			)));
+		} catch (IOException | RuntimeException ex) {
+			exchange.fail(ex);
+		}
+	}
+
+	private class Exchange {
+		private final Subscriber<? super byte[]> subscriber;
+		private final InetSocketAddress address;
+		private final ByteBuffer request;
+		private final ByteArrayOutputStream response;
+		private SocketChannel channel;
+		private boolean done;
+
+		public Exchange(Subscriber<? super byte[]> subscriber, InetSocketAddress address, byte[] request) {
+			this.subscriber = subscriber;
+			this.address = address;
+			this.request = ByteBuffer.wrap(request);
+			this.response = new ByteArrayOutputStream();
+			this.done = false;
+		}
+
+		void handle(SelectionKey key) {
+			try {
+				if (! key.isValid()) {
+					return;
+				}
+				if (key.isConnectable()) {
+					channel.finishConnect();
+					connected(key);
+				} else if (key.isWritable()) {
+					channel.write(request);
+					if (! request.hasRemaining()) {
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				} else if (key.isReadable()) {
+					read();
+				}
+			} catch (IOException ex) {
+				fail(ex);
+			} catch (RuntimeException ex) {
+				if (done) {
+					throw ex;
+				}
+				fail(ex);
+			}
+		}
+
+		void connected(SelectionKey key) {
+			if (request.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			} else {
+				complete();
+			}
+		}
+
+		private void read() throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(MAX_RESPONSE_BYTES - response.size());
+			int read = channel.read(buffer);
+			if (read > 0) {
+				response.write(buffer.array(), 0, read);
+			}
+			if (read < 0 || response.size() >= MAX_RESPONSE_BYTES || hasLine()) {
+				complete();
+			}
+		}
+
+		private boolean hasLine() {
+			byte[] bytes = response.toByteArray();
+			for (byte b : bytes) {
+				if (b == '\n') {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void complete() {
+			if (finish()) {
+				subscriber.onNext(response.toByteArray());
+				subscriber.onCompleted();
+			}
+		}
+
+		void fail(Throwable th) {
+			if (finish()) {
+				subscriber.onError(th);
+			}
+		}
+
+		private boolean finish() {
+			if (done) {
+				return false;
+			}
+			done = true;
+			pendingExchanges.decrementAndGet();
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException ex) {
+					// channel is not used anymore
+				}
+			}
+			return ! subscriber.isUnsubscribed();
+		}
+	}
+
+	private static class Shared {
+		private static final ProbeLoop INSTANCE = new ProbeLoop("mobi-readiness");
+	}
+}
@@ -0,0 +1,92 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.mobi.deployer.Container;
+import com.petercipov.mobi.deployer.RxDocker;
+import com.petercipov.mobi.deployer.RxDocker.PortBinding;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Container being probed together with the means to reach it. Hosts of
+ * published ports are resolved when the target is created, so lookups never
+ * block the probe loop.
+ *
+ * @author petercipov
+ */
+public class ProbeTarget {
+
+	private static final String ANY_ADDRESS = "0.0.0.0";
+
+	private final Container container;
+	private final String publishedHost;
+	private final RxDocker docker;
+	private final ProbeLoop loop;
+	private final long attemptTimeoutMillis;
+	private final Map<String, InetAddress> resolved;
+
+	public ProbeTarget(Container container, String publishedHost, RxDocker docker, ProbeLoop loop, long attemptTimeoutMillis) {
+		this.container = container;
+		this.publishedHost = publishedHost;
+		this.docker = docker;
+		this.loop = loop;
+		this.attemptTimeoutMillis = attemptTimeoutMillis;
+		this.resolved = new HashMap<>();
+		for (List<PortBinding> bindings : container.getPorts().values()) {
+			if (bindings != null && ! bindings.isEmpty()) {
+				resolved.computeIfAbsent(host(bindings.get(0)), ProbeTarget::resolve);
+			}
+		}
+	}
+
+	/**
+	 * @return address of the host, null if it can not be resolved
+	 */
+	private static InetAddress resolve(String host) {
+		InetSocketAddress address = new InetSocketAddress(host, 0);
+		return address.isUnresolved() ? null : address.getAddress();
+	}
+
+	private String host(PortBinding binding) {
+		return binding.hostIp() == null || binding.hostIp().isEmpty() || ANY_ADDRESS.equals(binding.hostIp())
+			? publishedHost
+			: binding.hostIp();
+	}
+
+	/**
+	 * @param portDef f.e. 8080/tcp
+	 * @return address on which the container port is published, unresolved
+	 * when its host could not be resolved
+	 */
+	public InetSocketAddress address(String portDef) {
+		List<PortBinding> bindings = container.getPorts().getOrDefault(portDef, Collections.emptyList());
+		if (bindings == null || bindings.isEmpty()) {
+			throw new IllegalStateException("Port " + portDef + " is not published by container " + container.getContainerId());
+		}
+		PortBinding binding = bindings.get(0);
+		String host = host(binding);
+		InetAddress address = resolved.get(host);
+		return address == null
+			? InetSocketAddress.createUnresolved(host, binding.hostPort())
+			: new InetSocketAddress(address, binding.hostPort());
+	}
+
+	public Container container() {
+		return container;
+	}
+
+	public RxDocker docker() {
+		return docker;
+	}
+
+	public ProbeLoop loop() {
+		return loop;
+	}
+
+	public long attemptTimeoutMillis() {
+		return attemptTimeoutMillis;
+	}
+}
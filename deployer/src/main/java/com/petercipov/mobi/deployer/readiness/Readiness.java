@@ -0,0 +1,81 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.traces.api.Trace;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+
+/**
+ * Waits until all probes of a container pass. Failed attempts are repeated
+ * after an interval scheduled in the timer wheel of the probe loop, so no
+ * thread is blocked while waiting. Result is emitted on another scheduler,
+ * so code of subscribers never runs on the thread of the probe loop.
+ *
+ * @author petercipov
+ */
+public class Readiness {
+
+	private Readiness() {
+	}
+
+	/**
+	 * @param trace
+	 * @param target
+	 * @param probes all have to pass
+	 * @param intervalMillis delay between failed attempt and next one
+	 * @param timeoutMillis maximal time of waiting for all probes
+	 * @return completes when container is ready, fails with TimeoutException
+	 * when it is not ready in time
+	 */
+	public static Observable<Void> await(Trace trace, ProbeTarget target, List<ReadinessProbe> probes, long intervalMillis, long timeoutMillis) {
+		return await(trace, target, probes, intervalMillis, timeoutMillis, Schedulers.computation());
+	}
+
+	/**
+	 * @param trace
+	 * @param target
+	 * @param probes all have to pass
+	 * @param intervalMillis delay between failed attempt and next one
+	 * @param timeoutMillis maximal time of waiting for all probes
+	 * @param scheduler on which the result is emitted
+	 * @return completes when container is ready, fails with TimeoutException
+	 * when it is not ready in time
+	 */
+	public static Observable<Void> await(Trace trace, ProbeTarget target, List<ReadinessProbe> probes, long intervalMillis, long timeoutMillis, Scheduler scheduler) {
+		return Observable.defer(() -> {
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+			return Observable.from(probes)
+				.flatMap(probe -> Observable.<Void>create(subscriber -> 
+					attempt(trace, target, probe, intervalMillis, deadline, subscriber)
+				))
+				.observeOn(scheduler);
+		});
+	}
+
+	private static void attempt(Trace trace, ProbeTarget target, ReadinessProbe probe, long intervalMillis, long deadline, Subscriber<? super Void> subscriber) {
+		if (subscriber.isUnsubscribed()) {
+			return;
+		}
+		probe.check(trace, target)
+			.onErrorReturn(th -> {
+				if (trace.isDebugEnabled()) {
+					trace.event("Readiness: probe attempt failed (probe, container)", probe, target.container().getContainerId(), th);
+				}
+				return false;
+			})
+			.defaultIfEmpty(false)
+			.subscribe(ready -> {
+				if (ready) {
+					trace.event("Readiness: probe passed (probe, container)", probe, target.container().getContainerId());
+					subscriber.onCompleted();
+				} else if (System.currentTimeMillis() + intervalMillis > deadline) {
+					subscriber.onError(new TimeoutException("Container " + target.container().getContainerId() + " is not ready, " + probe + " did not pass in time"));
+				} else {
+					target.loop().schedule(intervalMillis, () -> attempt(trace, target, probe, intervalMillis, deadline, subscriber));
+				}
+			});
+	}
+}
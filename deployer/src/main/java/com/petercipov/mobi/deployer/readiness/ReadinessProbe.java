@@ -0,0 +1,49 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.traces.api.Trace;
+import java.util.regex.Pattern;
+import rx.Observable;
+
+/**
+ * Check whether deployed container is ready to serve. Probe makes a single
+ * attempt, waiting between attempts is driven by {@link Readiness}.
+ *
+ * @author petercipov
+ */
+public interface ReadinessProbe {
+
+	/**
+	 * @param trace
+	 * @param target container being probed
+	 * @return true if container is ready
+	 */
+	Observable<Boolean> check(Trace trace, ProbeTarget target);
+
+	/**
+	 * Container is ready when the published port accepts connections
+	 * @param portDef f.e. 8080/tcp
+	 * @return 
+	 */
+	static ReadinessProbe tcpPort(String portDef) {
+		return new TcpPortProbe(portDef);
+	}
+
+	/**
+	 * Container is ready when GET request on published port returns status 200
+	 * @param portDef f.e. 8080/tcp
+	 * @param path f.e. /health
+	 * @return 
+	 */
+	static ReadinessProbe http(String portDef, String path) {
+		return new HttpProbe(portDef, path);
+	}
+
+	/**
+	 * Container is ready when its log contains line matching the regex
+	 * @param regex
+	 * @return 
+	 */
+	static ReadinessProbe logLine(String regex) {
+		return new LogPatternProbe(Pattern.compile(regex, Pattern.MULTILINE));
+	}
+}
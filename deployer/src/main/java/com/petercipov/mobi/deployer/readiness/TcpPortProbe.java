@@ -0,0 +1,32 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.traces.api.Trace;
+import rx.Observable;
+
+/**
+ *
+ * @author petercipov
+ */
+public class TcpPortProbe implements ReadinessProbe {
+
+	private static final byte[] NO_REQUEST = new byte[0];
+
+	private final String portDef;
+
+	public TcpPortProbe(String portDef) {
+		this.portDef = portDef;
+	}
+
+	@Override
+	public Observable<Boolean> check(Trace trace, ProbeTarget target) {
+		return Observable.defer(() -> target.loop()
+			.exchange(target.address(portDef), NO_REQUEST, target.attemptTimeoutMillis())
+			.map(response -> true)
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "TcpPortProbe(port=" + portDef + ')';
+	}
+}
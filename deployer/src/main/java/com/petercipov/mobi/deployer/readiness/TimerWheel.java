@@ -0,0 +1,86 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel. Not thread safe, it is driven by a single thread that
+ * adds timeouts and advances the wheel.
+ *
+ * @author petercipov
+ */
+class TimerWheel {
+
+	private final long tickMillis;
+	private final List<LinkedList<Timeout>> buckets;
+	private long lastTick;
+	private int cursor;
+	private int size;
+
+	TimerWheel(long tickMillis, int bucketCount, long now) {
+		this.tickMillis = tickMillis;
+		this.buckets = new ArrayList<>(bucketCount);
+		for (int i = 0; i < bucketCount; i++) {
+			buckets.add(new LinkedList<>());
+		}
+		this.lastTick = now;
+		this.cursor = 0;
+		this.size = 0;
+	}
+
+	void add(long delayMillis, Runnable task) {
+		long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+		int bucket = (int) ((cursor + ticks) % buckets.size());
+		long rounds = (ticks - 1) / buckets.size();
+		buckets.get(bucket).add(new Timeout(rounds, task));
+		size++;
+	}
+
+	/**
+	 * Runs all tasks that expired until now.
+	 * @param now current time in millis
+	 */
+	void advance(long now) {
+		while (lastTick + tickMillis <= now) {
+			lastTick += tickMillis;
+			cursor = (cursor + 1) % buckets.size();
+
+			LinkedList<Runnable> expired = new LinkedList<>();
+			Iterator<Timeout> it = buckets.get(cursor).iterator();
+			while (it.hasNext()) {
+				Timeout timeout = it.next();
+				if (timeout.rounds == 0) {
+					it.remove();
+					size--;
+					expired.add(timeout.task);
+				} else {
+					timeout.rounds--;
+				}
+			}
+
+			for (Runnable task : expired) {
+				task.run();
+			}
+		}
+	}
+
+	long millisToNextTick(long now) {
+		return Math.max(1, lastTick + tickMillis - now);
+	}
+
+	int size() {
+		return size;
+	}
+
+	private static class Timeout {
+		private long rounds;
+		private final Runnable task;
+
+		public Timeout(long rounds, Runnable task) {
+			this.rounds = rounds;
+			this.task = task;
+		}
+	}
+}
@@ -42,6 +42,82 @@ public class YamlConfigParserTest {
 		assertEquals(2375, host.getPort());
 	}
 	
+	@Test
+	public void connectionSettingsCanBeSpecified() {
+		MobiConfig config = parser.parse(stream(
+			"---\n" +
+			"api:\n" +
+			"    - type: http\n" +
+			"      host: 192.168.56.101\n" +
+			"      port: 2375\n" +
+			"      maxConnections: 16\n" +
+			"      idleTimeout: 30\n" +
+			"      ioThreads: 4\n" +
+			"    - type: http\n" +
+			"      host: 192.168.56.102\n" +
+			"      port: 2375\n" +
+			"    "
+		));
+		
+		HostSettings settings = config.getApis().get(0).getSettings();
+		assertEquals(16, settings.getMaxConnections());
+		assertEquals(30000, settings.getIdleTimeoutMillis());
+		assertEquals(4, settings.getIoThreads());
+		assertEquals(HostSettings.DEFAULT.getMaxConnections(), config.getApis().get(1).getSettings().getMaxConnections());
+	}
+	
+	@Test
+	public void schedulingOfHostsCanBeSpecified() {
+		MobiConfig config = parser.parse(stream(
+			"---\n" +
+			"scheduler: least-containers\n" +
+			"api:\n" +
+			"    - type: http\n" +
+			"      host: 192.168.56.101\n" +
+			"      port: 2375\n" +
+			"      weight: 2\n" +
+			"      capacity: 20\n" +
+			"    - type: http\n" +
+			"      host: 192.168.56.102\n" +
+			"      port: 2375\n" +
+			"    "
+		));
+		
+		assertEquals(HostSelection.LEAST_CONTAINERS, config.getHostSelection());
+		assertEquals(2, config.getApis().get(0).getSettings().getWeight());
+		assertEquals(20, config.getApis().get(0).getSettings().getCapacity());
+		assertEquals(1, config.getApis().get(1).getSettings().getWeight());
+		assertEquals(0, config.getApis().get(1).getSettings().getCapacity());
+	}
+	
+	@Test
+	public void resourceBudgetCanBeSpecified() {
+		MobiConfig config = parser.parse(stream(
+			"---\n" +
+			"api:\n" +
+			"    - type: http\n" +
+			"      host: 192.168.56.101\n" +
+			"      port: 2375\n" +
+			"      memory: 16g\n" +
+			"      cpuShares: 8192\n" +
+			"    - type: http\n" +
+			"      host: 192.168.56.102\n" +
+			"      port: 2375\n" +
+			"    "
+		));
+		
+		assertEquals(16L << 30, config.getApis().get(0).getSettings().getMemoryBudget());
+		assertEquals(8192, config.getApis().get(0).getSettings().getCpuBudget());
+		assertEquals(0, config.getApis().get(1).getSettings().getMemoryBudget());
+	}
+	
+	@Test
+	public void hostsAreScheduledRoundRobinByDefault() {
+		MobiConfig config = parser.parse(stream(""));
+		
+		assertEquals(HostSelection.ROUND_ROBIN, config.getHostSelection());
+	}
+	
 	@Test(expected = Exception.class)
 	public void typeInApiSpecMandatory() {
 		parser.parse(stream(
@@ -0,0 +1,84 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.config.HttpRestApiHost;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class BlockingDockerTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("cassandra"), "3.0.2");
+
+	private CountDownLatch unsubscribed;
+	private BlockingDocker blocking;
+
+	@Before
+	public void before() {
+		unsubscribed = new CountDownLatch(1);
+		FakeRxDocker docker = new FakeRxDocker() {
+			@Override
+			public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId) {
+				return Observable.<ContainerInfo>never().doOnUnsubscribe(unsubscribed::countDown);
+			}
+		};
+		Deployer deployer = new Deployer(new HttpRestApiHost("localhost", 2375, Optional.empty()), docker, new PullRegistry());
+		blocking = new BlockingDocker(deployer, docker);
+	}
+
+	@Test
+	public void callsReturnPlainValues() {
+		assertEquals(image, blocking.pull(trace, image));
+		assertTrue(blocking.isPresent(trace, image));
+		assertTrue(blocking.listContainerIds(trace, Collections.emptyMap()).isEmpty());
+	}
+
+	@Test
+	public void timedOutCallIsUnsubscribed() throws InterruptedException {
+		blocking.setTimeout(50, TimeUnit.MILLISECONDS);
+		try {
+			blocking.inspectContainer(trace, "a");
+			fail("call should time out");
+		} catch (IllegalStateException ex) {
+			assertTrue(ex.getCause() instanceof TimeoutException);
+		}
+		assertTrue(unsubscribed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void cancelledFutureIsUnsubscribed() throws InterruptedException {
+		CompletableFuture<RxDocker.ContainerInfo> inspection = blocking.inspectContainerAsync(trace, "a");
+		assertEquals(1, unsubscribed.getCount());
+
+		assertTrue(inspection.cancel(true));
+		assertTrue(unsubscribed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void executorRunsTasksOnNamedThreads() throws Exception {
+		ExecutorService executor = VirtualThreads.executor("mobi-test-");
+		try {
+			String name = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+			assertTrue(name.startsWith("mobi-test-"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
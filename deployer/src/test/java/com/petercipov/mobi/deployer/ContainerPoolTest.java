@@ -0,0 +1,91 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.config.HttpRestApiHost;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class ContainerPoolTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("cassandra"), "3.0.2");
+	private final AtomicInteger created = new AtomicInteger();
+
+	private FakeRxDocker docker;
+	private Deployer deployer;
+
+	@Before
+	public void before() {
+		docker = new FakeRxDocker();
+		deployer = new Deployer(new HttpRestApiHost("docker", 2375, Optional.empty()), docker, new PullRegistry(), new ResourceBudget(0, 0));
+	}
+
+	@Test
+	public void returnedContainerIsLeasedAgain() {
+		ContainerPool pool = pool(1, 1);
+
+		Container first = pool.lease(trace).toBlocking().single();
+		pool.release(trace, first);
+		Container second = pool.lease(trace).toBlocking().single();
+
+		assertSame(first, second);
+		assertEquals(2, pool.getHits());
+		assertEquals(1, pool.getSize());
+	}
+
+	@Test
+	public void abandonedLeaseDoesNotTakeContainer() {
+		PublishSubject<String> start = PublishSubject.create();
+		docker.starts.put("c1", start);
+		ContainerPool pool = pool(0, 1);
+
+		Subscription abandoned = pool.lease(trace).subscribe();
+		abandoned.unsubscribe();
+		start.onNext("c1");
+		start.onCompleted();
+
+		assertEquals(1, pool.getIdle());
+		assertEquals("c1", pool.lease(trace).toBlocking().single().getContainerId());
+	}
+
+	@Test
+	public void closeFailsWaitersAndKillsContainers() {
+		ContainerPool pool = pool(1, 1);
+		Container leased = pool.lease(trace).toBlocking().single();
+		TestSubscriber<Container> waiting = new TestSubscriber<>();
+		pool.lease(trace).subscribe(waiting);
+		waiting.assertNoTerminalEvent();
+
+		pool.close(trace);
+		waiting.assertError(IllegalStateException.class);
+
+		pool.release(trace, leased);
+		assertTrue(docker.calls.contains("kill " + leased.getContainerId()));
+		assertEquals(0, pool.getSize());
+	}
+
+	private ContainerPool pool(int minIdle, int maxSize) {
+		PoolSettings settings = new PoolSettings()
+			.setMinIdle(minIdle)
+			.setMaxSize(maxSize)
+			.setRecycler(Observable::just);
+		return new ContainerPool(deployer, image, () -> new FakeDeployment("c" + created.incrementAndGet()), settings, new TestScheduler())
+			.start(trace);
+	}
+}
@@ -0,0 +1,63 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class ContainerReaperTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("cassandra"), "3.0.2");
+
+	private FakeRxDocker docker;
+	private ContainerReaper reaper;
+
+	@Before
+	public void before() {
+		docker = new FakeRxDocker();
+		reaper = new ContainerReaper(docker, 2, 2);
+	}
+
+	@Test
+	public void containersAreStoppedOrKilledAndRemoved() throws InterruptedException {
+		reaper.submit(trace, container("a"), 1);
+		reaper.submit(trace, container("b"), ContainerReaper.KILL);
+		reaper.submit(trace, container("c"), 1);
+
+		assertTrue(reaper.flush(5, TimeUnit.SECONDS));
+		assertEquals(3, reaper.getRemoved());
+		assertTrue(docker.calls.contains("stop a"));
+		assertTrue(docker.calls.contains("kill b"));
+		assertFalse(docker.calls.contains("stop b"));
+		assertTrue(docker.calls.contains("remove c"));
+		assertTrue(reaper.getFailed().isEmpty());
+	}
+
+	@Test
+	public void failedRemovalsAreReported() throws InterruptedException {
+		docker.failingRemovals.add("b");
+
+		reaper.submit(trace, container("a"), 1);
+		reaper.submit(trace, container("b"), 1);
+
+		assertTrue(reaper.flush(5, TimeUnit.SECONDS));
+		assertEquals(1, reaper.getRemoved());
+		assertEquals(1, reaper.getFailed().size());
+		assertEquals("b", reaper.getFailed().get(0).getContainerId());
+	}
+
+	private Container container(String id) {
+		return new Container(id, image, Collections.emptyMap());
+	}
+}
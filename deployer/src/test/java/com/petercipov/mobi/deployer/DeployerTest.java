@@ -0,0 +1,145 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.config.HttpRestApiHost;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.AsyncSubject;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class DeployerTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("cassandra"), "3.0.2");
+
+	private FakeRxDocker docker;
+	private ResourceBudget budget;
+	private Deployer deployer;
+
+	@Before
+	public void before() {
+		docker = new FakeRxDocker();
+		budget = new ResourceBudget(1000, 0);
+		deployer = new Deployer(new HttpRestApiHost("docker", 2375, Optional.empty()), docker, new PullRegistry(), budget);
+	}
+
+	@Test
+	public void failedBatchRemovesContainersStillInFlight() {
+		FakeDeployment waiting = new FakeDeployment("waiting");
+		waiting.waitFor((t, target) -> Observable.never());
+		docker.starts.put("starting", Observable.never());
+		docker.starts.put("failing", Observable.error(new IllegalStateException("port is already allocated")));
+
+		TestSubscriber<Container> subscriber = new TestSubscriber<>();
+		deployer.deployAll(trace, Arrays.asList(
+			deployment(waiting),
+			deployment(new FakeDeployment("starting")),
+			deployment(new FakeDeployment("failing"))
+		)).subscribe(subscriber);
+
+		subscriber.assertNoValues();
+		subscriber.assertError(IllegalStateException.class);
+		for (String id : Arrays.asList("waiting", "starting", "failing")) {
+			assertTrue(id, docker.calls.contains("kill " + id));
+			assertTrue(id, docker.calls.contains("remove " + id));
+		}
+		assertEquals(0, budget.getReservedMemory());
+	}
+
+	@Test
+	public void batchEmitsReadyContainers() {
+		TestSubscriber<Container> subscriber = new TestSubscriber<>();
+		deployer.deployAll(trace, Arrays.asList(
+			deployment(new FakeDeployment("a")),
+			deployment(new FakeDeployment("b"))
+		)).subscribe(subscriber);
+
+		subscriber.assertCompleted();
+		assertEquals(2, subscriber.getOnNextEvents().size());
+		assertEquals(200, budget.getReservedMemory());
+		assertFalse(docker.calls.stream().anyMatch(call -> call.startsWith("kill")));
+	}
+
+	@Test
+	public void reusedContainerKeepsReservationUntilDiscarded() throws Exception {
+		ContainerReuse reuse = new ContainerReuse(() -> docker);
+		deployer.enableReuse(reuse);
+		FakeDeployment options = new FakeDeployment("reused");
+		options.setMemory(100);
+
+		Container container = deployer.deploy(trace, image, options).toBlocking().single();
+		deployer.close(trace);
+
+		assertFalse(docker.calls.contains("kill reused"));
+		assertEquals(100, budget.getReservedMemory());
+
+		reuse.discard(container);
+		assertEquals(0, budget.getReservedMemory());
+	}
+
+	@Test
+	public void abandonedVerificationReleasesReusableContainer() {
+		FakeRxDocker verifying = new FakeRxDocker() {
+			@Override
+			public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId) {
+				return Observable.never();
+			}
+		};
+		ContainerReuse reuse = new ContainerReuse(() -> verifying);
+		Deployer reusing = new Deployer(new HttpRestApiHost("docker", 2375, Optional.empty()), verifying, new PullRegistry(), budget)
+			.enableReuse(reuse);
+		FakeDeployment options = new FakeDeployment("reused");
+		String hash = options.specHash(image);
+		Container idle = new Container("reused", image, Collections.emptyMap(), null);
+		reuse.register(hash, idle, null);
+		reuse.release(idle);
+
+		reusing.deploy(trace, image, options).subscribe().unsubscribe();
+
+		assertEquals(Optional.of(idle), reuse.acquire(hash));
+	}
+
+	@Test
+	public void containerHandedOverToReaperKeepsReservationUntilRemoved() throws Exception {
+		AsyncSubject<String> removal = AsyncSubject.create();
+		FakeRxDocker removing = new FakeRxDocker() {
+			@Override
+			public Observable<String> removeContainer(Trace trace, String containerId) {
+				return removal;
+			}
+		};
+		ContainerReaper reaper = new ContainerReaper(removing, 1, 1);
+		Deployer reaping = new Deployer(new HttpRestApiHost("docker", 2375, Optional.empty()), removing, new PullRegistry(), budget)
+			.enableReaper(reaper);
+		FakeDeployment options = new FakeDeployment("reaped");
+		options.setMemory(100);
+
+		Container container = reaping.deploy(trace, image, options).toBlocking().single();
+		reaping.killContainer(trace, container).toBlocking().single();
+		assertEquals(100, budget.getReservedMemory());
+
+		removal.onNext("reaped");
+		removal.onCompleted();
+		assertTrue(reaper.flush(5, TimeUnit.SECONDS));
+		assertEquals(0, budget.getReservedMemory());
+	}
+
+	private Deployment deployment(FakeDeployment options) {
+		options.setMemory(100);
+		return new Deployment(image, options);
+	}
+}
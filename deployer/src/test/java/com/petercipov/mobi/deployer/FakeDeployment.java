@@ -0,0 +1,245 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.traces.api.Trace;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import rx.Observable;
+
+/**
+ * Deployment whose container id is its name, used by unit tests.
+ *
+ * @author petercipov
+ */
+public class FakeDeployment extends RxDeployment {
+
+	final Map<String, String> labels = new HashMap<>();
+	final List<String> env = new LinkedList<>();
+	private Observable<String> creation;
+	private long memory;
+	private long cpuShares;
+
+	public FakeDeployment(String name) {
+		setName(name);
+		this.creation = Observable.just(name);
+	}
+
+	private FakeDeployment(FakeDeployment other) {
+		super(other);
+		this.labels.putAll(other.labels);
+		this.env.addAll(other.env);
+		this.creation = other.creation;
+		this.memory = other.memory;
+		this.cpuShares = other.cpuShares;
+	}
+
+	@Override
+	public RxDeployment copy() {
+		return new FakeDeployment(this);
+	}
+
+	/**
+	 * @param creation emits id of created container
+	 * @return 
+	 */
+	public FakeDeployment creating(Observable<String> creation) {
+		this.creation = creation;
+		return this;
+	}
+
+	@Override
+	protected Observable<String> createContainer(Trace trace, Instance image) {
+		return creation;
+	}
+
+	@Override
+	public RxDeployment addLabel(String key, String value) {
+		labels.put(key, value);
+		return this;
+	}
+
+	@Override
+	public RxDeployment setMemory(long memory) {
+		this.memory = memory;
+		return this;
+	}
+
+	@Override
+	public RxDeployment setMemory(long memory, long swap) {
+		return setMemory(memory);
+	}
+
+	@Override
+	public RxDeployment setCpuShares(long shares) {
+		this.cpuShares = shares;
+		return this;
+	}
+
+	@Override
+	public long memory() {
+		return memory;
+	}
+
+	@Override
+	public long cpuShares() {
+		return cpuShares;
+	}
+
+	@Override
+	public String specHash(Instance image) {
+		return image + "/" + name.orElse("");
+	}
+
+	@Override
+	public RxDeployment addVolumes(Iterable<String> volumeBindings) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addVolume(String hostPath, String containerPath) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addEnv(String variable) {
+		env.add(variable);
+		return this;
+	}
+
+	@Override
+	public RxDeployment addEnv(String name, String value) {
+		return addEnv(name + "=" + value);
+	}
+
+	@Override
+	public RxDeployment addPortMapping(String port, int customPort) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setPublishAllPorts(boolean publish) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment publishAllPorts() {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setCmd(String ... cmd) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setCpuQuota(long quota) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setDomainName(String name) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setEntryPoint(String ... entry) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addExposedPort(String port) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setHostName(String hostName) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setMacAdress(String mac) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setNetworkDisabled(boolean disabled) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setOpenStdIn(boolean open) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setStdInOnce(boolean once) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setTty(boolean enabled) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setUser(String user) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setWorkDir(String workDir) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setCgroupParent(String parent) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addDns(String ... dns) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addDnsSearch(String ... dns) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addExtraHosts(String ... hosts) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addLinks(String ... links) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addLxcParameter(String key, String value) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setNetworkMode(String mode) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment setPrivileged(boolean privileged) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addSecurityOpt(String ... opts) {
+		return this;
+	}
+
+	@Override
+	public RxDeployment addVolumeFrom(String ... volumes) {
+		return this;
+	}
+}
@@ -0,0 +1,173 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.traces.api.Trace;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import rx.Observable;
+
+/**
+ * Docker that only records calls, used by unit tests.
+ *
+ * @author petercipov
+ */
+public class FakeRxDocker implements RxDocker {
+
+	final List<String> calls = new CopyOnWriteArrayList<>();
+	final Set<String> failingRemovals = ConcurrentHashMap.newKeySet();
+	final Map<String, Observable<String>> starts = new ConcurrentHashMap<>();
+	final Map<String, Observable<String>> kills = new ConcurrentHashMap<>();
+	final Map<String, ContainerInfo> inspections = new ConcurrentHashMap<>();
+
+	@Override
+	public RxDeployment deployment() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Observable<Instance> pull(Trace trace, Instance image) {
+		return record("pull", image.toString(), image);
+	}
+
+	@Override
+	public Observable<Boolean> isPresent(Trace trace, Instance image) {
+		return record("isPresent", image.toString(), true);
+	}
+
+	@Override
+	public Observable<String> startContainer(Trace trace, String containerId) {
+		Observable<String> start = starts.get(containerId);
+		if (start != null) {
+			return Observable.defer(() -> {
+				calls.add("start " + containerId);
+				return start;
+			});
+		}
+		return record("start", containerId, containerId);
+	}
+
+	@Override
+	public Observable<String> killContainer(Trace trace, String containerId) {
+		Observable<String> kill = kills.get(containerId);
+		if (kill != null) {
+			return Observable.defer(() -> {
+				calls.add("kill " + containerId);
+				return kill;
+			});
+		}
+		return record("kill", containerId, containerId);
+	}
+
+	@Override
+	public Observable<String> stopContainer(Trace trace, String containerId, int secondsBeforeFail) {
+		return record("stop", containerId, containerId);
+	}
+
+	@Override
+	public Observable<String> removeContainer(Trace trace, String containerId) {
+		if (failingRemovals.contains(containerId)) {
+			return Observable.defer(() -> {
+				calls.add("remove " + containerId);
+				return Observable.error(new IllegalStateException("removal failed " + containerId));
+			});
+		}
+		return record("remove", containerId, containerId);
+	}
+
+	@Override
+	public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId) {
+		return record("inspect", containerId, inspections.getOrDefault(containerId, running(containerId)));
+	}
+
+	@Override
+	public Observable<String> listContainerIds(Trace trace, Map<String, String> labels) {
+		return Observable.empty();
+	}
+
+	@Override
+	public Observable<String> logs(Trace trace, String containerId) {
+		return record("logs", containerId, "");
+	}
+
+	@Override
+	public Observable<String> logStream(Trace trace, String containerId, boolean follow) {
+		return record("logStream", containerId, "");
+	}
+
+	@Override
+	public Observable<DockerEvent> events(Trace trace, Map<String, List<String>> filters) {
+		return Observable.never();
+	}
+
+	@Override
+	public int status(Throwable th) {
+		return th instanceof Answer ? ((Answer) th).status : 0;
+	}
+
+	@Override
+	public void close(Trace trace) {
+	}
+
+	/**
+	 * @param containerId
+	 * @param labels
+	 * @return inspection of running container with labels
+	 */
+	static ContainerInfo running(String containerId, Map<String, String> labels) {
+		ContainerInfo running = running(containerId);
+		ContainerConfig config = proxy(ContainerConfig.class, "labels", labels);
+		return (ContainerInfo) Proxy.newProxyInstance(ContainerInfo.class.getClassLoader(), new Class<?>[] {ContainerInfo.class},
+			(instance, called, args) -> called.getName().equals("config") ? config : called.invoke(running, args)
+		);
+	}
+
+	/**
+	 * @param containerId
+	 * @return inspection of running container without published ports
+	 */
+	static ContainerInfo running(String containerId) {
+		ContainerState state = proxy(ContainerState.class, "running", Boolean.TRUE);
+		NetworkSettings network = proxy(NetworkSettings.class, "ports", Collections.emptyMap());
+		return (ContainerInfo) Proxy.newProxyInstance(ContainerInfo.class.getClassLoader(), new Class<?>[] {ContainerInfo.class},
+			(instance, called, args) -> {
+				switch (called.getName()) {
+					case "id": return containerId;
+					case "state": return state;
+					case "networkSettings": return network;
+					default: return null;
+				}
+			}
+		);
+	}
+
+	private static <T> T proxy(Class<T> type, String method, Object value) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+			(instance, called, args) -> called.getName().equals(method) ? value : null
+		));
+	}
+
+	/**
+	 * Error answer of the daemon
+	 */
+	static class Answer extends IllegalStateException {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		Answer(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private <T> Observable<T> record(String call, String argument, T result) {
+		return Observable.defer(() -> {
+			calls.add(call + " " + argument);
+			return Observable.just(result);
+		});
+	}
+}
@@ -0,0 +1,112 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.config.ApiHost;
+import com.petercipov.mobi.config.HostSelection;
+import com.petercipov.mobi.config.HostSettings;
+import com.petercipov.mobi.config.HttpRestApiHost;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import org.junit.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class HostSchedulerTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+
+	@Test
+	public void hostsTakeTurnsByWeight() {
+		ApiHost light = host("a", 1, 0);
+		ApiHost heavy = host("b", 3, 0);
+		HostScheduler scheduler = scheduler(HostSelection.ROUND_ROBIN, api -> new FakeRxDocker(), light, heavy);
+
+		Map<ApiHost, Integer> turns = new HashMap<>();
+		for (int i = 0; i < 8; i++) {
+			turns.merge(scheduler.select(trace).toBlocking().single(), 1, Integer::sum);
+		}
+		assertEquals(2, (int) turns.get(light));
+		assertEquals(6, (int) turns.get(heavy));
+	}
+
+	@Test
+	public void hostsAtCapacityOrUnreachableAreNotChosen() {
+		ApiHost full = host("full", 1, 2);
+		ApiHost unreachable = host("unreachable", 1, 0);
+		ApiHost busy = host("busy", 1, 0);
+		HostScheduler scheduler = scheduler(HostSelection.LEAST_CONTAINERS, api -> {
+			if (api == unreachable) {
+				return new RunningContainers(-1);
+			}
+			return new RunningContainers(api == full ? 2 : 5);
+		}, full, unreachable, busy);
+
+		for (int i = 0; i < 10; i++) {
+			assertSame(busy, scheduler.select(trace).toBlocking().single());
+		}
+	}
+
+	@Test
+	public void hostsWithExhaustedBudgetAreSkipped() {
+		ApiHost exhausted = new HttpRestApiHost("exhausted", 2375, Optional.empty(), new HostSettings(8, 1000, 1, 1, 0, 100, 0));
+		ApiHost free = host("free", 1, 0);
+		ResourceBudget budget = ResourceBudget.forHost(exhausted);
+		budget.reserve(trace, 100, 0).subscribe();
+		budget.reserve(trace, 100, 0).subscribe();
+		HostScheduler scheduler = scheduler(HostSelection.ROUND_ROBIN, api -> new FakeRxDocker(), exhausted, free);
+
+		for (int i = 0; i < 4; i++) {
+			assertSame(free, scheduler.select(trace).toBlocking().single());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void selectionFailsWhenNoHostCanBeChosen() {
+		ApiHost full = host("full", 1, 1);
+		scheduler(HostSelection.LEAST_MEMORY, api -> new RunningContainers(1), full)
+			.select(trace).toBlocking().single();
+	}
+
+	private static HostScheduler scheduler(HostSelection selection, Function<ApiHost, RxDocker> dockers, ApiHost ... apis) {
+		return new HostScheduler(Arrays.asList(apis), selection, dockers, Schedulers.immediate(), HostScheduler.DEFAULT_PING_PERIOD_MILLIS);
+	}
+
+	private static ApiHost host(String name, int weight, int capacity) {
+		return new HttpRestApiHost(name, 2375, Optional.empty(), new HostSettings(8, 1000, 1, weight, capacity));
+	}
+
+	private static class RunningContainers extends FakeRxDocker {
+		private final int count;
+
+		RunningContainers(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public Observable<String> listContainerIds(Trace trace, Map<String, String> labels) {
+			if (count < 0) {
+				return Observable.error(new IllegalStateException("host is down"));
+			}
+			String[] ids = new String[count];
+			for (int i = 0; i < count; i++) {
+				ids[i] = "c" + i;
+			}
+			return Observable.from(ids);
+		}
+
+		@Override
+		public Observable<ContainerInfo> inspectContainer(Trace trace, String containerId, Set<InspectSection> sections) {
+			return Observable.just(running(containerId));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.petercipov.mobi.deployer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class JsonDockerEventTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void legacyEventIsDecoded() throws IOException {
+		RxDocker.DockerEvent event = event("{\"status\":\"die\",\"id\":\"abc\",\"from\":\"cassandra:3.0.2\",\"time\":1450000000}");
+
+		assertEquals("container", event.type());
+		assertEquals("die", event.action());
+		assertEquals("abc", event.id());
+		assertEquals("cassandra:3.0.2", event.from());
+		assertEquals(1450000000000L, event.timeMillis());
+		assertEquals(Collections.emptyMap(), event.attributes());
+	}
+
+	@Test
+	public void legacyImageEventHasNoImage() throws IOException {
+		RxDocker.DockerEvent event = event("{\"status\":\"pull\",\"id\":\"cassandra:3.0.2\",\"time\":1450000000}");
+
+		assertEquals("image", event.type());
+		assertEquals("pull", event.action());
+		assertNull(event.from());
+	}
+
+	@Test
+	public void currentEventIsDecoded() throws IOException {
+		RxDocker.DockerEvent event = event("{\"Type\":\"container\",\"Action\":\"oom\","
+			+ "\"Actor\":{\"ID\":\"abc\",\"Attributes\":{\"image\":\"cassandra:3.0.2\",\"mobi.deployer\":\"d1\"}},"
+			+ "\"time\":1450000000,\"timeNano\":1450000000123456789}");
+
+		assertEquals("container", event.type());
+		assertEquals("oom", event.action());
+		assertEquals("abc", event.id());
+		assertEquals("cassandra:3.0.2", event.from());
+		assertEquals(1450000000123L, event.timeMillis());
+		assertEquals("d1", event.attributes().get("mobi.deployer"));
+	}
+
+	private RxDocker.DockerEvent event(String json) throws IOException {
+		return new JsonDockerEvent(mapper.readTree(json));
+	}
+}
@@ -0,0 +1,84 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ *
+ * @author petercipov
+ */
+public class PullRegistryTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("cassandra"), "3.0.2");
+
+	private PullRegistry registry;
+	private AtomicInteger pulls;
+	private PublishSubject<Instance> daemon;
+
+	@Before
+	public void before() {
+		registry = new PullRegistry();
+		pulls = new AtomicInteger();
+		daemon = PublishSubject.create();
+	}
+
+	@Test
+	public void concurrentPullsOfSameImageAreCoalesced() {
+		TestSubscriber<Instance> first = new TestSubscriber<>();
+		TestSubscriber<Instance> second = new TestSubscriber<>();
+
+		pull().subscribe(first);
+		pull().subscribe(second);
+
+		daemon.onNext(image);
+		daemon.onCompleted();
+
+		first.assertValue(image);
+		second.assertValue(image);
+		assertEquals(1, pulls.get());
+		assertEquals(1, registry.getStartedPulls());
+		assertEquals(1, registry.getCoalescedPulls());
+		assertEquals(0, registry.getPullsInFlight());
+	}
+
+	@Test
+	public void failedPullIsPropagatedToAllSubscribersAndCanBeRetried() {
+		TestSubscriber<Instance> first = new TestSubscriber<>();
+		TestSubscriber<Instance> second = new TestSubscriber<>();
+
+		pull().subscribe(first);
+		pull().subscribe(second);
+		daemon.onError(new IllegalStateException("pull failed"));
+
+		first.assertError(IllegalStateException.class);
+		second.assertError(IllegalStateException.class);
+		assertEquals(0, registry.getPullsInFlight());
+
+		daemon = PublishSubject.create();
+		TestSubscriber<Instance> retry = new TestSubscriber<>();
+		pull().subscribe(retry);
+		daemon.onNext(image);
+		daemon.onCompleted();
+
+		retry.assertValue(image);
+		assertEquals(2, pulls.get());
+	}
+
+	private Observable<Instance> pull() {
+		return registry.pull(trace, image, () -> {
+			pulls.incrementAndGet();
+			return daemon;
+		});
+	}
+}
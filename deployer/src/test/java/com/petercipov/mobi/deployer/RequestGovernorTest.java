@@ -0,0 +1,149 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.deployer.RequestGovernor.Lane;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class RequestGovernorTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final List<String> started = new ArrayList<>();
+
+	@Test
+	public void callsOverLimitOfLaneWait() {
+		RequestGovernor governor = governor(4, 1);
+		PublishSubject<String> first = PublishSubject.create();
+
+		governor.govern(trace, Lane.DEPLOY, call("deploy 1", first)).subscribe();
+		governor.govern(trace, Lane.DEPLOY, call("deploy 2", Observable.just("b"))).subscribe();
+		governor.govern(trace, Lane.INSPECT, call("inspect", Observable.just("c"))).subscribe();
+		assertEquals(2, started.size());
+		assertEquals(1, governor.getWaiting());
+
+		first.onCompleted();
+		assertEquals(3, started.size());
+		assertEquals("deploy 2", started.get(2));
+		assertEquals(0, governor.getInFlight());
+		assertEquals(2, governor.getCalls(Lane.DEPLOY));
+	}
+
+	@Test
+	public void freedPermitGoesToCriticalLaneFirst() {
+		RequestGovernor governor = governor(1, 1);
+		PublishSubject<String> blocking = PublishSubject.create();
+
+		governor.govern(trace, Lane.INSPECT, call("inspect", blocking)).subscribe();
+		governor.govern(trace, Lane.TEARDOWN, call("kill", Observable.just("a"))).subscribe();
+		governor.govern(trace, Lane.PULL, call("pull", Observable.just("b"))).subscribe();
+
+		blocking.onCompleted();
+		assertEquals("pull", started.get(1));
+		assertEquals("kill", started.get(2));
+	}
+
+	@Test
+	public void unsubscribedWaiterReleasesNoPermit() {
+		RequestGovernor governor = governor(1, 1);
+		PublishSubject<String> blocking = PublishSubject.create();
+
+		Subscription running = governor.govern(trace, Lane.INSPECT, call("inspect", blocking)).subscribe();
+		Subscription waiting = governor.govern(trace, Lane.DEPLOY, call("deploy", Observable.just("a"))).subscribe();
+		waiting.unsubscribe();
+		assertEquals(0, governor.getWaiting());
+		assertEquals(1, governor.getInFlight());
+
+		running.unsubscribe();
+		assertEquals(0, governor.getInFlight());
+		assertEquals(1, started.size());
+	}
+
+	@Test
+	public void unsubscribedSubscriberTakesNoPermit() {
+		RequestGovernor governor = governor(1, 1);
+		PublishSubject<String> blocking = PublishSubject.create();
+		governor.govern(trace, Lane.INSPECT, call("inspect", blocking)).subscribe();
+
+		TestSubscriber<String> gone = new TestSubscriber<>();
+		gone.unsubscribe();
+		governor.govern(trace, Lane.DEPLOY, call("deploy", Observable.just("a"))).subscribe(gone);
+		assertEquals(1, governor.getInFlight());
+		assertEquals(0, governor.getWaiting());
+		assertEquals(0, governor.getCalls(Lane.DEPLOY));
+
+		blocking.onCompleted();
+		assertEquals(0, governor.getInFlight());
+		assertEquals(1, started.size());
+	}
+
+	@Test
+	public void adaptiveLimitGrowsWhileLatencyIsStable() {
+		ConcurrencyLimit limit = ConcurrencyLimit.adaptive(4, 1, 16);
+		for (int i = 0; i < 200; i++) {
+			limit.onSample(Lane.INSPECT, 1_000_000, false, limit.get());
+		}
+		assertEquals(16, limit.get());
+
+		limit.onSample(Lane.INSPECT, 1_000_000, false, 0);
+		assertEquals(16, limit.get());
+	}
+
+	@Test
+	public void adaptiveLimitBacksOffOnLatencyAndErrors() {
+		ConcurrencyLimit limit = ConcurrencyLimit.adaptive(10, 1, 10);
+		for (int i = 0; i < 40; i++) {
+			limit.onSample(Lane.DEPLOY, 1_000_000, false, 10);
+		}
+		assertEquals(10, limit.get());
+		for (int i = 0; i < 40; i++) {
+			limit.onSample(Lane.DEPLOY, 5_000_000, false, 10);
+		}
+		assertEquals(9, limit.get());
+
+		limit.onSample(Lane.TEARDOWN, 1_000_000, true, 10);
+		assertEquals(6, limit.get());
+	}
+
+	@Test
+	public void failedCallsOfIoShrinkLimitOfGovernor() {
+		Map<Lane, Integer> limits = new EnumMap<>(Lane.class);
+		for (Lane lane : Lane.values()) {
+			limits.put(lane, 8);
+		}
+		RequestGovernor governor = new RequestGovernor(ConcurrencyLimit.adaptive(8, 1, 8), limits);
+		governor.govern(trace, Lane.INSPECT, Observable.error(new IllegalStateException(new IOException("reset")))).subscribe(v -> {}, th -> {});
+		assertEquals(5, governor.getLimit());
+
+		governor.govern(trace, Lane.INSPECT, Observable.error(new IllegalStateException("no such container"))).subscribe(v -> {}, th -> {});
+		assertEquals(5, governor.getLimit());
+	}
+
+	private Observable<String> call(String name, Observable<String> result) {
+		return Observable.defer(() -> {
+			started.add(name);
+			return result;
+		});
+	}
+
+	private static RequestGovernor governor(int maxInFlight, int laneLimit) {
+		Map<Lane, Integer> limits = new EnumMap<>(Lane.class);
+		for (Lane lane : Lane.values()) {
+			limits.put(lane, laneLimit);
+		}
+		return new RequestGovernor(maxInFlight, limits);
+	}
+}
@@ -0,0 +1,67 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import org.junit.Test;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class ResourceBudgetTest {
+
+	private final Trace trace = NoopTrace.INSTANCE;
+
+	@Test
+	public void reservationOverBudgetWaitsForRelease() {
+		ResourceBudget budget = new ResourceBudget(1024, 0);
+		TestSubscriber<ResourceBudget.Reservation> first = new TestSubscriber<>();
+		TestSubscriber<ResourceBudget.Reservation> second = new TestSubscriber<>();
+
+		budget.reserve(trace, 768, 512).subscribe(first);
+		budget.reserve(trace, 512, 0).subscribe(second);
+		first.assertValueCount(1);
+		second.assertValueCount(0);
+		assertEquals(1, budget.getWaiting());
+
+		first.getOnNextEvents().get(0).release();
+		second.assertValueCount(1);
+		assertEquals(512, budget.getReservedMemory());
+	}
+
+	@Test
+	public void waitingReservationBlocksLaterOnesUntilWithdrawn() {
+		ResourceBudget budget = new ResourceBudget(0, 100);
+		TestSubscriber<ResourceBudget.Reservation> later = new TestSubscriber<>();
+
+		budget.reserve(trace, 0, 60).subscribe();
+		Subscription large = budget.reserve(trace, 0, 80).subscribe();
+		budget.reserve(trace, 0, 20).subscribe(later);
+		later.assertValueCount(0);
+
+		large.unsubscribe();
+		later.assertValueCount(1);
+		assertEquals(80, budget.getReservedCpuShares());
+	}
+
+	@Test
+	public void emptyReservationIsNotDelayed() {
+		ResourceBudget budget = new ResourceBudget(100, 0);
+		budget.reserve(trace, 100, 0).subscribe();
+		budget.reserve(trace, 50, 0).subscribe();
+
+		TestSubscriber<ResourceBudget.Reservation> empty = new TestSubscriber<>();
+		budget.reserve(trace, 0, 0).subscribe(empty);
+		empty.assertValueCount(1);
+	}
+
+	@Test
+	public void reservationOverWholeBudgetFails() {
+		TestSubscriber<ResourceBudget.Reservation> subscriber = new TestSubscriber<>();
+		new ResourceBudget(100, 0).reserve(trace, 101, 0).subscribe(subscriber);
+		subscriber.assertError(IllegalStateException.class);
+	}
+}
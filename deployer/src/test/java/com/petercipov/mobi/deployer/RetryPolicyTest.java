@@ -0,0 +1,204 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.deployer.RetryPolicy.Operation;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class RetryPolicyTest {
+
+	private static final Predicate<Throwable> IO = th -> th instanceof IOException;
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private TestScheduler scheduler;
+	private RetryPolicy policy;
+	private AtomicInteger attempts;
+
+	@Before
+	public void before() {
+		scheduler = new TestScheduler();
+		policy = new RetryPolicy(scheduler);
+		attempts = new AtomicInteger();
+	}
+
+	@Test
+	public void transientFailureIsRetriedAfterBackoff() {
+		TestSubscriber<String> subscriber = new TestSubscriber<>();
+		policy.retry(trace, Operation.READ, IO, failing(2, "ok")).subscribe(subscriber);
+		assertEquals(1, attempts.get());
+
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		subscriber.assertValue("ok");
+		assertEquals(3, attempts.get());
+		assertEquals(2, policy.getRetries(Operation.READ));
+	}
+
+	@Test
+	public void attemptsOfOperationAreLimited() {
+		TestSubscriber<String> subscriber = new TestSubscriber<>();
+		policy.retry(trace, Operation.CREATE, IO, failing(5, "ok")).subscribe(subscriber);
+
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+		subscriber.assertError(IOException.class);
+		assertEquals(Operation.CREATE.getAttempts(), attempts.get());
+	}
+
+	@Test
+	public void answerOfDaemonIsNotRetried() {
+		TestSubscriber<String> subscriber = new TestSubscriber<>();
+		policy.retry(trace, Operation.READ, IO, Observable.<String>error(new IllegalStateException("no such container"))).subscribe(subscriber);
+
+		subscriber.assertError(IllegalStateException.class);
+		assertEquals(0, policy.getRetries(Operation.READ));
+	}
+
+	@Test
+	public void streamIsNotRepeatedAfterItEmitted() {
+		TestSubscriber<String> subscriber = new TestSubscriber<>();
+		Observable<String> stream = Observable.defer(() -> {
+			attempts.incrementAndGet();
+			return Observable.just("a").concatWith(Observable.error(new IOException("reset")));
+		});
+		policy.retry(trace, Operation.READ, IO, stream).subscribe(subscriber);
+
+		subscriber.assertValue("a");
+		subscriber.assertError(IOException.class);
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void exhaustedBudgetStopsRetries() {
+		for (int i = 0; i < 20; i++) {
+			policy.retry(trace, Operation.CHANGE, IO, Observable.<String>error(new IOException("down"))).subscribe(v -> {}, th -> {});
+			scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+		}
+		assertEquals(10, policy.getRetries(Operation.CHANGE));
+		assertTrue(policy.getExhausted(Operation.CHANGE) > 0);
+		assertEquals(0, policy.getBudget(), 0.001);
+	}
+
+	@Test
+	public void namedContainerIsNotCreatedAgainWhenItFailedToStart() {
+		FakeRxDocker docker = new FakeRxDocker();
+		docker.starts.put("named", Observable.error(new IOException("port is already allocated")));
+		FakeDeployment deployment = new FakeDeployment("named");
+		deployment.creating(failing(0, "named"));
+		GovernedRxDocker governed = new GovernedRxDocker(docker, RequestGovernor.withDefaults(8), policy);
+
+		TestSubscriber<RxDocker.ContainerInfo> subscriber = new TestSubscriber<>();
+		governed.createAndStart(trace, null, deployment).subscribe(subscriber);
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+		subscriber.assertError(IOException.class);
+		assertEquals(1, attempts.get());
+		assertEquals(0, policy.getRetries(Operation.CREATE));
+		assertTrue(docker.calls.toString(), docker.calls.contains("kill named"));
+		assertTrue(docker.calls.toString(), docker.calls.contains("remove named"));
+	}
+
+	@Test
+	public void creationOfNamedContainerIsRetried() {
+		FakeRxDocker docker = new FakeRxDocker();
+		FakeDeployment deployment = new FakeDeployment("named");
+		deployment.creating(failing(1, "named"));
+		GovernedRxDocker governed = new GovernedRxDocker(docker, RequestGovernor.withDefaults(8), policy);
+
+		TestSubscriber<RxDocker.ContainerInfo> subscriber = new TestSubscriber<>();
+		governed.createAndStart(trace, null, deployment).subscribe(subscriber);
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+		subscriber.assertCompleted();
+		assertEquals(2, attempts.get());
+		assertEquals(1, policy.getRetries(Operation.CREATE));
+	}
+
+	@Test
+	public void repeatedKillRefusedAfterTheFirstWentThroughIsDone() {
+		FakeRxDocker docker = new FakeRxDocker();
+		docker.kills.put("killed", Observable.defer(() -> attempts.incrementAndGet() == 1
+			? Observable.<String>error(new IOException("response lost"))
+			: Observable.<String>error(new FakeRxDocker.Answer(409, "container is not running"))
+		));
+		GovernedRxDocker governed = new GovernedRxDocker(docker, RequestGovernor.withDefaults(8), policy);
+
+		TestSubscriber<String> subscriber = new TestSubscriber<>();
+		governed.killContainer(trace, "killed").subscribe(subscriber);
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+		subscriber.assertValue("killed");
+		subscriber.assertCompleted();
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	public void refusalOfTheFirstChangeIsNotDone() {
+		FakeRxDocker docker = new FakeRxDocker();
+		docker.kills.put("stopped", Observable.error(new FakeRxDocker.Answer(409, "container is not running")));
+		GovernedRxDocker governed = new GovernedRxDocker(docker, RequestGovernor.withDefaults(8), policy);
+
+		TestSubscriber<String> subscriber = new TestSubscriber<>();
+		governed.killContainer(trace, "stopped").subscribe(subscriber);
+
+		subscriber.assertError(FakeRxDocker.Answer.class);
+	}
+
+	@Test
+	public void containerOfLostCreationIsAdopted() {
+		FakeRxDocker docker = new FakeRxDocker();
+		FakeDeployment deployment = new FakeDeployment("named");
+		deployment.creating(Observable.defer(() -> attempts.incrementAndGet() == 1
+			? Observable.<String>error(new IOException("response lost"))
+			: Observable.<String>error(new FakeRxDocker.Answer(409, "name is already in use"))
+		));
+		GovernedRxDocker governed = new GovernedRxDocker(docker, RequestGovernor.withDefaults(8), policy);
+
+		TestSubscriber<RxDocker.ContainerInfo> subscriber = new TestSubscriber<>();
+		governed.createAndStart(trace, null, deployment).subscribe(subscriber);
+		docker.inspections.put("named", FakeRxDocker.running("c0ffee", deployment.labels));
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+		subscriber.assertCompleted();
+		assertEquals("c0ffee", subscriber.getOnNextEvents().get(0).id());
+		assertTrue(docker.calls.toString(), docker.calls.contains("start c0ffee"));
+	}
+
+	@Test
+	public void conflictWithForeignContainerFailsCreation() {
+		FakeRxDocker docker = new FakeRxDocker();
+		FakeDeployment deployment = new FakeDeployment("named");
+		deployment.creating(Observable.defer(() -> attempts.incrementAndGet() == 1
+			? Observable.<String>error(new IOException("response lost"))
+			: Observable.<String>error(new FakeRxDocker.Answer(409, "name is already in use"))
+		));
+		docker.inspections.put("named", FakeRxDocker.running("foreign", Collections.singletonMap(GovernedRxDocker.CREATION_LABEL, "other")));
+		GovernedRxDocker governed = new GovernedRxDocker(docker, RequestGovernor.withDefaults(8), policy);
+
+		TestSubscriber<RxDocker.ContainerInfo> subscriber = new TestSubscriber<>();
+		governed.createAndStart(trace, null, deployment).subscribe(subscriber);
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+		subscriber.assertError(FakeRxDocker.Answer.class);
+		assertFalse(docker.calls.toString(), docker.calls.stream().anyMatch(call -> call.startsWith("start")));
+	}
+
+	private Observable<String> failing(int failures, String value) {
+		return Observable.defer(() -> attempts.incrementAndGet() <= failures
+			? Observable.error(new IOException("reset"))
+			: Observable.just(value)
+		);
+	}
+}
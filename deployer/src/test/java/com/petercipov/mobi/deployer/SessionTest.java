@@ -0,0 +1,50 @@
+package com.petercipov.mobi.deployer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class SessionTest {
+
+	private static final long MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
+	private final Session session = new Session("current", 1000, "local", "1");
+
+	@Test
+	public void ownSessionIsNeverStale() {
+		assertFalse(session.isStale(session.labels(), MAX_AGE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void remoteSessionIsStaleAfterMaxAge() {
+		Map<String, String> labels = labels("other", 1000, "remote", "42");
+
+		assertFalse(session.isStale(labels, MAX_AGE, 1000 + MAX_AGE));
+		assertTrue(session.isStale(labels, MAX_AGE, 1001 + MAX_AGE));
+	}
+
+	@Test
+	public void unknownHostIsNeverTreatedAsLocal() {
+		Session unknown = new Session("current", 1000, null, "1");
+		Map<String, String> labels = labels("other", 1000, null, "999999999");
+
+		assertFalse(labels.containsKey(Session.HOST_LABEL));
+		assertFalse(unknown.isStale(labels, MAX_AGE, 1000 + MAX_AGE));
+		assertTrue(unknown.isStale(labels, MAX_AGE, 1001 + MAX_AGE));
+	}
+
+	@Test
+	public void containersWithoutSessionAreIgnored() {
+		assertFalse(session.isStale(new HashMap<>(), MAX_AGE, Long.MAX_VALUE));
+	}
+
+	private Map<String, String> labels(String id, long started, String host, String pid) {
+		return new Session(id, started, host, pid).labels();
+	}
+}
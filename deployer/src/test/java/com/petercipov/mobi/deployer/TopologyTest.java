@@ -0,0 +1,159 @@
+package com.petercipov.mobi.deployer;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.config.HttpRestApiHost;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author petercipov
+ */
+public class TopologyTest {
+	
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("cassandra"), "3.0.2");
+	
+	private FakeRxDocker docker;
+	private Topology topology;
+	
+	@Before
+	public void before() {
+		docker = new FakeRxDocker();
+		topology = new Deployer(new HttpRestApiHost("docker", 2375, Optional.empty()), docker, new PullRegistry(), new ResourceBudget(0, 0))
+			.topology();
+	}
+	
+	@Test
+	public void independentServicesShareLevel() {
+		topology.service("db", image, null);
+		topology.service("cache", image, null);
+		topology.service("app", image, null).dependsOn("db").dependsOn("cache");
+		
+		List<List<String>> levels = topology.levels();
+		
+		assertEquals(2, levels.size());
+		assertEquals(new HashSet<>(Arrays.asList("db", "cache")), new HashSet<>(levels.get(0)));
+		assertEquals(Arrays.asList("app"), levels.get(1));
+	}
+	
+	@Test
+	public void chainLengthMarksCriticalPath() {
+		topology.service("seed", image, null);
+		topology.service("node1", image, null).dependsOn("seed");
+		topology.service("node2", image, null).dependsOn("node1");
+		topology.service("monitoring", image, null);
+		
+		Map<String, Integer> chains = topology.chainLengths();
+		
+		assertEquals(3, (int) chains.get("seed"));
+		assertEquals(2, (int) chains.get("node1"));
+		assertEquals(1, (int) chains.get("node2"));
+		assertEquals(1, (int) chains.get("monitoring"));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void cyclicDependenciesAreRejected() {
+		topology.service("a", image, null).dependsOn("b");
+		topology.service("b", image, null).dependsOn("a");
+		
+		topology.levels();
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void unknownDependencyIsRejected() {
+		topology.service("a", image, null).dependsOn("b");
+		
+		topology.levels();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void serviceNamesAreUnique() {
+		topology.service("a", image, null);
+		topology.service("a", image, null);
+	}
+	
+	@Test
+	public void dependenciesAreResolvedFromDeployedContainers() {
+		topology.service("seed", image, new FakeDeployment("seed"));
+		topology.service("node", image, new FakeDeployment("node"))
+			.dependsOn("seed", (seed, options) -> options.setHostName("after-" + seed.getContainerId()));
+		
+		Map<String, Container> deployed = topology.deploy(trace).toBlocking().single();
+		
+		assertEquals(Arrays.asList("seed", "node"), Arrays.asList(deployed.keySet().toArray()));
+		assertEquals("node", deployed.get("node").getContainerId());
+		assertTrue(docker.calls.indexOf("start seed") < docker.calls.indexOf("start node"));
+	}
+	
+	@Test
+	public void rollbackWaitsForServicesInFlight() {
+		PublishSubject<String> slowStart = PublishSubject.create();
+		docker.starts.put("slow", slowStart);
+		docker.starts.put("broken", Observable.error(new IllegalStateException("port is already allocated")));
+		topology.service("db", image, new FakeDeployment("db"));
+		topology.service("slow", image, new FakeDeployment("slow"));
+		topology.service("broken", image, new FakeDeployment("broken"));
+		topology.service("app", image, new FakeDeployment("app")).dependsOn("broken");
+		
+		TestSubscriber<Map<String, Container>> subscriber = new TestSubscriber<>();
+		topology.deploy(trace).subscribe(subscriber);
+		subscriber.assertNoTerminalEvent();
+		assertFalse(docker.calls.contains("kill db"));
+		
+		slowStart.onNext("slow");
+		slowStart.onCompleted();
+		
+		subscriber.assertError(IllegalStateException.class);
+		assertTrue(docker.calls.contains("kill db"));
+		assertTrue(docker.calls.contains("kill slow"));
+		assertFalse(docker.calls.contains("start app"));
+	}
+	
+	@Test
+	public void criticalPathTakesBoundedSlotsFirst() {
+		PublishSubject<String> seedStart = PublishSubject.create();
+		docker.starts.put("seed", seedStart);
+		topology.service("monitoring", image, new FakeDeployment("monitoring"));
+		topology.service("seed", image, new FakeDeployment("seed"));
+		topology.service("node", image, new FakeDeployment("node")).dependsOn("seed");
+		
+		TestSubscriber<Map<String, Container>> subscriber = new TestSubscriber<>();
+		topology.deploy(trace, 1).subscribe(subscriber);
+		assertTrue(docker.calls.contains("start seed"));
+		assertFalse(docker.calls.contains("start monitoring"));
+		
+		seedStart.onNext("seed");
+		seedStart.onCompleted();
+		
+		subscriber.assertNoErrors();
+		assertEquals(3, subscriber.getOnNextEvents().get(0).size());
+		assertTrue(docker.calls.indexOf("start monitoring") < docker.calls.indexOf("start node"));
+	}
+	
+	@Test
+	public void dependenciesAreResolvedIntoCopyOfOptions() {
+		FakeDeployment node = new FakeDeployment("node");
+		topology.service("seed", image, new FakeDeployment("seed"));
+		topology.service("node", image, node)
+			.dependsOn("seed", "CASSANDRA_SEEDS", Container::getContainerId);
+		
+		topology.deploy(trace).toBlocking().single();
+		topology.deploy(trace).toBlocking().single();
+		
+		assertTrue(node.env.isEmpty());
+	}
+}
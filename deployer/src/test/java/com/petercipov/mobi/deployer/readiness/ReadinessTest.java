@@ -0,0 +1,189 @@
+package com.petercipov.mobi.deployer.readiness;
+
+import com.petercipov.mobi.Instance;
+import com.petercipov.mobi.Name;
+import com.petercipov.mobi.config.DefaultRegistry;
+import com.petercipov.mobi.deployer.Container;
+import com.petercipov.mobi.deployer.RxDocker.PortBinding;
+import com.petercipov.traces.api.NoopTrace;
+import com.petercipov.traces.api.Trace;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import rx.observers.TestSubscriber;
+
+/**
+ *
+ * @author petercipov
+ */
+public class ReadinessTest {
+
+	private static final String PORT = "8080/tcp";
+
+	private final Trace trace = NoopTrace.INSTANCE;
+	private final Instance image = new Instance(new DefaultRegistry(), new Name("nginx"), "1.9");
+
+	private ProbeLoop loop;
+	private ServerSocket server;
+
+	@Before
+	public void before() throws IOException {
+		loop = new ProbeLoop("readiness-test");
+		server = new ServerSocket(0);
+	}
+
+	@After
+	public void after() throws IOException {
+		loop.close();
+		server.close();
+	}
+
+	@Test
+	public void timerWheelRunsTasksInOrderOfDeadlines() {
+		TimerWheel wheel = new TimerWheel(10, 4, 0);
+		List<String> fired = new ArrayList<>();
+		wheel.add(100, () -> fired.add("late"));
+		wheel.add(5, () -> fired.add("early"));
+		wheel.add(30, () -> fired.add("middle"));
+
+		wheel.advance(9);
+		assertTrue(fired.isEmpty());
+		wheel.advance(50);
+		assertEquals(Arrays.asList("early", "middle"), fired);
+		wheel.advance(100);
+		assertEquals(Arrays.asList("early", "middle", "late"), fired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void tcpProbePassesWhenPortAcceptsConnections() {
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		Readiness.await(trace, target(server.getLocalPort()), Collections.singletonList(ReadinessProbe.tcpPort(PORT)), 10, 5000)
+			.subscribe(subscriber);
+
+		subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		subscriber.assertNoErrors();
+		subscriber.assertCompleted();
+		assertEquals(0, loop.getPendingExchanges());
+	}
+
+	@Test
+	public void probeTimesOutWhenPortIsClosed() throws IOException {
+		int port = server.getLocalPort();
+		server.close();
+
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		Readiness.await(trace, target(port), Collections.singletonList(ReadinessProbe.tcpPort(PORT)), 10, 200)
+			.subscribe(subscriber);
+
+		subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		subscriber.assertError(TimeoutException.class);
+	}
+
+	@Test
+	public void httpProbeWaitsForStatusOk() throws Exception {
+		Thread responder = new Thread(() -> {
+			try {
+				respond("HTTP/1.1 503 Service Unavailable\r\n\r\n");
+				respond("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+			} catch (IOException ex) {
+				// test fails on timeout
+			}
+		});
+		responder.start();
+
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		Readiness.await(trace, target(server.getLocalPort()), Collections.singletonList(ReadinessProbe.http(PORT, "/health")), 10, 5000)
+			.subscribe(subscriber);
+
+		subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		subscriber.assertNoErrors();
+		subscriber.assertCompleted();
+		responder.join(1000);
+	}
+
+	@Test
+	public void loopSurvivesFailingSubscriberAndUnresolvedHost() {
+		loop.exchange(new InetSocketAddress("127.0.0.1", server.getLocalPort()), new byte[0], 1000)
+			.subscribe(response -> {
+				throw new IllegalStateException("subscriber failed");
+			});
+
+		TestSubscriber<Void> unresolved = new TestSubscriber<>();
+		Readiness.await(trace, target("host.invalid", server.getLocalPort()), Collections.singletonList(ReadinessProbe.tcpPort(PORT)), 10, 200)
+			.subscribe(unresolved);
+		unresolved.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		unresolved.assertError(TimeoutException.class);
+
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		Readiness.await(trace, target(server.getLocalPort()), Collections.singletonList(ReadinessProbe.tcpPort(PORT)), 10, 5000)
+			.subscribe(subscriber);
+		subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		subscriber.assertCompleted();
+	}
+
+	@Test
+	public void readinessIsNotEmittedOnLoopThread() {
+		AtomicReference<String> thread = new AtomicReference<>();
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		Readiness.await(trace, target(server.getLocalPort()), Collections.singletonList(ReadinessProbe.tcpPort(PORT)), 10, 5000)
+			.doOnCompleted(() -> thread.set(Thread.currentThread().getName()))
+			.subscribe(subscriber);
+
+		subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		subscriber.assertCompleted();
+		assertNotEquals("readiness-test", thread.get());
+	}
+
+	@Test
+	public void statusLineIsParsed() {
+		assertTrue(HttpProbe.isOk("HTTP/1.1 200 OK\r\n"));
+		assertTrue(HttpProbe.isOk("HTTP/1.0 200"));
+		assertFalse(HttpProbe.isOk("HTTP/1.1 404 Not Found\r\n"));
+		assertFalse(HttpProbe.isOk(""));
+	}
+
+	private void respond(String response) throws IOException {
+		try (Socket socket = server.accept()) {
+			byte[] request = new byte[1024];
+			socket.getInputStream().read(request);
+			OutputStream out = socket.getOutputStream();
+			out.write(response.getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+		}
+	}
+
+	private ProbeTarget target(int port) {
+		return target("127.0.0.1", port);
+	}
+
+	private ProbeTarget target(String publishedHost, int port) {
+		PortBinding binding = new PortBinding() {
+			@Override
+			public String hostIp() {
+				return "0.0.0.0";
+			}
+
+			@Override
+			public int hostPort() {
+				return port;
+			}
+		};
+		Container container = new Container("c1", image, Collections.singletonMap(PORT, Collections.singletonList(binding)));
+		return new ProbeTarget(container, publishedHost, null, loop, 1000);
+	}
+}
@@ -5,16 +5,32 @@ import com.petercipov.mobi.config.ApiHost;
 import com.petercipov.mobi.Instance;
 import com.petercipov.mobi.Name;
 import com.petercipov.mobi.config.MobiConfig;
+import com.petercipov.mobi.deployer.BlockingDocker;
 import com.petercipov.mobi.deployer.Container;
+import com.petercipov.mobi.deployer.ContainerPool;
+import com.petercipov.mobi.deployer.ContainerReaper;
+import com.petercipov.mobi.deployer.ContainerReuse;
 import com.petercipov.mobi.deployer.Deployer;
+import com.petercipov.mobi.deployer.Deployment;
+import com.petercipov.mobi.deployer.HostScheduler;
+import com.petercipov.mobi.deployer.PoolSettings;
 import com.petercipov.mobi.deployer.RxConnector;
 import com.petercipov.mobi.deployer.RxDeployment;
 import com.petercipov.mobi.deployer.RxDocker;
+import com.petercipov.mobi.deployer.SessionSweeper;
+import com.petercipov.mobi.deployer.TeardownPolicy;
+import com.petercipov.mobi.deployer.Topology;
+import com.petercipov.mobi.deployer.VirtualThreads;
+import com.petercipov.mobi.deployer.Watchdog;
 import com.petercipov.traces.api.Level;
 import com.petercipov.traces.api.NoopTrace;
 import com.petercipov.traces.api.Trace;
 import com.petercipov.traces.api.Trace.Event;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import org.junit.rules.ExternalResource;
@@ -24,29 +40,54 @@ import rx.schedulers.Schedulers;
 
 public class MobiRule extends ExternalResource {
 
-	private static final String CONNECTOR_NAME = "com.petercipov.mobi.deployer.RxConnectorImpl";
+	private static final String[] CONNECTOR_NAMES = {
+		"com.petercipov.mobi.deployer.RxConnectorImpl",
+		"com.petercipov.mobi.deployer.nio.NioRxConnector"
+	};
+	private static HostScheduler hostScheduler;
 
 	private final MobiConfig mobiConfig;
 	private final Scheduler scheduler;
+	private final Optional<Scheduler> dockerScheduler;
 	private final Builder imageBuilder;
 
 	private Deployer deployer;
 	private RxDocker rxDocker;
+	private BlockingDocker blocking;
 	private final RxConnectorLoader connectorLoader;
 	private final Supplier<Trace> traceSupplier;
+	private final List<ContainerPool> pools;
+	private boolean reuseContainers;
+	private TeardownPolicy teardown;
+	private boolean reapInBackground;
+	private boolean sweepOrphans;
+	private boolean watchdog;
+	private int prewarmConnections;
+	private boolean virtualThreads;
 
 	public MobiRule() {
 		this(() -> NoopTrace.INSTANCE);
 	}
 	
 	public MobiRule(Supplier<Trace> traceSupplier) {
-		this(Schedulers.computation(), new ReflexRxConnectorLoader(CONNECTOR_NAME), traceSupplier);
+		this(Schedulers.computation(), Optional.empty(), new ReflexRxConnectorLoader(CONNECTOR_NAMES), traceSupplier);
 	}
 	
+	/**
+	 * @param scheduler runs all docker calls of the rule
+	 * @param connectorLoader
+	 * @param traceSupplier 
+	 */
 	public MobiRule(Scheduler scheduler, RxConnectorLoader connectorLoader, Supplier<Trace> traceSupplier) {
+		this(scheduler, Optional.of(scheduler), connectorLoader, traceSupplier);
+	}
+	
+	private MobiRule(Scheduler scheduler, Optional<Scheduler> dockerScheduler, RxConnectorLoader connectorLoader, Supplier<Trace> traceSupplier) {
 		this.scheduler = scheduler;
+		this.dockerScheduler = dockerScheduler;
 		this.connectorLoader = connectorLoader;
 		this.traceSupplier = traceSupplier;
+		this.pools = new LinkedList<>();
 		
 		MobiConfigReader reader =  new MobiConfigReader();
 		try {
@@ -61,11 +102,144 @@ public class MobiRule extends ExternalResource {
 	@Override
 	protected void before() throws Throwable {
 		final Trace trace = traceSupplier.get();
-		final ApiHost api = this.mobiConfig.getRandomApiHost();
 		final RxConnector connector = this.connectorLoader.load(trace);
+		final ApiHost api = hostScheduler(mobiConfig, connector).select(trace).toBlocking().single();
 
-		this.rxDocker = connector.createRxDocker(api, scheduler);
+		this.rxDocker = createRxDocker(connector, api);
+		if (prewarmConnections > 0) {
+			prewarm(trace, connector, api);
+		}
+		if (sweepOrphans) {
+			SessionSweeper.sweepOnce(trace, api, () -> createRxDocker(connector, api));
+		}
+		if (watchdog) {
+			Watchdog.forHost(trace, api, () -> createRxDocker(connector, api));
+		}
 		this.deployer = new Deployer(api, this.rxDocker);
+		if (teardown != null) {
+			this.deployer.setTeardown(teardown);
+		}
+		if (reapInBackground) {
+			this.deployer.enableReaper(ContainerReaper.forHost(api, () -> createRxDocker(connector, api)));
+		}
+		if (reuseContainers) {
+			this.deployer.enableReuse(ContainerReuse.forHost(api, () -> createRxDocker(connector, api)));
+		}
+		this.blocking = new BlockingDocker(this.deployer, this.rxDocker);
+	}
+	
+	/**
+	 * Docker calls run on the scheduler given to the rule, otherwise on 
+	 * virtual threads when enabled or on io threads of the connector.
+	 */
+	private RxDocker createRxDocker(RxConnector connector, ApiHost api) {
+		if (dockerScheduler.isPresent()) {
+			return connector.createRxDocker(api, dockerScheduler.get());
+		}
+		return virtualThreads && VirtualThreads.isSupported()
+			? connector.createRxDocker(api, VirtualThreads.scheduler())
+			: connector.createRxDocker(api);
+	}
+	
+	/**
+	 * Containers are kept alive after the rule is finished and they are reused
+	 * by later deployments of the same image with the same options. Reused 
+	 * containers are removed at JVM exit.
+	 * @return 
+	 */
+	public MobiRule reuseContainers() {
+		this.reuseContainers = true;
+		return this;
+	}
+
+	/**
+	 * Containers of JVMs that died without cleanup are removed when the rule 
+	 * first uses a docker host. Session of other machine is considered dead 
+	 * when it is older than 12 hours, so the sweep would remove containers of
+	 * long running suites sharing the host. It is disabled by default.
+	 * @param sweep
+	 * @return 
+	 */
+	public MobiRule sweepOrphans(boolean sweep) {
+		this.sweepOrphans = sweep;
+		return this;
+	}
+	
+	/**
+	 * Starts sidecar container on docker host, that removes containers of
+	 * this JVM when the JVM dies without cleanup.
+	 * @return 
+	 */
+	public MobiRule watchdog() {
+		this.watchdog = true;
+		return this;
+	}
+	
+	/**
+	 * Containers are removed in the background, so the test does not wait
+	 * for their removal. Containers that are still being removed at JVM exit
+	 * are flushed before the exit.
+	 * @return 
+	 */
+	public MobiRule reapInBackground() {
+		this.reapInBackground = true;
+		return this;
+	}
+	
+	/**
+	 * Opens connections to the docker host in parallel before the first 
+	 * test, so the first deployments do not wait for connecting and TLS 
+	 * handshake.
+	 * @param connections
+	 * @return 
+	 */
+	public MobiRule prewarm(int connections) {
+		this.prewarmConnections = connections;
+		return this;
+	}
+	
+	/**
+	 * Docker calls of the rule run on virtual threads, if the runtime 
+	 * supports them. Blocking calls then cost no platform thread. Scheduler
+	 * given to the rule takes precedence.
+	 * @return 
+	 */
+	public MobiRule virtualThreads() {
+		this.virtualThreads = true;
+		return this;
+	}
+	
+	/**
+	 * Hosts are scheduled by one scheduler in the JVM, so rules of all 
+	 * test classes share turns and load measurements.
+	 */
+	private static synchronized HostScheduler hostScheduler(MobiConfig config, RxConnector connector) {
+		if (hostScheduler == null) {
+			hostScheduler = HostScheduler.forConfig(config, connector::createRxDocker);
+		}
+		return hostScheduler;
+	}
+	
+	private void prewarm(Trace trace, RxConnector connector, ApiHost api) {
+		Event prewarming = trace.start("Prewarming connections (count)", prewarmConnections);
+		try {
+			int opened = connector.prewarm(api, prewarmConnections).toBlocking().single();
+			trace.event("Connections were opened (count)", opened);
+		} catch(Exception ex) {
+			trace.event(Level.ERROR, "Prewarming of connections has failed", ex);
+		} finally {
+			prewarming.end();
+		}
+	}
+	
+	/**
+	 * Sets how containers are removed after the rule is finished
+	 * @param teardown
+	 * @return 
+	 */
+	public MobiRule teardown(TeardownPolicy teardown) {
+		this.teardown = teardown;
+		return this;
 	}
 
 	@Override
@@ -73,6 +247,16 @@ public class MobiRule extends ExternalResource {
 		Trace trace = traceSupplier.get();
 		Event closeEvent = trace.start("Closing mobi");
 		
+		for (ContainerPool pool : pools) {
+			try {
+				trace.event("Closing container pool (pool)", pool);
+				pool.close(trace);
+			} catch(Exception ex) {
+				trace.event(Level.ERROR, "Closing of container pool has failed", ex);
+			}
+		}
+		pools.clear();
+		
 		try {
 			this.deployer.close(trace);
 		} catch(Exception ex) {
@@ -116,6 +300,45 @@ public class MobiRule extends ExternalResource {
 		return rxDocker;
 	}
 	
+	/**
+	 * @return blocking api over deployer and docker of the rule
+	 */
+	public BlockingDocker blocking() {
+		return blocking;
+	}
+	
+	public Topology topology() {
+		return deployer.topology();
+	}
+	
+	/**
+	 * Creates pool of warm containers of the image. Pool is closed together 
+	 * with the rule.
+	 * @param name
+	 * @param tag
+	 * @param settings
+	 * @param setup options of every container of the pool
+	 * @return started pool
+	 */
+	public ContainerPool pool(Name name, String tag, PoolSettings settings, Consumer<RxDeployment> setup) {
+		Instance instance = imageBuilder.build(name, tag);
+		ContainerPool pool = new ContainerPool(deployer, instance, () -> {
+			RxDeployment options = rxDocker.deployment();
+			setup.accept(options);
+			return options;
+		}, settings, scheduler);
+		pools.add(pool);
+		return pool.start(traceSupplier.get());
+	}
+	
+	public Observable<Container> deployAll(Trace trace, int maxConcurrency, MobiWork ... works) {
+		List<Deployment> deployments = new ArrayList<>(works.length);
+		for (MobiWork work : works) {
+			deployments.add(work.toDeployment());
+		}
+		return deployer.deployAll(trace, deployments, maxConcurrency);
+	}
+	
 	public static class MobiWork {
 
 		private final Deployer deployer;
@@ -136,5 +359,13 @@ public class MobiRule extends ExternalResource {
 		public Observable<Container> deploy(Trace trace) {
 			return this.deployer.deploy(trace, image, options);
 		}
+		
+		public Instance instance() {
+			return image;
+		}
+		
+		public Deployment toDeployment() {
+			return new Deployment(image, options);
+		}
 	}
 }
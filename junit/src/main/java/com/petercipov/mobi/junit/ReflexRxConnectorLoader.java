@@ -4,40 +4,50 @@ import com.petercipov.mobi.deployer.RxConnector;
 import com.petercipov.traces.api.Level;
 import com.petercipov.traces.api.Trace;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 
 /**
+ * Loads connector by its class name. When more connector class names are 
+ * given, the one present on the classpath is loaded.
  *
  * @author petercipov
  */
 public class ReflexRxConnectorLoader implements RxConnectorLoader{
 
-	private final String loaderPath;
-	private final String className;
+	private final List<String> classNames;
 
-	public ReflexRxConnectorLoader(String className) {
-		this.loaderPath = className.replace('.', '/')+".class";
-		this.className = className;
+	public ReflexRxConnectorLoader(String ... classNames) {
+		this.classNames = Arrays.asList(classNames);
 	}
 
 	@Override
 	public RxConnector load(Trace trace) {
-		Set<URL> loaders = findPossibleLoaders(trace);
+		List<String> present = new LinkedList<>();
+		for (String className : classNames) {
+			Set<URL> loaders = findPossibleLoaders(className, trace);
+			assertSingle(className, loaders, trace);
+			if (! loaders.isEmpty()) {
+				present.add(className);
+			}
+		}
 		
-		assertNotEmpty(loaders, trace);
-		assertSingle(loaders, trace);
+		assertNotEmpty(present, trace);
+		assertSingleConnector(present, trace);
 		
 		try {
-			return (RxConnector)this.getClass().getClassLoader().loadClass(className).newInstance();
+			return (RxConnector)this.getClass().getClassLoader().loadClass(present.get(0)).newInstance();
 		} catch(Exception ex) {
 			throw new IllegalStateException("Error while initializing connector", ex);
 		}
 	}
 	
-	private Set<URL> findPossibleLoaders(Trace trace) {
-		
+	private Set<URL> findPossibleLoaders(String className, Trace trace) {
+		String loaderPath = className.replace('.', '/')+".class";
         Set<URL> loadersPaths = new LinkedHashSet<>();
         try {
             ClassLoader loader = this.getClass().getClassLoader();
@@ -61,17 +71,24 @@ public class ReflexRxConnectorLoader implements RxConnectorLoader{
         return loadersPaths;
     }
 	
-	private void assertSingle(Set<URL> loaders, Trace trace) {
+	private void assertSingle(String className, Set<URL> loaders, Trace trace) {
 		int size = loaders.size();
-		if (size != 1) {
+		if (size > 1) {
 			trace.event(Level.ERROR, "Multiple connector classes were found on the classpath. It is ambiguous !(class name)", className);
 			throw new IllegalArgumentException("Multiple connector classes were found on the classpath. It is ambiguous !");
 		}
 	}
+	
+	private void assertSingleConnector(List<String> present, Trace trace) {
+		if (present.size() > 1) {
+			trace.event(Level.ERROR, "Multiple connectors were found on the classpath. It is ambiguous !(class names)", present);
+			throw new IllegalArgumentException("Multiple connectors were found on the classpath " + present + ". It is ambiguous !");
+		}
+	}
 
-	private void assertNotEmpty(Set<URL> loaders, Trace trace) {
-		if (loaders.isEmpty()) {
-			trace.event(Level.ERROR, "Connector class was not found on the classpath (class name)", className);
+	private void assertNotEmpty(List<String> present, Trace trace) {
+		if (present.isEmpty()) {
+			trace.event(Level.ERROR, "Connector class was not found on the classpath (class names)", classNames);
 			throw new IllegalArgumentException("Connector class was not found on the classpath");
 		}
 	}
@@ -1,6 +1,9 @@
 package com.petercipov.mobi.junit;
 
 import com.petercipov.mobi.deployer.Container;
+import com.petercipov.mobi.deployer.Deployment;
+import com.petercipov.mobi.deployer.Topology;
+import com.petercipov.mobi.deployer.readiness.ReadinessProbe;
 import com.petercipov.traces.api.Trace;
 import com.petercipov.traces.junit.TraceRule;
 import java.util.concurrent.TimeUnit;
@@ -54,4 +57,44 @@ public class CassandraIT {
 		int port = first.getPort(NATIVE_COMM_PORT);
 
 	}
+	
+	@Test
+	public void cassandraClusterBlockingDeployment() throws Exception {
+		final Trace trace = traces.trace();
+		
+		Deployment firstNode = mobi
+			.image("cassandra", "3.0.2")
+			.with(setup -> setup.publishAllPorts())
+			.toDeployment();
+		Container first = mobi.blocking().deploy(trace, firstNode);
+		
+		String ipAddress = mobi.blocking().inspectContainer(trace, first.getContainerId())
+			.networkSettings().ipAddress();
+		
+		Deployment secondNode = mobi
+			.image("cassandra", "3.0.2")
+			.with(setup -> setup
+				.publishAllPorts()
+				.addEnv("CASSANDRA_SEEDS="+ipAddress)
+			)
+			.toDeployment();
+		mobi.blocking().deploy(trace, secondNode);
+	}
+	
+	@Test
+	public void cassandraClusterTopologyDeployment() throws Exception {
+		final Trace trace = traces.trace();
+		
+		Topology topology = mobi.topology();
+		topology.service("seed", mobi.image("cassandra", "3.0.2").instance(), mobi.docker().deployment()
+			.publishAllPorts()
+			.waitFor(ReadinessProbe.tcpPort(NATIVE_COMM_PORT))
+		);
+		topology.service("node", mobi.image("cassandra", "3.0.2").instance(), mobi.docker().deployment()
+			.publishAllPorts()
+			.waitFor(ReadinessProbe.logLine("Starting listening for CQL clients"))
+		).dependsOn("seed", "CASSANDRA_SEEDS", Container::getIpAddress);
+		
+		mobi.blocking().deploy(trace, topology);
+	}
 }
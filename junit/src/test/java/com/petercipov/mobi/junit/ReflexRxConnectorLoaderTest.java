@@ -38,6 +38,27 @@ public class ReflexRxConnectorLoaderTest {
 		loader.load(trace);
 	}
 	
+	@Test
+	public void connectorPresentOnClasspathIsLoaded() {
+		final Trace trace = traces.trace();
+		final ReflexRxConnectorLoader loader = new ReflexRxConnectorLoader("unknown_class_name", NoopLoader.class.getName());
+		
+		RxConnector connector = loader.load(trace);
+		
+		assertTrue(connector instanceof NoopLoader);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void ifMultipleConnectorsFoundIllegalArgumentExceptionIsThrown() {
+		final Trace trace = traces.trace();
+		final ReflexRxConnectorLoader loader = new ReflexRxConnectorLoader(NoopLoader.class.getName(), OtherNoopLoader.class.getName());
+		
+		loader.load(trace);
+	}
+	
+	public static class OtherNoopLoader extends NoopLoader {
+	}
+	
 	public static class NoopLoader implements RxConnector {
 
 		@Override